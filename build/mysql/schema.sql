@@ -48,9 +48,11 @@ CREATE TABLE day_bars (
 CREATE TABLE events (
   sequenceId BIGINT NOT NULL,
   createTime BIGINT NOT NULL,
-  data VARCHAR(10000) NOT NULL,
+  data BLOB NOT NULL,
   previousId BIGINT NOT NULL,
-  CONSTRAINT UNI_PREV_ID UNIQUE (previousId),
+  streamId INTEGER NOT NULL,
+  CONSTRAINT UNI_STREAM_PREV_ID UNIQUE (streamId, previousId),
+  INDEX IDX_STREAM_SEQ (streamId, sequenceId),
   PRIMARY KEY(sequenceId)
 ) CHARACTER SET utf8 COLLATE utf8_general_ci AUTO_INCREMENT = 1000;
 
@@ -80,6 +82,7 @@ CREATE TABLE match_details (
   userId BIGINT NOT NULL,
   CONSTRAINT UNI_OID_COID UNIQUE (orderId, counterOrderId),
   INDEX IDX_OID_CT (orderId,createTime),
+  INDEX IDX_OID_ID (orderId,id),
   PRIMARY KEY(id)
 ) CHARACTER SET utf8 COLLATE utf8_general_ci AUTO_INCREMENT = 1000;
 
@@ -106,6 +109,7 @@ CREATE TABLE orders (
   unfilledQuantity DECIMAL(36,18) NOT NULL,
   updateTime BIGINT NOT NULL,
   userId BIGINT NOT NULL,
+  INDEX IDX_UID_ID (userId,id),
   PRIMARY KEY(id)
 ) CHARACTER SET utf8 COLLATE utf8_general_ci AUTO_INCREMENT = 1000;
 
@@ -160,6 +164,7 @@ CREATE TABLE unique_events (
   uniqueId VARCHAR(50) NOT NULL,
   createTime BIGINT NOT NULL,
   sequenceId BIGINT NOT NULL,
+  INDEX IDX_CT (createTime),
   PRIMARY KEY(uniqueId)
 ) CHARACTER SET utf8 COLLATE utf8_general_ci AUTO_INCREMENT = 1000;
 
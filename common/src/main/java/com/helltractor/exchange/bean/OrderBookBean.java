@@ -13,6 +13,9 @@ public class OrderBookBean {
     @JsonIgnore
     public long sequenceId;
 
+    @JsonIgnore
+    public long symbolId;
+
     public BigDecimal price;
 
     public List<OrderBookItemBean> buy;
@@ -0,0 +1,35 @@
+package com.helltractor.exchange.bean;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Changed price levels of order book between previousId and sequenceId. Each item holds the new total quantity of
+ * the level, and quantity of zero means the level was removed.
+ */
+public class OrderBookDeltaBean {
+
+    public long symbolId;
+
+    public long sequenceId;
+
+    /**
+     * SequenceId of previous delta, or 0 if this is the first delta.
+     */
+    public long previousId;
+
+    public BigDecimal price;
+
+    public List<OrderBookItemBean> buy;
+
+    public List<OrderBookItemBean> sell;
+
+    public OrderBookDeltaBean(long sequenceId, long previousId, BigDecimal price, List<OrderBookItemBean> buy,
+            List<OrderBookItemBean> sell) {
+        this.sequenceId = sequenceId;
+        this.previousId = previousId;
+        this.price = price;
+        this.buy = buy;
+        this.sell = sell;
+    }
+}
@@ -4,5 +4,5 @@ import com.helltractor.exchange.enums.MatchType;
 
 import java.math.BigDecimal;
 
-public record SimpleMatchDetailRecord(BigDecimal price, BigDecimal quantity, MatchType type) {
+public record SimpleMatchDetailRecord(long id, BigDecimal price, BigDecimal quantity, MatchType type) {
 }
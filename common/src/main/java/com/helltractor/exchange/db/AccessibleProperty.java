@@ -1,7 +1,12 @@
 package com.helltractor.exchange.db;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Function;
@@ -13,9 +18,21 @@ import jakarta.persistence.Id;
 
 /**
  * Represent a bean public field with JPA annotation.
+ * <p>
+ * Field is accessed by method handles generated at startup, and read from result set by column index with a typed
+ * getter, so primitive columns are not boxed.
  */
 class AccessibleProperty {
 
+    /**
+     * Read column of current row into bean.
+     */
+    @FunctionalInterface
+    interface ColumnReader {
+
+        void read(Object bean, ResultSet rs, int column) throws SQLException;
+    }
+
     static final Map<Class<?>, String> DEFAULT_COLUMN_TYPES = new HashMap<>();
 
     static {
@@ -38,6 +55,8 @@ class AccessibleProperty {
         DEFAULT_COLUMN_TYPES.put(Double.class, "DOUBLE");
 
         DEFAULT_COLUMN_TYPES.put(BigDecimal.class, "DECIMAL($1,$2)");
+
+        DEFAULT_COLUMN_TYPES.put(byte[].class, "BLOB");
     }
 
     // java type
@@ -50,9 +69,14 @@ class AccessibleProperty {
     final String columnDefinition;
     // field
     final Field field;
+    // (Object)Object
+    private final MethodHandle getter;
+    // (Object, Object)void
+    private final MethodHandle setter;
+    final ColumnReader columnReader;
 
     @SuppressWarnings({"unchecked", "rawtypes"})
-    public AccessibleProperty(Field f) {
+    public AccessibleProperty(Field f) throws IllegalAccessException {
         this.field = f;
         this.propertyType = f.getType();
         this.propertyName = f.getName();
@@ -61,6 +85,92 @@ class AccessibleProperty {
         this.javaToSqlMapper = isEnum ? (obj) -> ((Enum<?>) obj).name() : null;
         this.sqlToJavaMapper = isEnum ? (obj) -> Enum.valueOf((Class<? extends Enum>) this.propertyType, (String) obj)
                 : null;
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle rawGetter = lookup.unreflectGetter(f);
+        MethodHandle rawSetter = lookup.unreflectSetter(f);
+        this.getter = rawGetter.asType(MethodType.methodType(Object.class, Object.class));
+        this.setter = rawSetter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+        this.columnReader = createColumnReader(rawSetter);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private ColumnReader createColumnReader(MethodHandle rawSetter) {
+        final Class<?> type = this.propertyType;
+        // 基本类型使用类型化的setter，避免装箱
+        if (type == long.class) {
+            final MethodHandle h = typedSetter(rawSetter, long.class);
+            return (bean, rs, column) -> invoke(() -> {
+                h.invokeExact(bean, rs.getLong(column));
+            });
+        }
+        if (type == int.class) {
+            final MethodHandle h = typedSetter(rawSetter, int.class);
+            return (bean, rs, column) -> invoke(() -> {
+                h.invokeExact(bean, rs.getInt(column));
+            });
+        }
+        if (type == boolean.class) {
+            final MethodHandle h = typedSetter(rawSetter, boolean.class);
+            return (bean, rs, column) -> invoke(() -> {
+                h.invokeExact(bean, rs.getBoolean(column));
+            });
+        }
+        final MethodHandle h = this.setter;
+        if (type == String.class) {
+            return (bean, rs, column) -> invoke(() -> {
+                h.invokeExact(bean, (Object) rs.getString(column));
+            });
+        }
+        if (type == BigDecimal.class) {
+            return (bean, rs, column) -> invoke(() -> {
+                h.invokeExact(bean, (Object) rs.getBigDecimal(column));
+            });
+        }
+        if (type == byte[].class) {
+            return (bean, rs, column) -> invoke(() -> {
+                h.invokeExact(bean, (Object) rs.getBytes(column));
+            });
+        }
+        if (type.isEnum()) {
+            // 预先建立名称到枚举值的映射
+            final Map<String, Object> values = new HashMap<>();
+            for (Object e : type.getEnumConstants()) {
+                values.put(((Enum) e).name(), e);
+            }
+            return (bean, rs, column) -> invoke(() -> {
+                String name = rs.getString(column);
+                Object value = name == null ? null : values.get(name);
+                if (name != null && value == null) {
+                    throw new IllegalArgumentException("No enum constant " + type.getName() + "." + name);
+                }
+                h.invokeExact(bean, value);
+            });
+        }
+        // other primitives are read as their wrapper types
+        final Class<?> boxed = MethodType.methodType(type).wrap().returnType();
+        return (bean, rs, column) -> invoke(() -> {
+            h.invokeExact(bean, (Object) rs.getObject(column, boxed));
+        });
+    }
+
+    private static MethodHandle typedSetter(MethodHandle rawSetter, Class<?> type) {
+        return rawSetter.asType(MethodType.methodType(void.class, Object.class, type));
+    }
+
+    @FunctionalInterface
+    private interface Invocation {
+
+        void invoke() throws Throwable;
+    }
+
+    private static void invoke(Invocation invocation) throws SQLException {
+        try {
+            invocation.invoke();
+        } catch (SQLException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     static String getDefaultColumnType(Class<?> type, Column col) {
@@ -80,18 +190,31 @@ class AccessibleProperty {
     }
 
     public Object get(Object bean) throws ReflectiveOperationException {
-        Object obj = this.field.get(bean);
-        if (this.javaToSqlMapper != null) {
+        Object obj;
+        try {
+            obj = (Object) this.getter.invokeExact(bean);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new ReflectiveOperationException(e);
+        }
+        if (obj != null && this.javaToSqlMapper != null) {
             obj = this.javaToSqlMapper.apply(obj);
         }
         return obj;
     }
 
     public void set(Object bean, Object value) throws ReflectiveOperationException {
-        if (this.sqlToJavaMapper != null) {
+        if (value != null && this.sqlToJavaMapper != null) {
             value = this.sqlToJavaMapper.apply(value);
         }
-        this.field.set(bean, value);
+        try {
+            this.setter.invokeExact(bean, value);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new ReflectiveOperationException(e);
+        }
     }
 
     boolean isId() {
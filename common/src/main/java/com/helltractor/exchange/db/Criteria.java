@@ -1,7 +1,15 @@
 package com.helltractor.exchange.db;
 
-import java.util.ArrayList;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
 
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.NonUniqueResultException;
@@ -11,7 +19,7 @@ import jakarta.persistence.NonUniqueResultException;
  *
  * @param <T> Entity type.
  */
-final class Criteria<T> {
+final class Criteria<T> extends QueryShape {
 
     DbTemplate dataBase;
     Mapper<T> mapper;
@@ -19,45 +27,86 @@ final class Criteria<T> {
     List<String> select = null;
     String table = null;
     String where = null;
-    List<Object> whereParams = null;
+    Object[] whereParams = null;
     List<String> orderBy = null;
     int offset = 0;
     int maxResults = 0;
 
+    private static final Object[] EMPTY_PARAMS = new Object[0];
+
     Criteria(DbTemplate dataBase) {
         this.dataBase = dataBase;
     }
 
+    @Override
+    List<String> select() {
+        return select;
+    }
+
+    @Override
+    String where() {
+        return where;
+    }
+
+    @Override
+    List<String> orderBy() {
+        return orderBy;
+    }
+
+    @Override
+    boolean limit() {
+        return offset >= 0 && maxResults > 0;
+    }
+
+    /**
+     * Get SQL of the query, cached per query shape in mapper.
+     */
     String sql() {
+        // 以自身作为查询键，命中时不分配对象
+        String sql = mapper.querySQLCache.get(this);
+        if (sql == null) {
+            sql = buildSql();
+            // where clause may be generated with variable size, so the cache is bounded
+            if (mapper.querySQLCache.size() < Mapper.MAX_QUERY_SQL_CACHE) {
+                // copy since order by list is mutable
+                mapper.querySQLCache.put(freeze(), sql);
+            }
+        }
+        return sql;
+    }
+
+    private String buildSql() {
         StringBuilder sb = new StringBuilder(128);
         sb.append("SELECT ");
         sb.append((select == null ? "*" : String.join(", ", select)));
         sb.append(" FROM ").append(mapper.tableName);
         if (where != null) {
-            sb.append(" WHERE ").append(String.join(" ", where));
+            sb.append(" WHERE ").append(where);
         }
         if (orderBy != null) {
             sb.append(" ORDER BY ").append(String.join(", ", orderBy));
         }
-        if (offset >= 0 && maxResults > 0) {
+        if (limit()) {
             sb.append(" LIMIT ?, ?");
         }
         String s = sb.toString();
         return s;
     }
 
+    /**
+     * Get parameters of the query. The where arguments are bound directly if there is no limit, otherwise copied with
+     * offset and max results since the caller owns the arguments.
+     */
     Object[] params() {
-        List<Object> params = new ArrayList<>();
-        if (where != null) {
-            for (Object obj : whereParams) {
-                params.add(obj);
-            }
-        }
-        if (offset >= 0 && maxResults > 0) {
-            params.add(offset);
-            params.add(maxResults);
+        Object[] args = where == null ? EMPTY_PARAMS : whereParams;
+        if (limit()) {
+            Object[] params = new Object[args.length + 2];
+            System.arraycopy(args, 0, params, 0, args.length);
+            params[args.length] = offset;
+            params[args.length + 1] = maxResults;
+            return params;
         }
-        return params.toArray();
+        return args;
     }
 
     List<T> list() {
@@ -66,6 +115,48 @@ final class Criteria<T> {
         return dataBase.jdbcTemplate.query(selectSql, mapper.resultSetExtractor, selectParams);
     }
 
+    /**
+     * Stream rows from a forward-only result set. The stream holds the connection and must be closed.
+     */
+    Stream<T> stream() {
+        return dataBase.jdbcTemplate.queryForStream(streamingStatement(), mapper.rowMapper());
+    }
+
+    /**
+     * Map and pass rows to action one by one, without holding all rows in memory.
+     */
+    void forEach(Consumer<? super T> action) {
+        dataBase.jdbcTemplate.query(streamingStatement(), new RowCallbackHandler() {
+            AccessibleProperty.ColumnReader[] readers = null;
+
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                if (readers == null) {
+                    readers = mapper.columnReaders(rs.getMetaData());
+                }
+                action.accept(mapper.mapRow(rs, readers));
+            }
+        });
+    }
+
+    private PreparedStatementCreator streamingStatement() {
+        final String selectSql = sql();
+        final Object[] selectParams = params();
+        final int fetchSize = dataBase.fetchSize;
+        return con -> {
+            PreparedStatement ps = con.prepareStatement(selectSql, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+            try {
+                ps.setFetchSize(fetchSize);
+                new ArgumentPreparedStatementSetter(selectParams).setValues(ps);
+            } catch (SQLException | RuntimeException e) {
+                ps.close();
+                throw e;
+            }
+            return ps;
+        };
+    }
+
     T first() {
         this.offset = 0;
         this.maxResults = 1;
@@ -7,6 +7,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -15,6 +16,7 @@ import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
 import org.springframework.core.type.filter.AnnotationTypeFilter;
@@ -34,7 +36,18 @@ import jakarta.persistence.PersistenceException;
 @Component
 public class DbTemplate {
 
+    // MySQL allows at most 65535 placeholders in one statement
+    static final int MAX_PARAMETERS = 65535;
+
     final JdbcTemplate jdbcTemplate;
+
+    @Value("${exchange.db.insert-batch-size:500}")
+    int insertBatchSize = 500;
+
+    // rows fetched per round trip by streaming query, MySQL requires useCursorFetch=true for positive size
+    @Value("${exchange.db.fetch-size:1000}")
+    int fetchSize = 1000;
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
     // class -> Mapper
     private final Map<Class<?>, Mapper<?>> classMapping;
@@ -186,28 +199,26 @@ public class DbTemplate {
         }
     }
 
+    /**
+     * Insert beans by multi-row INSERT statements of at most insertBatchSize rows.
+     */
     public <T> void insert(List<T> beans) {
-        for (T bean : beans) {
-            doInsert(bean, false);
-        }
+        doInsertBatch(beans.iterator(), false);
     }
 
+    /**
+     * Insert beans and ignore duplicates. Identity ids are not read back, because ignored rows have no generated key.
+     */
     public <T> void insertIgnore(List<T> beans) {
-        for (T bean : beans) {
-            doInsert(bean, true);
-        }
+        doInsertBatch(beans.iterator(), true);
     }
 
     public <T> void insert(Stream<T> beans) {
-        beans.forEach((bean) -> {
-            doInsert(bean, false);
-        });
+        doInsertBatch(beans.iterator(), false);
     }
 
     public <T> void insertIgnore(Stream<T> beans) {
-        beans.forEach((bean) -> {
-            doInsert(bean, true);
-        });
+        doInsertBatch(beans.iterator(), true);
     }
 
     public <T> void insert(T bean) {
@@ -218,6 +229,89 @@ public class DbTemplate {
         doInsert(bean, true);
     }
 
+    /**
+     * Collect consecutive beans of same class into chunks, and insert each chunk by one statement.
+     */
+    <T> void doInsertBatch(Iterator<T> beans, boolean isIgnore) {
+        List<T> chunk = new ArrayList<>();
+        Mapper<?> chunkMapper = null;
+        int chunkSize = 0;
+        while (beans.hasNext()) {
+            T bean = beans.next();
+            Mapper<?> mapper = getMapper(bean.getClass());
+            if (mapper != chunkMapper) {
+                if (!chunk.isEmpty()) {
+                    doInsertChunk(chunkMapper, chunk, isIgnore);
+                    chunk.clear();
+                }
+                chunkMapper = mapper;
+                chunkSize = Math.max(1,
+                        Math.min(this.insertBatchSize, MAX_PARAMETERS / mapper.insertableProperties.size()));
+            }
+            chunk.add(bean);
+            if (chunk.size() >= chunkSize) {
+                doInsertChunk(chunkMapper, chunk, isIgnore);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            doInsertChunk(chunkMapper, chunk, isIgnore);
+        }
+    }
+
+    <T> void doInsertChunk(Mapper<?> mapper, List<T> beans, boolean isIgnore) {
+        if (beans.size() == 1) {
+            doInsert(beans.get(0), isIgnore);
+            return;
+        }
+        try {
+            final int columns = mapper.insertableProperties.size();
+            final Object[] args = new Object[columns * beans.size()];
+            int n = 0;
+            for (T bean : beans) {
+                for (AccessibleProperty prop : mapper.insertableProperties) {
+                    args[n] = prop.get(bean);
+                    n++;
+                }
+            }
+            final String sql = mapper.insertSQL(isIgnore, beans.size());
+            if (logger.isDebugEnabled()) {
+                logger.debug("SQL: {} ({} rows)", isIgnore ? mapper.insertIgnoreSQL : mapper.insertSQL,
+                        beans.size());
+            }
+            if (mapper.id.isIdentityId() && !isIgnore) {
+                // 多行INSERT返回每行的自增id，顺序与插入顺序一致
+                KeyHolder keyHolder = new GeneratedKeyHolder();
+                jdbcTemplate.update(new PreparedStatementCreator() {
+                    @Override
+                    public PreparedStatement createPreparedStatement(Connection connection) throws SQLException {
+                        PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+                        for (int i = 0; i < args.length; i++) {
+                            ps.setObject(i + 1, args[i]);
+                        }
+                        return ps;
+                    }
+                }, keyHolder);
+                List<Map<String, Object>> keys = keyHolder.getKeyList();
+                if (keys.size() != beans.size()) {
+                    throw new PersistenceException(
+                            "Expect " + beans.size() + " generated keys but actual " + keys.size() + ".");
+                }
+                for (int i = 0; i < beans.size(); i++) {
+                    Object key = keys.get(i).values().iterator().next();
+                    if (key instanceof BigInteger) {
+                        key = ((BigInteger) key).longValueExact();
+                    }
+                    mapper.id.set(beans.get(i), key);
+                }
+            } else {
+                jdbcTemplate.update(sql, args);
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new PersistenceException(e);
+        }
+    }
+
     <T> void doInsert(T bean, boolean isIgnore) {
         try {
             int rows;
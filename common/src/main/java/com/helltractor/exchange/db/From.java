@@ -1,6 +1,8 @@
 package com.helltractor.exchange.db;
 
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * select ... FROM ...
@@ -88,4 +90,22 @@ public final class From<T> extends CriteriaQuery<T> {
     public T unique() {
         return this.criteria.unique();
     }
+
+    /**
+     * Get all results as a lazily mapped stream, which must be closed after use.
+     *
+     * @return Stream of object T.
+     */
+    public Stream<T> stream() {
+        return this.criteria.stream();
+    }
+
+    /**
+     * Pass each result to action without loading all results into memory.
+     *
+     * @param action Action for each object T.
+     */
+    public void forEach(Consumer<? super T> action) {
+        this.criteria.forEach(action);
+    }
 }
@@ -1,6 +1,8 @@
 package com.helltractor.exchange.db;
 
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * select ... from ... LIMIT ?, ?
@@ -29,4 +31,22 @@ public final class Limit<T> extends CriteriaQuery<T> {
     public List<T> list() {
         return criteria.list();
     }
+
+    /**
+     * Get all results as a lazily mapped stream, which must be closed after use.
+     *
+     * @return Stream of object T.
+     */
+    public Stream<T> stream() {
+        return criteria.stream();
+    }
+
+    /**
+     * Pass each result to action without loading all results into memory.
+     *
+     * @param action Action for each object T.
+     */
+    public void forEach(Consumer<? super T> action) {
+        criteria.forEach(action);
+    }
 }
@@ -1,6 +1,10 @@
 package com.helltractor.exchange.db;
 
-import java.lang.reflect.Constructor;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.sql.ResultSet;
@@ -11,12 +15,15 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
 
 import jakarta.persistence.Table;
 import jakarta.persistence.Transient;
@@ -26,9 +33,12 @@ public final class Mapper<T> {
     static List<String> columnDefinitionSortBy = Arrays.asList("BIT", "BOOL", "TINYINT", "SMALLINT", "MEDIUMINT", "INT",
             "INTEGER", "BIGINT", "FLOAT", "REAL", "DOUBLE", "DECIMAL", "YEAR", "DATE", "TIME", "DATETIME", "TIMESTAMP",
             "VARCHAR", "CHAR", "BLOB", "TEXT", "MEDIUMTEXT");
+    // max number of query shapes cached per entity:
+    static final int MAX_QUERY_SQL_CACHE = 1024;
     final Logger logger = LoggerFactory.getLogger(getClass());
     final Class<T> entityClass;
-    final Constructor<T> constructor;
+    // generated by LambdaMetafactory from the no-arg constructor:
+    final Supplier<T> constructor;
     final String tableName;
     // @Id property:
     final AccessibleProperty id;
@@ -46,6 +56,8 @@ public final class Mapper<T> {
     final String insertIgnoreSQL;
     final String updateSQL;
     final String deleteSQL;
+    // query shape -> select SQL
+    final Map<QueryShape, String> querySQLCache = new ConcurrentHashMap<>();
 
     public Mapper(Class<T> clazz) throws Exception {
         List<AccessibleProperty> all = getProperties(clazz);
@@ -60,7 +72,7 @@ public final class Mapper<T> {
         this.updatableProperties = all.stream().filter(AccessibleProperty::isUpdatable).collect(Collectors.toList());
         this.updatablePropertiesMap = buildPropertiesMap(this.updatableProperties);
         this.entityClass = clazz;
-        this.constructor = clazz.getConstructor();
+        this.constructor = createConstructor(clazz);
         this.tableName = getTableName(clazz);
         this.selectSQL = "SELECT * FROM " + this.tableName + " WHERE " + this.id.propertyName + " = ?";
         this.insertSQL = "INSERT INTO " + this.tableName + " ("
@@ -76,26 +88,9 @@ public final class Mapper<T> {
             @Override
             public List<T> extractData(ResultSet rs) throws SQLException, DataAccessException {
                 final List<T> results = new ArrayList<>();
-                final ResultSetMetaData m = rs.getMetaData();
-                final int cols = m.getColumnCount();
-                final String[] names = new String[cols];
-                for (int i = 0; i < cols; i++) {
-                    names[i] = m.getColumnLabel(i + 1);
-                }
-                try {
-                    while (rs.next()) {
-                        T bean = newInstance();
-                        for (int i = 0; i < cols; i++) {
-                            String name = names[i];
-                            AccessibleProperty p = allPropertiesMap.get(name);
-                            if (p != null) {
-                                p.set(bean, rs.getObject(i + 1));
-                            }
-                        }
-                        results.add(bean);
-                    }
-                } catch (ReflectiveOperationException e) {
-                    throw new RuntimeException(e);
+                final AccessibleProperty.ColumnReader[] readers = columnReaders(rs.getMetaData());
+                while (rs.next()) {
+                    results.add(mapRow(rs, readers));
                 }
                 return results;
             }
@@ -112,7 +107,60 @@ public final class Mapper<T> {
     }
 
     public T newInstance() throws ReflectiveOperationException {
-        return this.constructor.newInstance();
+        return this.constructor.get();
+    }
+
+    /**
+     * Create a row mapper for one query, which resolves column readers on first row.
+     */
+    RowMapper<T> rowMapper() {
+        return new RowMapper<>() {
+            AccessibleProperty.ColumnReader[] readers = null;
+
+            @Override
+            public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+                if (readers == null) {
+                    readers = columnReaders(rs.getMetaData());
+                }
+                return Mapper.this.mapRow(rs, readers);
+            }
+        };
+    }
+
+    T mapRow(ResultSet rs, AccessibleProperty.ColumnReader[] readers) throws SQLException {
+        T bean = this.constructor.get();
+        for (int i = 0; i < readers.length; i++) {
+            if (readers[i] != null) {
+                readers[i].read(bean, rs, i + 1);
+            }
+        }
+        return bean;
+    }
+
+    /**
+     * Resolve column readers by column index once per result set. Unknown columns are ignored.
+     */
+    AccessibleProperty.ColumnReader[] columnReaders(ResultSetMetaData m) throws SQLException {
+        final int cols = m.getColumnCount();
+        final AccessibleProperty.ColumnReader[] readers = new AccessibleProperty.ColumnReader[cols];
+        for (int i = 0; i < cols; i++) {
+            AccessibleProperty p = this.allPropertiesMap.get(m.getColumnLabel(i + 1));
+            readers[i] = p == null ? null : p.columnReader;
+        }
+        return readers;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Supplier<T> createConstructor(Class<T> clazz) throws ReflectiveOperationException {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle handle = lookup.unreflectConstructor(clazz.getConstructor());
+        try {
+            CallSite site = LambdaMetafactory.metafactory(lookup, "get", MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class), handle, MethodType.methodType(clazz));
+            return (Supplier<T>) site.getTarget().invokeExact();
+        } catch (Throwable e) {
+            throw new ReflectiveOperationException("Cannot generate constructor of " + clazz.getName(), e);
+        }
     }
 
     Object getIdValue(Object bean) throws ReflectiveOperationException {
@@ -127,6 +175,23 @@ public final class Mapper<T> {
         return map;
     }
 
+    /**
+     * Build multi-row insert SQL: INSERT INTO table (a, b) VALUES (?, ?), (?, ?), ...
+     */
+    String insertSQL(boolean isIgnore, int rows) {
+        String sql = isIgnore ? this.insertIgnoreSQL : this.insertSQL;
+        if (rows == 1) {
+            return sql;
+        }
+        String values = ", (" + numOfQuestions(this.insertableProperties.size()) + ")";
+        StringBuilder sb = new StringBuilder(sql.length() + values.length() * (rows - 1));
+        sb.append(sql);
+        for (int i = 1; i < rows; i++) {
+            sb.append(values);
+        }
+        return sb.toString();
+    }
+
     private String numOfQuestions(int n) {
         String[] qs = new String[n];
         return String.join(", ", Arrays.stream(qs).map((s) -> {
@@ -2,6 +2,8 @@ package com.helltractor.exchange.db;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * select ... from ... ORDER BY ...
@@ -82,4 +84,22 @@ public final class OrderBy<T> extends CriteriaQuery<T> {
     public T first() {
         return criteria.first();
     }
+
+    /**
+     * Get all results as a lazily mapped stream, which must be closed after use.
+     *
+     * @return Stream of object T.
+     */
+    public Stream<T> stream() {
+        return criteria.stream();
+    }
+
+    /**
+     * Pass each result to action without loading all results into memory.
+     *
+     * @param action Action for each object T.
+     */
+    public void forEach(Consumer<? super T> action) {
+        criteria.forEach(action);
+    }
 }
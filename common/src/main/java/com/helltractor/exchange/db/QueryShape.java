@@ -0,0 +1,107 @@
+package com.helltractor.exchange.db;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Shape of a query: select fields, where clause, order by and whether it has limit. Queries of same shape share same
+ * SQL.
+ * <p>
+ * A criteria is its own shape when looking up the SQL cache, so a lookup allocates nothing. The hash only uses the
+ * where clause, whose String hash is cached, and list sizes, so lists are only compared on a hit.
+ */
+abstract class QueryShape {
+
+    abstract List<String> select();
+
+    abstract String where();
+
+    abstract List<String> orderBy();
+
+    abstract boolean limit();
+
+    /**
+     * Immutable copy of this shape, used as the key of cached SQL.
+     */
+    QueryShape freeze() {
+        return new Frozen(select() == null ? null : List.copyOf(select()), where(),
+                orderBy() == null ? null : List.copyOf(orderBy()), limit());
+    }
+
+    @Override
+    public final int hashCode() {
+        String where = where();
+        int h = where == null ? 0 : where.hashCode();
+        h = 31 * h + (select() == null ? -1 : select().size());
+        h = 31 * h + (orderBy() == null ? -1 : orderBy().size());
+        return limit() ? h + 1 : h;
+    }
+
+    @Override
+    public final boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof QueryShape other && limit() == other.limit() && Objects.equals(where(), other.where())
+                && sameList(select(), other.select()) && sameList(orderBy(), other.orderBy());
+    }
+
+    private static boolean sameList(List<String> a, List<String> b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null || a.size() != b.size()) {
+            return false;
+        }
+        // 按下标比较，不创建迭代器
+        for (int i = 0; i < a.size(); i++) {
+            if (!a.get(i).equals(b.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Frozen extends QueryShape {
+
+        private final List<String> select;
+
+        private final String where;
+
+        private final List<String> orderBy;
+
+        private final boolean limit;
+
+        Frozen(List<String> select, String where, List<String> orderBy, boolean limit) {
+            this.select = select;
+            this.where = where;
+            this.orderBy = orderBy;
+            this.limit = limit;
+        }
+
+        @Override
+        List<String> select() {
+            return this.select;
+        }
+
+        @Override
+        String where() {
+            return this.where;
+        }
+
+        @Override
+        List<String> orderBy() {
+            return this.orderBy;
+        }
+
+        @Override
+        boolean limit() {
+            return this.limit;
+        }
+
+        @Override
+        QueryShape freeze() {
+            return this;
+        }
+    }
+}
@@ -1,8 +1,8 @@
 package com.helltractor.exchange.db;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * select ... from ... WHERE ...
@@ -14,9 +14,7 @@ public final class Where<T> extends CriteriaQuery<T> {
     Where(Criteria<T> criteria, String clause, Object... params) {
         super(criteria);
         this.criteria.where = clause;
-        this.criteria.whereParams = new ArrayList<>();
-        // add:
-        Collections.addAll(this.criteria.whereParams, params);
+        this.criteria.whereParams = params;
     }
 
     public Limit<T> limit(int maxResults) {
@@ -61,4 +59,22 @@ public final class Where<T> extends CriteriaQuery<T> {
     public T unique() {
         return this.criteria.unique();
     }
+
+    /**
+     * Get all results as a lazily mapped stream, which must be closed after use.
+     *
+     * @return Stream of object T.
+     */
+    public Stream<T> stream() {
+        return this.criteria.stream();
+    }
+
+    /**
+     * Pass each result to action without loading all results into memory.
+     *
+     * @param action Action for each object T.
+     */
+    public void forEach(Consumer<? super T> action) {
+        this.criteria.forEach(action);
+    }
 }
@@ -0,0 +1,295 @@
+package com.helltractor.exchange.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import com.helltractor.exchange.model.trade.EventEntity;
+
+/**
+ * Append-only journal of sequenced events in memory-mapped segment files.
+ * <p>
+ * Segments are named {@code journal-<index>.seg}, have fixed size and are zero-filled. Each record is: body length
+ * (int), CRC32 of body (int), then body: sequenceId, previousId, streamId, createTime, uniqueId and data. A zero length
+ * or a CRC mismatch marks the end of records. Records are durable after {@link #force()}.
+ * <p>
+ * Only one process may write a journal, but segments can be read by other processes at any time. The forced position
+ * is published in {@code journal.pos} after each force, so that readers never see records which may be lost.
+ */
+public class EventJournal implements AutoCloseable {
+
+    static final Pattern FILE_NAME = Pattern.compile("^journal-(\\d+)\\.seg$");
+
+    // length + crc
+    static final int RECORD_HEADER = 8;
+
+    static final String POSITION_FILE = "journal.pos";
+
+    /**
+     * Position after last forced record.
+     */
+    public record Position(long segment, int offset) {
+    }
+
+    private final Path dir;
+
+    private final int segmentSize;
+
+    private long segment;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer buffer;
+
+    private Position forced;
+
+    // forced position for readers, as segment << 32 | offset
+    private final MappedByteBuffer position;
+
+    /**
+     * Open journal for writing, and continue after last valid record.
+     */
+    public EventJournal(Path dir, int segmentSize) throws IOException {
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("Segment size is too small: " + segmentSize);
+        }
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(dir);
+        List<Path> segments = listSegments(dir);
+        if (segments.isEmpty()) {
+            openSegment(0);
+        } else {
+            openSegment(indexOf(segments.get(segments.size() - 1)));
+            int end = scan(this.buffer, 0, null);
+            // 清除崩溃时写了一半的记录
+            for (int i = end; i < this.segmentSize; i++) {
+                this.buffer.put(i, (byte) 0);
+            }
+            this.buffer.position(end);
+            this.buffer.force();
+        }
+        try (FileChannel channel = FileChannel.open(dir.resolve(POSITION_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            this.position = channel.map(FileChannel.MapMode.READ_WRITE, 0, 8);
+        }
+        setForced();
+    }
+
+    private void setForced() {
+        this.forced = new Position(this.segment, this.buffer.position());
+        // 8字节对齐写入，读取方不会看到一半的值；无需刷盘，崩溃后只会回退到更早的位置
+        this.position.putLong(0, this.segment << 32 | this.buffer.position());
+    }
+
+    private void openSegment(long index) throws IOException {
+        this.segment = index;
+        this.channel = FileChannel.open(segmentPath(this.dir, index), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+    }
+
+    /**
+     * Append records to current segment, and roll to next segment if full. Records are not durable until forced.
+     */
+    public synchronized void append(List<JournalRecord> records) throws IOException {
+        for (JournalRecord record : records) {
+            byte[] body = encode(record);
+            int size = RECORD_HEADER + body.length;
+            // 保留结尾的0作为结束标记
+            if (size + 4 > this.segmentSize) {
+                throw new IllegalArgumentException("Record is too large: " + record.event());
+            }
+            if (this.buffer.position() + size + 4 > this.segmentSize) {
+                roll();
+            }
+            int pos = this.buffer.position();
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            this.buffer.putInt(pos + 4, (int) crc.getValue());
+            this.buffer.put(pos + RECORD_HEADER, body);
+            // 最后写入长度，读取方看到长度时记录已完整
+            this.buffer.putInt(pos, body.length);
+            this.buffer.position(pos + size);
+        }
+    }
+
+    private void roll() throws IOException {
+        this.buffer.force();
+        this.channel.close();
+        openSegment(this.segment + 1);
+    }
+
+    /**
+     * Flush appended records to disk.
+     */
+    public synchronized void force() {
+        this.buffer.force();
+        setForced();
+    }
+
+    public synchronized Position getForcedPosition() {
+        return this.forced;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        this.channel.close();
+    }
+
+    /**
+     * Delete an archived segment which is not being written.
+     */
+    public synchronized void deleteSegment(long index) throws IOException {
+        if (index >= this.segment) {
+            throw new IllegalArgumentException("Cannot delete segment being written: " + index);
+        }
+        Files.deleteIfExists(segmentPath(this.dir, index));
+    }
+
+    public static Path segmentPath(Path dir, long index) {
+        return dir.resolve(String.format("journal-%020d.seg", index));
+    }
+
+    public static long indexOf(Path segment) {
+        Matcher m = FILE_NAME.matcher(segment.getFileName().toString());
+        if (!m.matches()) {
+            throw new IllegalArgumentException("Not a journal segment: " + segment);
+        }
+        return Long.parseLong(m.group(1));
+    }
+
+    /**
+     * List segments, oldest first.
+     */
+    public static List<Path> listSegments(Path dir) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path file : stream) {
+                if (FILE_NAME.matcher(file.getFileName().toString()).matches()) {
+                    segments.add(file);
+                }
+            }
+        }
+        segments.sort(Comparator.comparingLong(EventJournal::indexOf));
+        return segments;
+    }
+
+    /**
+     * Read forced position published by the writer, or null if journal has never been opened for writing.
+     */
+    public static Position readForcedPosition(Path dir) throws IOException {
+        Path file = dir.resolve(POSITION_FILE);
+        if (Files.notExists(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < 8) {
+                return null;
+            }
+            long value = channel.map(FileChannel.MapMode.READ_ONLY, 0, 8).getLong(0);
+            return new Position(value >>> 32, (int) value);
+        }
+    }
+
+    /**
+     * Read valid records of segment from offset up to limit.
+     *
+     * @return offset after last record read
+     */
+    public static int read(Path segment, int offset, int limit, List<JournalRecord> records) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(limit, channel.size()));
+            return scan(buffer, offset, records);
+        }
+    }
+
+    private static int scan(ByteBuffer buffer, int offset, List<JournalRecord> records) {
+        int pos = offset;
+        byte[] body;
+        while ((body = body(buffer, pos)) != null) {
+            if (records != null) {
+                records.add(decode(body));
+            }
+            pos += RECORD_HEADER + body.length;
+        }
+        return pos;
+    }
+
+    /**
+     * Body of valid record at pos, or null if no more records.
+     */
+    static byte[] body(ByteBuffer buffer, int pos) {
+        int end = buffer.limit();
+        if (pos + RECORD_HEADER > end) {
+            return null;
+        }
+        int length = buffer.getInt(pos);
+        if (length <= 0 || pos + RECORD_HEADER + length > end) {
+            return null;
+        }
+        byte[] body = new byte[length];
+        buffer.get(pos + RECORD_HEADER, body);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != buffer.getInt(pos + 4)) {
+            return null;
+        }
+        return body;
+    }
+
+    static byte[] encode(JournalRecord record) {
+        EventEntity event = record.event();
+        byte[] uniqueId = record.uniqueId() == null ? null : record.uniqueId().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(8 + 8 + 4 + 8 + 4 + (uniqueId == null ? 0 : uniqueId.length) + 4
+                + event.data.length);
+        body.putLong(event.sequenceId);
+        body.putLong(event.previousId);
+        body.putInt(event.streamId);
+        body.putLong(event.createTime);
+        if (uniqueId == null) {
+            body.putInt(-1);
+        } else {
+            body.putInt(uniqueId.length);
+            body.put(uniqueId);
+        }
+        body.putInt(event.data.length);
+        body.put(event.data);
+        return body.array();
+    }
+
+    static JournalRecord decode(byte[] data) {
+        ByteBuffer body = ByteBuffer.wrap(data);
+        EventEntity event = new EventEntity();
+        event.sequenceId = body.getLong();
+        event.previousId = body.getLong();
+        event.streamId = body.getInt();
+        event.createTime = body.getLong();
+        String uniqueId = null;
+        int length = body.getInt();
+        if (length >= 0) {
+            byte[] bytes = new byte[length];
+            body.get(bytes);
+            uniqueId = new String(bytes, StandardCharsets.UTF_8);
+        }
+        event.data = new byte[body.getInt()];
+        body.get(event.data);
+        return new JournalRecord(event, uniqueId);
+    }
+}
@@ -0,0 +1,141 @@
+package com.helltractor.exchange.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.helltractor.exchange.model.trade.EventEntity;
+
+/**
+ * Reads events of one stream from a journal written by another process, page by page.
+ * <p>
+ * The reader keeps a cursor (segment, offset) after the last record it has consumed, so that each page continues from
+ * where the previous page stopped instead of scanning the journal from the beginning. Records after the forced
+ * position of the writer are never read. Not thread-safe.
+ */
+public class JournalReader {
+
+    // offset of streamId in record body: sequenceId, previousId, streamId
+    static final int STREAM_ID_OFFSET = 16;
+
+    private final Path dir;
+
+    private final int streamId;
+
+    // 游标：之前的记录都已读取或跳过，segment < 0表示尚未打开
+    private long segment = -1;
+
+    private int offset = 0;
+
+    // 游标之前是否有该流的记录
+    private boolean found = false;
+
+    private MappedByteBuffer buffer;
+
+    private long bufferSegment = -1;
+
+    public JournalReader(Path dir, int streamId) {
+        this.dir = dir;
+        this.streamId = streamId;
+    }
+
+    /**
+     * Read events of stream after lastEventId. The lastEventId may be greater than the last event read by this reader,
+     * if events between are loaded from elsewhere.
+     *
+     * @return events ordered by sequenceId, or null if journal does not contain the event after lastEventId
+     */
+    public List<EventEntity> read(long lastEventId, int limit) throws IOException {
+        EventJournal.Position forced = EventJournal.readForcedPosition(this.dir);
+        if (forced == null) {
+            return null;
+        }
+        List<EventEntity> events = null;
+        while (this.segment <= forced.segment()) {
+            ByteBuffer buffer = this.segment < 0 ? null : map(this.segment);
+            if (buffer == null) {
+                // 尚未打开或游标所在的段已归档并删除，从最早的段重新定位
+                if (events != null || !rewind()) {
+                    return events;
+                }
+                continue;
+            }
+            if (this.segment == forced.segment()) {
+                buffer = buffer.duplicate().limit(forced.offset());
+            }
+            byte[] body;
+            while ((body = EventJournal.body(buffer, this.offset)) != null) {
+                if (ByteBuffer.wrap(body).getInt(STREAM_ID_OFFSET) == this.streamId) {
+                    EventEntity event = EventJournal.decode(body).event();
+                    if (event.sequenceId > lastEventId) {
+                        if (events == null) {
+                            if (event.previousId != lastEventId) {
+                                // 日志中没有lastEventId之后的记录，保留游标以便之后继续
+                                return null;
+                            }
+                            events = new ArrayList<>();
+                        }
+                        events.add(event);
+                    }
+                    this.found = true;
+                }
+                this.offset += EventJournal.RECORD_HEADER + body.length;
+                if (events != null && events.size() >= limit) {
+                    return events;
+                }
+            }
+            if (this.segment == forced.segment()) {
+                break;
+            }
+            this.segment++;
+            this.offset = 0;
+        }
+        if (events != null) {
+            return events;
+        }
+        // 日志中该流的记录都不大于lastEventId时没有更多记录，否则可能已归档并删除
+        return this.found ? List.of() : null;
+    }
+
+    /**
+     * Move cursor to the oldest segment after current one.
+     *
+     * @return false if no such segment
+     */
+    private boolean rewind() throws IOException {
+        List<Path> segments = EventJournal.listSegments(this.dir);
+        if (segments.isEmpty() || EventJournal.indexOf(segments.get(0)) <= this.segment) {
+            return false;
+        }
+        this.segment = EventJournal.indexOf(segments.get(0));
+        this.offset = 0;
+        this.found = false;
+        return true;
+    }
+
+    /**
+     * Map segment, or return null if it is deleted.
+     */
+    private ByteBuffer map(long index) throws IOException {
+        if (this.bufferSegment != index) {
+            Path file = EventJournal.segmentPath(this.dir, index);
+            if (Files.notExists(file)) {
+                return null;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+            this.bufferSegment = index;
+        }
+        return this.buffer;
+    }
+}
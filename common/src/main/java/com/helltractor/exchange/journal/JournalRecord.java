@@ -0,0 +1,9 @@
+package com.helltractor.exchange.journal;
+
+import com.helltractor.exchange.model.trade.EventEntity;
+
+/**
+ * Event in journal, with unique id of the event if any.
+ */
+public record JournalRecord(EventEntity event, String uniqueId) {
+}
@@ -12,10 +12,15 @@ public class AbstractEvent extends AbstractMessage {
     public long sequenceId;
 
     /**
-     * Previous message sequence id.
+     * Previous message sequence id in the same stream.
      */
     public long previousId;
 
+    /**
+     * Sequence stream of event, see SequenceStreams.
+     */
+    public int streamId;
+
     /**
      * Unique ID or null if not set.
      */
@@ -8,8 +8,8 @@ public class OrderCancelEvent extends AbstractEvent {
 
     @Override
     public String toString() {
-        return "OrderCancelEvent [sequenceId=" + sequenceId + ", previousId=" + previousId + ", uniqueId=" + uniqueId
-                + ", refId=" + refId + ", createTime=" + createTime + ", userId=" + userId + ", refOrderId=" + refOrderId
+        return "OrderCancelEvent [sequenceId=" + sequenceId + ", previousId=" + previousId + ", streamId=" + streamId
+                + ", uniqueId=" + uniqueId + ", refId=" + refId + ", createTime=" + createTime + ", userId=" + userId + ", refOrderId=" + refOrderId
                 + "]";
     }
 }
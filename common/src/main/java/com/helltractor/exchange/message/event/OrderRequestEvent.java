@@ -6,6 +6,11 @@ import com.helltractor.exchange.enums.Direction;
 
 public class OrderRequestEvent extends AbstractEvent {
 
+    /**
+     * Market symbol id, 0 for the default market.
+     */
+    public long symbolId;
+
     public Long userId;
 
     public Direction direction;
@@ -16,8 +21,8 @@ public class OrderRequestEvent extends AbstractEvent {
 
     @Override
     public String toString() {
-        return "OrderRequestEvent [sequenceId=" + sequenceId + ", previousId=" + previousId + ", uniqueId=" + uniqueId
-                + ", refId=" + refId + ", createTime=" + createTime + ", userId=" + userId + ", direction=" + direction
+        return "OrderRequestEvent [sequenceId=" + sequenceId + ", previousId=" + previousId + ", streamId=" + streamId
+                + ", uniqueId=" + uniqueId + ", refId=" + refId + ", createTime=" + createTime + ", symbolId=" + symbolId + ", userId=" + userId + ", direction=" + direction
                 + ", price=" + price + ", quantity=" + quantity + "]";
     }
 }
@@ -21,8 +21,8 @@ public class TransferEvent extends AbstractEvent {
 
     @Override
     public String toString() {
-        return "TransferEvent [sequenceId=" + sequenceId + ", previousId=" + previousId + ", uniqueId=" + uniqueId
-                + ", refId=" + refId + ", createTime=" + createTime + ", fromUserId=" + fromUserId + ", toUserId="
+        return "TransferEvent [sequenceId=" + sequenceId + ", previousId=" + previousId + ", streamId=" + streamId
+                + ", uniqueId=" + uniqueId + ", refId=" + refId + ", createTime=" + createTime + ", fromUserId=" + fromUserId + ", toUserId="
                 + toUserId + ", assets=" + asset + ", amount=" + amount + ", sufficient=" + sufficient + "]";
     }
 }
@@ -0,0 +1,15 @@
+package com.helltractor.exchange.message.event;
+
+/**
+ * Progress of a sequence stream, sent in the stream after all events sequenced before it. Any later event of the
+ * stream has sequenceId greater than the sequenceId of watermark, and previousId is the last event of the stream.
+ * Watermarks are not stored.
+ */
+public class WatermarkEvent extends AbstractEvent {
+
+    @Override
+    public String toString() {
+        return "WatermarkEvent [sequenceId=" + sequenceId + ", previousId=" + previousId + ", streamId=" + streamId
+                + ", createTime=" + createTime + "]";
+    }
+}
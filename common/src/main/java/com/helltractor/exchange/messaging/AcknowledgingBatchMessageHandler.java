@@ -0,0 +1,15 @@
+package com.helltractor.exchange.messaging;
+
+import java.util.List;
+
+import com.helltractor.exchange.message.AbstractMessage;
+
+@FunctionalInterface
+public interface AcknowledgingBatchMessageHandler<T extends AbstractMessage> {
+
+    /**
+     * Process messages. Offsets of the batch are committed after acknowledge is called, which may happen later on
+     * another thread. Batches of a consumer must be acknowledged in order.
+     */
+    void processMessages(List<T> messages, Runnable acknowledge);
+}
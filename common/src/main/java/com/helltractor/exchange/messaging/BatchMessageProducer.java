@@ -0,0 +1,134 @@
+package com.helltractor.exchange.messaging;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import com.helltractor.exchange.message.AbstractMessage;
+
+/**
+ * Send a batch of messages through one producer call, with asynchronous completion and bounded in-flight messages.
+ * <p>
+ * When maxInFlight messages are not acknowledged yet, sender waits for acknowledgements and the wait is counted and
+ * logged, instead of blocking silently inside the Kafka client when its buffer is full. Counters are logged at most
+ * once per {@link #STATS_LOG_INTERVAL_MILLIS}, and on failure.
+ */
+class BatchMessageProducer<T extends AbstractMessage> implements MessageProducer<T> {
+
+    static final long STATS_LOG_INTERVAL_MILLIS = 60_000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final String topic;
+
+    private final MessageTypes messageTypes;
+
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    private final Semaphore inFlight;
+
+    // partition of message, or null to let Kafka choose
+    private final ToIntFunction<? super T> partitioner;
+
+    private final ProducerStats stats = new ProducerStats();
+
+    private final AtomicLong nextStatsLogTime = new AtomicLong(System.currentTimeMillis() + STATS_LOG_INTERVAL_MILLIS);
+
+    BatchMessageProducer(String topic, MessageTypes messageTypes, KafkaTemplate<String, byte[]> kafkaTemplate,
+            int maxInFlight, ToIntFunction<? super T> partitioner) {
+        this.topic = topic;
+        this.partitioner = partitioner;
+        this.messageTypes = messageTypes;
+        this.kafkaTemplate = kafkaTemplate;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendMessages(List<T> messages) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (messages.isEmpty()) {
+            future.complete(null);
+            return future;
+        }
+        // 先在调用线程序列化，减少持有producer的时间
+        byte[][] values = new byte[messages.size()][];
+        Integer[] partitions = new Integer[messages.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = this.messageTypes.serialize(messages.get(i));
+            if (this.partitioner != null) {
+                partitions[i] = this.partitioner.applyAsInt(messages.get(i));
+            }
+        }
+        AtomicInteger pending = new AtomicInteger(values.length);
+        this.kafkaTemplate.execute(producer -> {
+            boolean throttled = false;
+            for (int i = 0; i < values.length; i++) {
+                if (!this.inFlight.tryAcquire()) {
+                    if (!throttled) {
+                        throttled = true;
+                        this.stats.onThrottled();
+                        logger.warn("too many in-flight messages to topic {}, wait for acknowledgements...",
+                                this.topic);
+                    }
+                    waitForAcknowledgement();
+                }
+                final long start = System.nanoTime();
+                try {
+                    ProducerRecord<String, byte[]> record = new ProducerRecord<>(this.topic, partitions[i], null,
+                            values[i]);
+                    producer.send(record, (metadata, exception) -> {
+                        this.inFlight.release();
+                        if (exception != null) {
+                            this.stats.onFailed();
+                            logger.error("send message to topic " + this.topic + " failed: " + this.stats, exception);
+                            future.completeExceptionally(exception);
+                        } else {
+                            this.stats.onAcknowledged(System.nanoTime() - start);
+                            logStats();
+                            if (pending.decrementAndGet() == 0) {
+                                future.complete(null);
+                            }
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    this.inFlight.release();
+                    this.stats.onFailed();
+                    future.completeExceptionally(e);
+                    throw e;
+                }
+            }
+            return null;
+        });
+        return future;
+    }
+
+    private void logStats() {
+        long now = System.currentTimeMillis();
+        long next = this.nextStatsLogTime.get();
+        if (now >= next && this.nextStatsLogTime.compareAndSet(next, now + STATS_LOG_INTERVAL_MILLIS)) {
+            logger.info("producer stats of topic {}: {}", this.topic, this.stats);
+        }
+    }
+
+    private void waitForAcknowledgement() {
+        try {
+            this.inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted when waiting for acknowledgements.", e);
+        }
+    }
+
+    @Override
+    public ProducerStats getStats() {
+        return this.stats;
+    }
+}
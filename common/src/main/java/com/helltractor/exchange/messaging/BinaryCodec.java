@@ -0,0 +1,401 @@
+package com.helltractor.exchange.messaging;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.helltractor.exchange.enums.AssetEnum;
+import com.helltractor.exchange.enums.Direction;
+import com.helltractor.exchange.message.AbstractMessage;
+import com.helltractor.exchange.message.TickMessage;
+import com.helltractor.exchange.message.event.AbstractEvent;
+import com.helltractor.exchange.message.event.OrderCancelEvent;
+import com.helltractor.exchange.message.event.OrderRequestEvent;
+import com.helltractor.exchange.message.event.TransferEvent;
+import com.helltractor.exchange.message.event.WatermarkEvent;
+import com.helltractor.exchange.model.quatation.TickEntity;
+
+/**
+ * Fixed-layout binary encoding of hot message types.
+ * <p>
+ * Layout: format version byte, type id byte, then fields in declared order. Integers are zigzag varints, strings and
+ * nullable values carry a presence marker, and BigDecimal is written as unscaled value and scale. Type ids are part
+ * of the format and must never be reused.
+ */
+final class BinaryCodec {
+
+    /**
+     * First byte of binary data. JSON data always starts with a class name, so never starts with this byte.
+     */
+    static final byte FORMAT_VERSION = 2;
+
+    // version 1 has no streamId
+    static final byte MIN_FORMAT_VERSION = 1;
+
+    static boolean isBinary(byte[] data) {
+        return data.length > 0 && data[0] >= MIN_FORMAT_VERSION && data[0] <= FORMAT_VERSION;
+    }
+
+    private interface TypeCodec<T extends AbstractMessage> {
+
+        void encode(T message, Writer out);
+
+        T decode(Reader in);
+    }
+
+    private final TypeCodec<?>[] codecs = new TypeCodec<?>[16];
+
+    private final Map<Class<?>, Integer> typeIds = new HashMap<>();
+
+    BinaryCodec() {
+        register(1, OrderRequestEvent.class, new TypeCodec<>() {
+            @Override
+            public void encode(OrderRequestEvent message, Writer out) {
+                writeEvent(message, out);
+                out.writeLong(message.symbolId);
+                out.writeNullableLong(message.userId);
+                out.writeEnum(message.direction);
+                out.writeDecimal(message.price);
+                out.writeDecimal(message.quantity);
+            }
+
+            @Override
+            public OrderRequestEvent decode(Reader in) {
+                OrderRequestEvent message = readEvent(new OrderRequestEvent(), in);
+                message.symbolId = in.readLong();
+                message.userId = in.readNullableLong();
+                message.direction = in.readEnum(Direction.values());
+                message.price = in.readDecimal();
+                message.quantity = in.readDecimal();
+                return message;
+            }
+        });
+        register(2, OrderCancelEvent.class, new TypeCodec<>() {
+            @Override
+            public void encode(OrderCancelEvent message, Writer out) {
+                writeEvent(message, out);
+                out.writeNullableLong(message.userId);
+                out.writeNullableLong(message.refOrderId);
+            }
+
+            @Override
+            public OrderCancelEvent decode(Reader in) {
+                OrderCancelEvent message = readEvent(new OrderCancelEvent(), in);
+                message.userId = in.readNullableLong();
+                message.refOrderId = in.readNullableLong();
+                return message;
+            }
+        });
+        register(3, TransferEvent.class, new TypeCodec<>() {
+            @Override
+            public void encode(TransferEvent message, Writer out) {
+                writeEvent(message, out);
+                out.writeNullableLong(message.fromUserId);
+                out.writeNullableLong(message.toUserId);
+                out.writeEnum(message.asset);
+                out.writeDecimal(message.amount);
+                out.writeByte(message.sufficient ? 1 : 0);
+            }
+
+            @Override
+            public TransferEvent decode(Reader in) {
+                TransferEvent message = readEvent(new TransferEvent(), in);
+                message.fromUserId = in.readNullableLong();
+                message.toUserId = in.readNullableLong();
+                message.asset = in.readEnum(AssetEnum.values());
+                message.amount = in.readDecimal();
+                message.sufficient = in.readByte() != 0;
+                return message;
+            }
+        });
+        register(4, TickMessage.class, new TypeCodec<>() {
+            @Override
+            public void encode(TickMessage message, Writer out) {
+                writeMessage(message, out);
+                out.writeLong(message.sequenceId);
+                if (message.ticks == null) {
+                    out.writeLong(-1);
+                    return;
+                }
+                out.writeLong(message.ticks.size());
+                for (TickEntity tick : message.ticks) {
+                    out.writeLong(tick.id);
+                    out.writeLong(tick.sequenceId);
+                    out.writeNullableLong(tick.takerOrderId);
+                    out.writeNullableLong(tick.makerOrderId);
+                    out.writeByte(tick.takerDirection ? 1 : 0);
+                    out.writeDecimal(tick.price);
+                    out.writeDecimal(tick.quantity);
+                    out.writeLong(tick.createTime);
+                }
+            }
+
+            @Override
+            public TickMessage decode(Reader in) {
+                TickMessage message = readMessage(new TickMessage(), in);
+                message.sequenceId = in.readLong();
+                int size = (int) in.readLong();
+                if (size < 0) {
+                    return message;
+                }
+                message.ticks = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    TickEntity tick = new TickEntity();
+                    tick.id = in.readLong();
+                    tick.sequenceId = in.readLong();
+                    tick.takerOrderId = in.readNullableLong();
+                    tick.makerOrderId = in.readNullableLong();
+                    tick.takerDirection = in.readByte() != 0;
+                    tick.price = in.readDecimal();
+                    tick.quantity = in.readDecimal();
+                    tick.createTime = in.readLong();
+                    message.ticks.add(tick);
+                }
+                return message;
+            }
+        });
+        register(5, WatermarkEvent.class, new TypeCodec<>() {
+            @Override
+            public void encode(WatermarkEvent message, Writer out) {
+                writeEvent(message, out);
+            }
+
+            @Override
+            public WatermarkEvent decode(Reader in) {
+                return readEvent(new WatermarkEvent(), in);
+            }
+        });
+    }
+
+    private <T extends AbstractMessage> void register(int typeId, Class<T> clazz, TypeCodec<T> codec) {
+        if (this.codecs[typeId] != null) {
+            throw new IllegalArgumentException("Duplicate type id: " + typeId);
+        }
+        this.codecs[typeId] = codec;
+        this.typeIds.put(clazz, typeId);
+    }
+
+    boolean supports(Class<?> clazz) {
+        return this.typeIds.containsKey(clazz);
+    }
+
+    @SuppressWarnings("unchecked")
+    byte[] encode(AbstractMessage message) {
+        Integer typeId = this.typeIds.get(message.getClass());
+        if (typeId == null) {
+            throw new IllegalArgumentException("Unsupported binary message type: " + message.getClass().getName());
+        }
+        Writer out = new Writer();
+        out.writeByte(FORMAT_VERSION);
+        out.writeByte(typeId);
+        ((TypeCodec<AbstractMessage>) this.codecs[typeId]).encode(message, out);
+        return out.toByteArray();
+    }
+
+    AbstractMessage decode(byte[] data) {
+        if (data.length < 2 || !isBinary(data)) {
+            throw new IllegalArgumentException("Unsupported binary message format.");
+        }
+        int typeId = data[1];
+        TypeCodec<?> codec = typeId > 0 && typeId < this.codecs.length ? this.codecs[typeId] : null;
+        if (codec == null) {
+            throw new IllegalArgumentException("Unable to handle message with type id: " + typeId);
+        }
+        Reader in = new Reader(data, data[0], 2);
+        AbstractMessage message = codec.decode(in);
+        if (in.pos != data.length) {
+            throw new IllegalArgumentException("Unexpected trailing bytes of message with type id: " + typeId);
+        }
+        return message;
+    }
+
+    static void writeMessage(AbstractMessage message, Writer out) {
+        out.writeString(message.refId);
+        out.writeLong(message.createTime);
+    }
+
+    static <T extends AbstractMessage> T readMessage(T message, Reader in) {
+        message.refId = in.readString();
+        message.createTime = in.readLong();
+        return message;
+    }
+
+    static void writeEvent(AbstractEvent event, Writer out) {
+        writeMessage(event, out);
+        out.writeLong(event.sequenceId);
+        out.writeLong(event.previousId);
+        out.writeString(event.uniqueId);
+        out.writeLong(event.streamId);
+    }
+
+    static <T extends AbstractEvent> T readEvent(T event, Reader in) {
+        readMessage(event, in);
+        event.sequenceId = in.readLong();
+        event.previousId = in.readLong();
+        event.uniqueId = in.readString();
+        event.streamId = in.version >= 2 ? (int) in.readLong() : 0;
+        return event;
+    }
+
+    static final class Writer {
+
+        private byte[] buffer = new byte[64];
+
+        private int pos = 0;
+
+        void writeByte(int b) {
+            ensure(1);
+            this.buffer[this.pos++] = (byte) b;
+        }
+
+        /**
+         * Zigzag varint, small absolute values take 1 byte.
+         */
+        void writeLong(long value) {
+            long v = (value << 1) ^ (value >> 63);
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                this.buffer[this.pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            this.buffer[this.pos++] = (byte) v;
+        }
+
+        void writeNullableLong(Long value) {
+            if (value == null) {
+                writeByte(0);
+            } else {
+                writeByte(1);
+                writeLong(value.longValue());
+            }
+        }
+
+        void writeString(String s) {
+            if (s == null) {
+                writeLong(-1);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeLong(bytes.length);
+            writeBytes(bytes);
+        }
+
+        void writeEnum(Enum<?> e) {
+            writeByte(e == null ? 0 : e.ordinal() + 1);
+        }
+
+        // tag: 0 = null, 1 = unscaled long, 2 = unscaled bytes
+        void writeDecimal(BigDecimal d) {
+            if (d == null) {
+                writeByte(0);
+                return;
+            }
+            BigInteger unscaled = d.unscaledValue();
+            if (unscaled.bitLength() < 64) {
+                writeByte(1);
+                writeLong(unscaled.longValue());
+            } else {
+                byte[] bytes = unscaled.toByteArray();
+                writeByte(2);
+                writeLong(bytes.length);
+                writeBytes(bytes);
+            }
+            writeLong(d.scale());
+        }
+
+        private void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, this.buffer, this.pos, bytes.length);
+            this.pos += bytes.length;
+        }
+
+        private void ensure(int n) {
+            if (this.pos + n > this.buffer.length) {
+                this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length << 1, this.pos + n));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(this.buffer, this.pos);
+        }
+    }
+
+    static final class Reader {
+
+        private final byte[] data;
+
+        private final int version;
+
+        private int pos;
+
+        Reader(byte[] data, int version, int pos) {
+            this.data = data;
+            this.version = version;
+            this.pos = pos;
+        }
+
+        byte readByte() {
+            if (this.pos >= this.data.length) {
+                throw new IllegalArgumentException("Unexpected end of binary message.");
+            }
+            return this.data[this.pos++];
+        }
+
+        long readLong() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                v |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return (v >>> 1) ^ -(v & 1);
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint.");
+        }
+
+        Long readNullableLong() {
+            return readByte() == 0 ? null : Long.valueOf(readLong());
+        }
+
+        String readString() {
+            int length = (int) readLong();
+            if (length < 0) {
+                return null;
+            }
+            String s = new String(this.data, this.pos, checkLength(length), StandardCharsets.UTF_8);
+            this.pos += length;
+            return s;
+        }
+
+        <E extends Enum<E>> E readEnum(E[] values) {
+            int n = readByte();
+            return n == 0 ? null : values[n - 1];
+        }
+
+        BigDecimal readDecimal() {
+            byte tag = readByte();
+            if (tag == 0) {
+                return null;
+            }
+            if (tag == 1) {
+                long unscaled = readLong();
+                return BigDecimal.valueOf(unscaled, (int) readLong());
+            }
+            int length = checkLength((int) readLong());
+            BigInteger unscaled = new BigInteger(this.data, this.pos, length);
+            this.pos += length;
+            return new BigDecimal(unscaled, (int) readLong());
+        }
+
+        private int checkLength(int length) {
+            if (length < 0 || length > this.data.length - this.pos) {
+                throw new IllegalArgumentException("Invalid length in binary message.");
+            }
+            return length;
+        }
+    }
+}
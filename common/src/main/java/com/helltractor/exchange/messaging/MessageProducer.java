@@ -1,17 +1,24 @@
 package com.helltractor.exchange.messaging;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import com.helltractor.exchange.message.AbstractMessage;
 
-@FunctionalInterface
 public interface MessageProducer<T extends AbstractMessage> {
 
-    default void sendMessages(List<T> messages) {
-        for (T message : messages) {
-            sendMessages(message);
-        }
+    /**
+     * Send messages as one batch. Returned future completes when all messages are acknowledged, or completes
+     * exceptionally with the first error.
+     */
+    CompletableFuture<Void> sendMessages(List<T> messages);
+
+    default CompletableFuture<Void> sendMessages(T message) {
+        return sendMessages(List.of(message));
     }
 
-    void sendMessages(T message);
+    /**
+     * Counters of sent messages.
+     */
+    ProducerStats getStats();
 }
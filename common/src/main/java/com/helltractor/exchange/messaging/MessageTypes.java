@@ -1,5 +1,6 @@
 package com.helltractor.exchange.messaging;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -9,6 +10,7 @@ import java.util.Set;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
 import org.springframework.core.type.classreading.MetadataReader;
@@ -31,6 +33,11 @@ public class MessageTypes {
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final String messagePackage = AbstractMessage.class.getPackageName();
     private final Map<String, Class<? extends AbstractMessage>> messageTypes = new HashMap<>();
+    private final BinaryCodec binaryCodec = new BinaryCodec();
+
+    // write binary format for supported types, or JSON only (while old readers are still running)
+    @Value("${exchange.messaging.binary:true}")
+    private boolean binary = true;
 
     @SuppressWarnings("unchecked")
     @PostConstruct
@@ -64,26 +71,38 @@ public class MessageTypes {
         }
     }
 
-    public String serialize(AbstractMessage message) {
+    /**
+     * Serialize message to binary format if supported, otherwise to UTF-8 bytes of JSON format.
+     */
+    public byte[] serialize(AbstractMessage message) {
+        if (this.binary && this.binaryCodec.supports(message.getClass())) {
+            return this.binaryCodec.encode(message);
+        }
+        return serializeToJson(message).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public String serializeToJson(AbstractMessage message) {
         String type = message.getClass().getName();
         String json = JsonUtil.writeJson(message);
         return type + SEP + json;
     }
 
-    public List<AbstractMessage> deserialize(List<String> dataList) {
+    public List<AbstractMessage> deserializeConsumerRecords(List<ConsumerRecord<String, byte[]>> dataList) {
         List<AbstractMessage> list = new ArrayList<>(dataList.size());
-        for (String data : dataList) {
-            list.add(deserialize(data));
+        for (ConsumerRecord<String, byte[]> data : dataList) {
+            list.add(deserialize(data.value()));
         }
         return list;
     }
 
-    public List<AbstractMessage> deserializeConsumerRecords(List<ConsumerRecord<String, String>> dataList) {
-        List<AbstractMessage> list = new ArrayList<>(dataList.size());
-        for (ConsumerRecord<String, String> data : dataList) {
-            list.add(deserialize(data.value()));
+    /**
+     * Deserialize message in binary or JSON format, which is detected by the first byte.
+     */
+    public AbstractMessage deserialize(byte[] data) {
+        if (BinaryCodec.isBinary(data)) {
+            return this.binaryCodec.decode(data);
         }
-        return list;
+        return deserialize(new String(data, StandardCharsets.UTF_8));
     }
 
     public AbstractMessage deserialize(String data) {
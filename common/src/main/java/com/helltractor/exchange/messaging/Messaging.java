@@ -8,29 +8,39 @@ public interface Messaging {
     enum Topic {
 
         /**
-         * Topic name: to sequence.
+         * Topic name: to sequence, one partition per sequence stream.
          */
-        SEQUENCE(1),
+        SEQUENCE(1, true),
 
         /**
          * Topic name: to/from trading-engine.
          */
-        TRANSFER(1),
+        TRANSFER(1, false),
 
         /**
-         * Topic name: events to trading-engine.
+         * Topic name: events to trading-engine, one partition per sequence stream.
          */
-        TRADE(1),
+        TRADE(1, true),
 
         /**
          * Topic name: tick to quotation for generate bars.
          */
-        TICK(1);
+        TICK(1, false);
 
         final int concurrency;
 
-        Topic(int concurrency) {
+        final boolean streamed;
+
+        Topic(int concurrency, boolean streamed) {
             this.concurrency = concurrency;
+            this.streamed = streamed;
+        }
+
+        /**
+         * Partitioned by sequence stream.
+         */
+        public boolean isStreamed() {
+            return this.streamed;
         }
 
         public int getConcurrency() {
@@ -1,25 +1,36 @@
 package com.helltractor.exchange.messaging;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.function.ToIntFunction;
 import java.util.regex.Pattern;
 
 import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.NewPartitions;
 import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.config.KafkaListenerEndpoint;
 import org.springframework.kafka.core.KafkaAdmin;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.BatchAcknowledgingMessageListener;
 import org.springframework.kafka.listener.BatchMessageListener;
 import org.springframework.kafka.listener.CommonErrorHandler;
 import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.kafka.support.TopicPartitionOffset;
 import org.springframework.kafka.support.converter.MessageConverter;
 import org.springframework.lang.NonNull;
@@ -39,15 +50,18 @@ public class MessagingFactory {
 
     private final MessageTypes messageTypes;
 
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final ProducerFactory<String, byte[]> producerFactory;
 
-    private final ConcurrentKafkaListenerContainerFactory<String, String> listenerContainerFactory;
+    private final Environment environment;
+
+    private final ConcurrentKafkaListenerContainerFactory<String, byte[]> listenerContainerFactory;
 
     private final KafkaAdmin kafkaAdmin;
 
-    public MessagingFactory(MessageTypes messageTypes, KafkaTemplate<String, String> kafkaTemplate, ConcurrentKafkaListenerContainerFactory<String, String> listenerContainerFactory, KafkaAdmin kafkaAdmin) {
+    public MessagingFactory(MessageTypes messageTypes, ProducerFactory<String, byte[]> producerFactory, Environment environment, ConcurrentKafkaListenerContainerFactory<String, byte[]> listenerContainerFactory, KafkaAdmin kafkaAdmin) {
         this.messageTypes = messageTypes;
-        this.kafkaTemplate = kafkaTemplate;
+        this.producerFactory = producerFactory;
+        this.environment = environment;
         this.listenerContainerFactory = listenerContainerFactory;
         this.kafkaAdmin = kafkaAdmin;
     }
@@ -62,7 +76,7 @@ public class MessagingFactory {
             List<NewTopic> newTopics = new ArrayList<>();
             for (Messaging.Topic topic : Messaging.Topic.values()) {
                 if (!allTopics.contains(topic.name())) {
-                    newTopics.add(new NewTopic(topic.name(), topic.getPartitions(), (short) 1));
+                    newTopics.add(new NewTopic(topic.name(), getPartitions(topic), (short) 1));
                 }
             }
             if (!newTopics.isEmpty()) {
@@ -71,23 +85,74 @@ public class MessagingFactory {
                     logger.warn("auto-create kafka topics when init MessagingFactory: {}", t);
                 });
             }
+            // 增加按流分区的topic的分区数
+            List<String> streamedTopics = Arrays.stream(Messaging.Topic.values())
+                    .filter(t -> t.isStreamed() && allTopics.contains(t.name())).map(Messaging.Topic::name).toList();
+            Map<String, NewPartitions> newPartitions = new HashMap<>();
+            if (!streamedTopics.isEmpty()) {
+                client.describeTopics(streamedTopics).allTopicNames().get().forEach((name, description) -> {
+                    int partitions = getPartitions(Messaging.Topic.valueOf(name));
+                    if (description.partitions().size() < partitions) {
+                        logger.warn("increase partitions of kafka topic {} from {} to {}.", name,
+                                description.partitions().size(), partitions);
+                        newPartitions.put(name, NewPartitions.increaseTo(partitions));
+                    }
+                });
+            }
+            if (!newPartitions.isEmpty()) {
+                client.createPartitions(newPartitions).all().get();
+            }
         }
         logger.info("init MessagingFactory ok.");
     }
 
+    /**
+     * Number of sequence streams, which is also number of partitions of streamed topics.
+     */
+    public int getSequenceStreams() {
+        int streams = this.environment.getProperty("exchange.sequence.streams", Integer.class, 1);
+        SequenceStreams.checkStreams(streams);
+        return streams;
+    }
+
+    int getPartitions(Messaging.Topic topic) {
+        return topic.isStreamed() ? Math.max(topic.getPartitions(), getSequenceStreams()) : topic.getPartitions();
+    }
+
     /**
      * 创建消息生产者
      */
     public <T extends AbstractMessage> MessageProducer<T> createMessageProducer(Messaging.Topic topic,
             Class<T> messageClass) {
+        return createMessageProducer(topic, messageClass, null);
+    }
+
+    /**
+     * 创建消息生产者，消息发送到partitioner指定的分区
+     */
+    public <T extends AbstractMessage> MessageProducer<T> createMessageProducer(Messaging.Topic topic,
+            Class<T> messageClass, ToIntFunction<? super T> partitioner) {
         logger.info("try create message producer for topic {}...", topic);
-        final String name = topic.name();
-        return new MessageProducer<>() {
-            @Override
-            public void sendMessages(AbstractMessage message) {
-                kafkaTemplate.send(name, messageTypes.serialize(message));
-            }
-        };
+        Map<String, Object> configs = new HashMap<>();
+        configs.put(ProducerConfig.LINGER_MS_CONFIG, producerProperty(topic, "linger-ms", Integer.class, 1));
+        configs.put(ProducerConfig.BATCH_SIZE_CONFIG, producerProperty(topic, "batch-size", Integer.class, 65536));
+        configs.put(ProducerConfig.COMPRESSION_TYPE_CONFIG,
+                producerProperty(topic, "compression-type", String.class, "lz4"));
+        int maxInFlight = producerProperty(topic, "max-in-flight-messages", Integer.class, 100000);
+        logger.info("producer configs of topic {}: {}, max in-flight messages: {}", topic, configs, maxInFlight);
+        // 每个Topic使用独立的producer，以便分别配置批量和压缩
+        KafkaTemplate<String, byte[]> kafkaTemplate = new KafkaTemplate<>(this.producerFactory, configs);
+        return new BatchMessageProducer<>(topic.name(), this.messageTypes, kafkaTemplate, maxInFlight, partitioner);
+    }
+
+    /**
+     * Get producer property of topic, e.g. exchange.messaging.producer.tick.linger-ms, or default of all topics, e.g.
+     * exchange.messaging.producer.linger-ms.
+     */
+    private <V> V producerProperty(Messaging.Topic topic, String key, Class<V> type, V defaultValue) {
+        String prefix = "exchange.messaging.producer.";
+        V value = this.environment.getProperty(prefix + topic.name().toLowerCase() + "." + key, type);
+        return value != null ? value : this.environment.getProperty(prefix + key, type, defaultValue);
     }
 
     public <T extends AbstractMessage> MessageConsumer createBatchMessageListener(Messaging.Topic topic, String groupId,
@@ -95,13 +160,75 @@ public class MessagingFactory {
         return createBatchMessageListener(topic, groupId, messageHandler, null);
     }
 
+    /**
+     * 创建批量消息侦听器，消息由decodeThreads个线程并行解析，并按原顺序分块交给messageHandler
+     */
+    public <T extends AbstractMessage> MessageConsumer createBatchMessageListener(Messaging.Topic topic, String groupId,
+            BatchMessageHandler<T> messageHandler, int decodeThreads, int decodeChunkSize) {
+        logger.info("create parallel decoder for topic {}: threads = {}, chunk size = {}", topic, decodeThreads,
+                decodeChunkSize);
+        ParallelMessageDecoder<T> decoder = new ParallelMessageDecoder<>(messageTypes, messageHandler, topic.name(),
+                decodeThreads, decodeChunkSize);
+        MessageConsumer consumer = createListenerContainer(topic, groupId,
+                (BatchMessageListener<String, byte[]>) decoder::onMessage, null, 1);
+        return () -> {
+            consumer.stop();
+            decoder.shutdown();
+        };
+    }
+
     /**
      * 创建批量消息侦听器
      */
     public <T extends AbstractMessage> MessageConsumer createBatchMessageListener(Messaging.Topic topic, String groupId,
             BatchMessageHandler<T> messageHandler, CommonErrorHandler errorHandler) {
+        return createBatchMessageListener(topic, groupId, messageHandler, errorHandler, 1);
+    }
+
+    /**
+     * 创建批量消息侦听器，由concurrency个线程分别消费不同分区，messageHandler可能被并发调用
+     */
+    public <T extends AbstractMessage> MessageConsumer createBatchMessageListener(Messaging.Topic topic, String groupId,
+            BatchMessageHandler<T> messageHandler, CommonErrorHandler errorHandler, int concurrency) {
+        return createListenerContainer(topic, groupId, new BatchMessageListener<String, byte[]>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void onMessage(@NonNull List<ConsumerRecord<String, byte[]>> data) {
+                List<T> messages = new ArrayList<>(data.size());
+                for (ConsumerRecord<String, byte[]> record : data) {
+                    AbstractMessage message = messageTypes.deserialize(record.value());
+                    messages.add((T) message);
+                }
+                messageHandler.processMessages(messages);
+            }
+        }, errorHandler, concurrency);
+    }
+
+    /**
+     * 创建批量消息侦听器，offset在messageHandler调用acknowledge后提交，因此可以在返回后继续异步处理消息
+     */
+    public <T extends AbstractMessage> MessageConsumer createAcknowledgingBatchMessageListener(Messaging.Topic topic,
+            String groupId, AcknowledgingBatchMessageHandler<T> messageHandler, CommonErrorHandler errorHandler,
+            int concurrency) {
+        return createListenerContainer(topic, groupId, new BatchAcknowledgingMessageListener<String, byte[]>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void onMessage(@NonNull List<ConsumerRecord<String, byte[]>> data, Acknowledgment acknowledgment) {
+                List<T> messages = new ArrayList<>(data.size());
+                for (ConsumerRecord<String, byte[]> record : data) {
+                    AbstractMessage message = messageTypes.deserialize(record.value());
+                    messages.add((T) message);
+                }
+                // 其他线程的确认由消费线程在下次poll时提交
+                messageHandler.processMessages(messages, acknowledgment::acknowledge);
+            }
+        }, errorHandler, concurrency);
+    }
+
+    private MessageConsumer createListenerContainer(Messaging.Topic topic, String groupId,
+            Object messageListener, CommonErrorHandler errorHandler, int concurrency) {
         logger.info("try create batch message listener for topic {}: group id = {}...", topic, groupId);
-        ConcurrentMessageListenerContainer<String, String> listenerContainer = listenerContainerFactory
+        ConcurrentMessageListenerContainer<String, byte[]> listenerContainer = listenerContainerFactory
                 .createListenerContainer(new KafkaListenerEndpointAdapter() {
                     @Override
                     public String getGroupId() {
@@ -113,18 +240,11 @@ public class MessagingFactory {
                         return List.of(topic.name());
                     }
                 });
-        listenerContainer.setupMessageListener(new BatchMessageListener<String, String>() {
-            @Override
-            @SuppressWarnings("unchecked")
-            public void onMessage(@NonNull List<ConsumerRecord<String, String>> data) {
-                List<T> messages = new ArrayList<>(data.size());
-                for (ConsumerRecord<String, String> record : data) {
-                    AbstractMessage message = messageTypes.deserialize(record.value());
-                    messages.add((T) message);
-                }
-                messageHandler.processMessages(messages);
-            }
-        });
+        listenerContainer.setConcurrency(concurrency);
+        if (messageListener instanceof BatchAcknowledgingMessageListener) {
+            listenerContainer.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        }
+        listenerContainer.setupMessageListener(messageListener);
         if (errorHandler != null) {
             listenerContainer.setCommonErrorHandler(errorHandler);
         }
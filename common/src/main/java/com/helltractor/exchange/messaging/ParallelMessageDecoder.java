@@ -0,0 +1,96 @@
+package com.helltractor.exchange.messaging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import com.helltractor.exchange.message.AbstractMessage;
+
+/**
+ * Decode a batch of records on a worker pool, and pass decoded chunks to handler in original order.
+ * <p>
+ * The handler runs on the consumer thread and processes chunk N while later chunks are still being decoded, so that
+ * parsing overlaps with handling. The batch is completely handled before return, so offsets are committed as before.
+ * <p>
+ * The handler is called once per chunk, not once per batch. If a record in chunk N cannot be decoded, the exception is
+ * thrown to the container after chunks 0..N-1 have been handled, and the container retries the whole batch, so the
+ * handler must skip messages it has already processed. Batches not larger than chunk size are decoded and handled on
+ * the consumer thread, and still work after {@link #shutdown()}.
+ */
+class ParallelMessageDecoder<T extends AbstractMessage> {
+
+    private final MessageTypes messageTypes;
+
+    private final BatchMessageHandler<T> messageHandler;
+
+    private final int chunkSize;
+
+    private final ExecutorService executor;
+
+    ParallelMessageDecoder(MessageTypes messageTypes, BatchMessageHandler<T> messageHandler, String name, int threads,
+            int chunkSize) {
+        if (threads <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid decode threads or chunk size.");
+        }
+        this.messageTypes = messageTypes;
+        this.messageHandler = messageHandler;
+        this.chunkSize = chunkSize;
+        AtomicInteger index = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "decode-" + name + "-" + index.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    void onMessage(List<ConsumerRecord<String, byte[]>> data) {
+        if (data.size() <= this.chunkSize) {
+            // 小批量直接在当前线程解析
+            this.messageHandler.processMessages(decode(data));
+            return;
+        }
+        List<Future<List<T>>> futures = new ArrayList<>(data.size() / this.chunkSize + 1);
+        for (int start = 0; start < data.size(); start += this.chunkSize) {
+            List<ConsumerRecord<String, byte[]>> chunk = data.subList(start,
+                    Math.min(start + this.chunkSize, data.size()));
+            futures.add(this.executor.submit(() -> decode(chunk)));
+        }
+        try {
+            for (Future<List<T>> future : futures) {
+                this.messageHandler.processMessages(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted when decoding messages.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            // 处理失败时取消剩余解析任务
+            for (Future<List<T>> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<T> decode(List<ConsumerRecord<String, byte[]>> records) {
+        List<T> messages = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, byte[]> record : records) {
+            messages.add((T) this.messageTypes.deserialize(record.value()));
+        }
+        return messages;
+    }
+
+    void shutdown() {
+        this.executor.shutdownNow();
+    }
+}
@@ -0,0 +1,66 @@
+package com.helltractor.exchange.messaging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a message producer, updated by send callbacks.
+ */
+public class ProducerStats {
+
+    private final LongAdder sent = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    // times that sender waited for in-flight messages to be acknowledged
+    private final LongAdder throttled = new LongAdder();
+
+    private final LongAdder totalLatencyNanos = new LongAdder();
+
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    void onAcknowledged(long latencyNanos) {
+        this.sent.increment();
+        this.totalLatencyNanos.add(latencyNanos);
+        this.maxLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+    }
+
+    void onFailed() {
+        this.failed.increment();
+    }
+
+    void onThrottled() {
+        this.throttled.increment();
+    }
+
+    public long getSent() {
+        return this.sent.sum();
+    }
+
+    public long getFailed() {
+        return this.failed.sum();
+    }
+
+    public long getThrottled() {
+        return this.throttled.sum();
+    }
+
+    /**
+     * Average latency from send to acknowledge in microseconds.
+     */
+    public long getAverageLatencyMicros() {
+        long n = this.sent.sum();
+        return n == 0 ? 0 : this.totalLatencyNanos.sum() / n / 1000;
+    }
+
+    public long getMaxLatencyMicros() {
+        return this.maxLatencyNanos.get() / 1000;
+    }
+
+    @Override
+    public String toString() {
+        return "ProducerStats [sent=" + getSent() + ", failed=" + getFailed() + ", throttled=" + getThrottled()
+                + ", avgLatencyMicros=" + getAverageLatencyMicros() + ", maxLatencyMicros=" + getMaxLatencyMicros()
+                + "]";
+    }
+}
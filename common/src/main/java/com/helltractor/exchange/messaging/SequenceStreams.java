@@ -0,0 +1,39 @@
+package com.helltractor.exchange.messaging;
+
+/**
+ * Events are sequenced in independent streams partitioned by market symbol. Each stream has its own previousId chain,
+ * and is sent through the partition of the same index of SEQUENCE and TRADE topics.
+ * <p>
+ * Sequence ids of all streams are still globally unique: ids of stream N are always congruent to N modulo
+ * {@link #MAX_STREAMS}. Ids are issued by one counter, so they increase in the order they are issued across streams,
+ * and the engine applies events of all streams in sequenceId order, which is the same however the partitions arrive.
+ * Idle streams send WatermarkEvent so that other streams are not held back. Transfers are always in stream 0, and a
+ * cancel is in the same stream as its order.
+ */
+public final class SequenceStreams {
+
+    public static final int MAX_STREAMS = 64;
+
+    private SequenceStreams() {
+    }
+
+    /**
+     * Stream of market symbol.
+     */
+    public static int streamOf(long symbolId, int streams) {
+        return (int) Math.floorMod(symbolId, (long) streams);
+    }
+
+    /**
+     * Next sequence id of stream which is greater than lastSequenceId.
+     */
+    public static long nextSequenceId(long lastSequenceId, int streamId) {
+        return (lastSequenceId / MAX_STREAMS + 1) * MAX_STREAMS + streamId;
+    }
+
+    public static void checkStreams(int streams) {
+        if (streams < 1 || streams > MAX_STREAMS) {
+            throw new IllegalArgumentException("Invalid number of sequence streams: " + streams);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import com.helltractor.exchange.model.support.EntitySupport;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import jakarta.persistence.UniqueConstraint;
 
@@ -12,7 +13,8 @@ import jakarta.persistence.UniqueConstraint;
  * Event readonly entity.
  */
 @Entity
-@Table(name = "events", uniqueConstraints = @UniqueConstraint(name = "UNI_PREV_ID", columnNames = {"previousId"}))
+@Table(name = "events", uniqueConstraints = @UniqueConstraint(name = "UNI_STREAM_PREV_ID", columnNames = {"streamId",
+    "previousId"}), indexes = @Index(name = "IDX_STREAM_SEQ", columnList = "streamId, sequenceId"))
 public class EventEntity implements EntitySupport {
 
     /**
@@ -23,23 +25,29 @@ public class EventEntity implements EntitySupport {
     public long sequenceId;
 
     /**
-     * Keep previous id. The previous id of first event is 0.
+     * Keep previous id in the same stream. The previous id of first event of stream is 0.
      */
     @Column(nullable = false, updatable = false)
     public long previousId;
 
     /**
-     * JSON-encoded event data.
+     * Sequence stream, see SequenceStreams.
      */
-    @Column(nullable = false, updatable = false, length = VAR_CHAR_10000)
-    public String data;
+    @Column(nullable = false, updatable = false)
+    public int streamId;
+
+    /**
+     * Encoded event data, see MessageTypes.serialize().
+     */
+    @Column(nullable = false, updatable = false)
+    public byte[] data;
 
     @Column(nullable = false, updatable = false)
     public long createTime;
 
     @Override
     public String toString() {
-        return "EventEntity [sequenceId=" + sequenceId + ", previousId=" + previousId + ", data=" + data
-                + ", createTime=" + createTime + "]";
+        return "EventEntity [sequenceId=" + sequenceId + ", previousId=" + previousId + ", streamId=" + streamId
+                + ", data=" + (data == null ? "null" : data.length + " bytes") + ", createTime=" + createTime + "]";
     }
 }
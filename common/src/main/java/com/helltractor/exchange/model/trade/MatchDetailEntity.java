@@ -20,7 +20,8 @@ import jakarta.persistence.UniqueConstraint;
  */
 @Entity
 @Table(name = "match_details", uniqueConstraints = @UniqueConstraint(name = "UNI_OID_COID", columnNames = {"orderId",
-    "counterOrderId"}), indexes = @Index(name = "IDX_OID_CT", columnList = "orderId,createTime"))
+    "counterOrderId"}), indexes = {@Index(name = "IDX_OID_CT", columnList = "orderId,createTime"),
+    @Index(name = "IDX_OID_ID", columnList = "orderId,id")})
 public class MatchDetailEntity implements EntitySupport, Comparable<MatchDetailEntity> {
 
     @Id
@@ -12,6 +12,7 @@ import com.helltractor.exchange.model.support.EntitySupport;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import jakarta.persistence.Transient;
 
@@ -19,7 +20,7 @@ import jakarta.persistence.Transient;
  * Order entity.
  */
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = @Index(name = "IDX_UID_ID", columnList = "userId,id"))
 public class OrderEntity implements EntitySupport, Comparable<OrderEntity> {
 
     /**
@@ -83,6 +84,33 @@ public class OrderEntity implements EntitySupport, Comparable<OrderEntity> {
     @Column(nullable = false, updatable = false, precision = PRECISION, scale = SCALE)
     public BigDecimal unfilledQuantity;
 
+    /**
+     * Market symbol id used by trading engine, and by trading api to find sequence stream of order.
+     */
+    @Transient
+    public long symbolId;
+
+    /**
+     * Fixed-point price used by trading engine.
+     */
+    @Transient
+    @JsonIgnore
+    public long priceUnits;
+
+    /**
+     * Fixed-point quantity used by trading engine.
+     */
+    @Transient
+    @JsonIgnore
+    public long quantityUnits;
+
+    /**
+     * Fixed-point unfilled quantity used by trading engine.
+     */
+    @Transient
+    @JsonIgnore
+    public long unfilledUnits;
+
     private int version;
 
     public void updateOrder(BigDecimal unfilledQuantity, OrderStatus status, long updateTime) {
@@ -105,6 +133,7 @@ public class OrderEntity implements EntitySupport, Comparable<OrderEntity> {
         int ver = this.version;
         entity.status = this.status;
         entity.unfilledQuantity = this.unfilledQuantity;
+        entity.unfilledUnits = this.unfilledUnits;
         entity.updateTime = this.updateTime;
         if (ver != this.version) {
             return null;
@@ -113,8 +142,11 @@ public class OrderEntity implements EntitySupport, Comparable<OrderEntity> {
         entity.direction = this.direction;
         entity.id = this.id;
         entity.price = this.price;
+        entity.priceUnits = this.priceUnits;
         entity.quantity = this.quantity;
+        entity.quantityUnits = this.quantityUnits;
         entity.sequenceId = this.sequenceId;
+        entity.symbolId = this.symbolId;
         entity.userId = this.userId;
         return entity;
     }
@@ -5,10 +5,11 @@ import com.helltractor.exchange.model.support.EntitySupport;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 
 @Entity
-@Table(name = "unique_events")
+@Table(name = "unique_events", indexes = @Index(name = "IDX_CT", columnList = "createTime"))
 public class UniqueEventEntity implements EntitySupport {
 
     @Id
@@ -22,5 +22,12 @@ public interface RedisCache {
         String MIN_BARS = "_min_bars_";
 
         String SEC_BARS = "_sec_bars_";
+
+        /**
+         * Order book key of symbol, the default symbol keeps the original key.
+         */
+        static String orderBook(long symbolId) {
+            return symbolId == 0 ? ORDER_BOOK : ORDER_BOOK + symbolId + "_";
+        }
     }
 }
@@ -0,0 +1,171 @@
+package com.helltractor.exchange.util;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Open-addressing hash map from primitive long to non-negative int, see {@link LongObjectHashMap}. Not thread-safe.
+ */
+public class LongIntHashMap {
+
+    private static final int MIN_CAPACITY = 4;
+
+    private final int initialCapacity;
+
+    private long[] keys;
+
+    // value + 1, and 0 means empty slot
+    private int[] values;
+
+    private int mask;
+
+    private int size;
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    public LongIntHashMap(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, initialCapacity) - 1) << 1;
+        this.initialCapacity = capacity;
+        allocate(capacity);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Get value of key, or -1 if not exist.
+     */
+    public int get(long key) {
+        final long[] keys = this.keys;
+        final int[] values = this.values;
+        for (int i = slot(key);; i = (i + 1) & this.mask) {
+            int value = values[i];
+            if (value == 0) {
+                return -1;
+            }
+            if (keys[i] == key) {
+                return value - 1;
+            }
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) >= 0;
+    }
+
+    /**
+     * Put value and return the previous value, or -1 if not exist.
+     */
+    public int put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Value must not be negative.");
+        }
+        for (int i = slot(key);; i = (i + 1) & this.mask) {
+            int old = this.values[i];
+            if (old == 0) {
+                this.keys[i] = key;
+                this.values[i] = value + 1;
+                if (++this.size > (this.values.length >> 2) * 3) {
+                    resize(this.values.length << 1);
+                }
+                return -1;
+            }
+            if (this.keys[i] == key) {
+                this.values[i] = value + 1;
+                return old - 1;
+            }
+        }
+    }
+
+    /**
+     * Remove key and return the removed value, or -1 if not exist.
+     */
+    public int remove(long key) {
+        for (int i = slot(key);; i = (i + 1) & this.mask) {
+            int old = this.values[i];
+            if (old == 0) {
+                return -1;
+            }
+            if (this.keys[i] == key) {
+                shiftBack(i);
+                if (--this.size < (this.values.length >> 3) && this.values.length > this.initialCapacity) {
+                    resize(this.values.length >> 1);
+                }
+                return old - 1;
+            }
+        }
+    }
+
+    /**
+     * Visit all keys in table order.
+     */
+    public void forEachKey(LongConsumer action) {
+        for (int i = 0; i < this.values.length; i++) {
+            if (this.values[i] != 0) {
+                action.accept(this.keys[i]);
+            }
+        }
+    }
+
+    public void clear() {
+        if (this.values.length > this.initialCapacity) {
+            allocate(this.initialCapacity);
+        } else {
+            Arrays.fill(this.values, 0);
+        }
+        this.size = 0;
+    }
+
+    private void shiftBack(int i) {
+        final long[] keys = this.keys;
+        final int[] values = this.values;
+        for (int j = (i + 1) & this.mask;; j = (j + 1) & this.mask) {
+            if (values[j] == 0) {
+                break;
+            }
+            int home = slot(keys[j]);
+            // move j to i if home is not in the cyclic range (i, j]:
+            if (((j - home) & this.mask) >= ((j - i) & this.mask)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        values[i] = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            int value = oldValues[i];
+            if (value != 0) {
+                int j = slot(oldKeys[i]);
+                while (this.values[j] != 0) {
+                    j = (j + 1) & this.mask;
+                }
+                this.keys[j] = oldKeys[i];
+                this.values[j] = value;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & this.mask;
+    }
+}
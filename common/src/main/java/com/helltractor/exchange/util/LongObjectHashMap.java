@@ -0,0 +1,190 @@
+package com.helltractor.exchange.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Open-addressing hash map with primitive long keys, which does not box keys and allocates no entry objects.
+ * <p>
+ * Linear probing with backward-shift deletion (no tombstones). The table doubles when 3/4 full and halves when less
+ * than 1/8 full, but never below the initial capacity. Values must not be null. Not thread-safe.
+ */
+public class LongObjectHashMap<V> {
+
+    private static final int MIN_CAPACITY = 4;
+
+    private final int initialCapacity;
+
+    private long[] keys;
+
+    // null means empty slot
+    private Object[] values;
+
+    private int mask;
+
+    private int size;
+
+    public LongObjectHashMap() {
+        this(16);
+    }
+
+    public LongObjectHashMap(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, initialCapacity) - 1) << 1;
+        this.initialCapacity = capacity;
+        allocate(capacity);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        final long[] keys = this.keys;
+        final Object[] values = this.values;
+        for (int i = slot(key);; i = (i + 1) & this.mask) {
+            Object value = values[i];
+            if (value == null) {
+                return null;
+            }
+            if (keys[i] == key) {
+                return (V) value;
+            }
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Put value and return the previous value, or null if not exist.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Value must not be null.");
+        }
+        for (int i = slot(key);; i = (i + 1) & this.mask) {
+            Object old = this.values[i];
+            if (old == null) {
+                this.keys[i] = key;
+                this.values[i] = value;
+                if (++this.size > (this.values.length >> 2) * 3) {
+                    resize(this.values.length << 1);
+                }
+                return null;
+            }
+            if (this.keys[i] == key) {
+                this.values[i] = value;
+                return (V) old;
+            }
+        }
+    }
+
+    /**
+     * Remove key and return the removed value, or null if not exist.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        for (int i = slot(key);; i = (i + 1) & this.mask) {
+            Object old = this.values[i];
+            if (old == null) {
+                return null;
+            }
+            if (this.keys[i] == key) {
+                shiftBack(i);
+                if (--this.size < (this.values.length >> 3) && this.values.length > this.initialCapacity) {
+                    resize(this.values.length >> 1);
+                }
+                return (V) old;
+            }
+        }
+    }
+
+    /**
+     * Visit all values in table order.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        for (Object value : this.values) {
+            if (value != null) {
+                action.accept((V) value);
+            }
+        }
+    }
+
+    /**
+     * Copy all values into a new list.
+     */
+    public List<V> values() {
+        List<V> list = new ArrayList<>(this.size);
+        forEachValue(list::add);
+        return list;
+    }
+
+    public void clear() {
+        Arrays.fill(this.values, null);
+        this.size = 0;
+        if (this.values.length > this.initialCapacity) {
+            allocate(this.initialCapacity);
+        }
+    }
+
+    /**
+     * Empty slot i, and move following entries of the same cluster back so that every entry stays reachable from its
+     * home slot.
+     */
+    private void shiftBack(int i) {
+        final long[] keys = this.keys;
+        final Object[] values = this.values;
+        for (int j = (i + 1) & this.mask;; j = (j + 1) & this.mask) {
+            if (values[j] == null) {
+                break;
+            }
+            int home = slot(keys[j]);
+            // move j to i if home is not in the cyclic range (i, j]:
+            if (((j - home) & this.mask) >= ((j - i) & this.mask)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        values[i] = null;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            Object value = oldValues[i];
+            if (value != null) {
+                int j = slot(oldKeys[i]);
+                while (this.values[j] != null) {
+                    j = (j + 1) & this.mask;
+                }
+                this.keys[j] = oldKeys[i];
+                this.values[j] = value;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+    }
+
+    private int slot(long key) {
+        // Fibonacci hashing spreads sequential ids:
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & this.mask;
+    }
+}
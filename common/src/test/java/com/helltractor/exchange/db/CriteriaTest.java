@@ -0,0 +1,131 @@
+package com.helltractor.exchange.db;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import com.helltractor.exchange.model.trade.OrderEntity;
+
+public class CriteriaTest {
+
+    // prepare statement on a recording connection and read rows from an in-memory result set
+    static class StreamingJdbcTemplate extends JdbcTemplate {
+
+        final List<String> calls = new ArrayList<>();
+
+        final List<Object[]> rows = new ArrayList<>();
+
+        ResultSet execute(PreparedStatementCreator psc) throws SQLException {
+            PreparedStatement ps = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+                        calls.add(method.getName() + (args == null ? "" : List.of(args)));
+                        return null;
+                    });
+            Connection con = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                        calls.add(method.getName() + List.of(args));
+                        return ps;
+                    });
+            psc.createPreparedStatement(con);
+            return MapperTest.resultSet(new String[] { "id", "sequenceId" }, rows.toArray(Object[][]::new));
+        }
+
+        @Override
+        public void query(PreparedStatementCreator psc, RowCallbackHandler rch) {
+            try {
+                ResultSet rs = execute(psc);
+                while (rs.next()) {
+                    rch.processRow(rs);
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public <T> Stream<T> queryForStream(PreparedStatementCreator psc, RowMapper<T> rowMapper) {
+            try {
+                ResultSet rs = execute(psc);
+                List<T> list = new ArrayList<>();
+                for (int n = 0; rs.next(); n++) {
+                    list.add(rowMapper.mapRow(rs, n));
+                }
+                return list.stream();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    DbTemplate dbTemplate = new DbTemplate(new DbTemplateTest.RecordingJdbcTemplate());
+
+    @Test
+    void testSqlCachedByShape() {
+        Mapper<OrderEntity> mapper = dbTemplate.getMapper(OrderEntity.class);
+        mapper.querySQLCache.clear();
+        Limit<OrderEntity> q1 = dbTemplate.from(OrderEntity.class).where("userId = ?", 1L).orderBy("id").desc()
+                .limit(10);
+        Limit<OrderEntity> q2 = dbTemplate.from(OrderEntity.class).where("userId = ?", 2L).orderBy("id").desc()
+                .limit(20, 5);
+        String sql = q1.sql();
+        assertEquals("SELECT * FROM orders WHERE userId = ? ORDER BY id DESC LIMIT ?, ?", sql);
+        // same shape with different arguments share same SQL
+        assertSame(sql, q2.sql());
+        assertEquals(1, mapper.querySQLCache.size());
+        assertArrayEquals(new Object[] { 1L, 0, 10 }, q1.criteria.params());
+        assertArrayEquals(new Object[] { 2L, 20, 5 }, q2.criteria.params());
+        // different shape
+        OrderBy<OrderEntity> q3 = dbTemplate.from(OrderEntity.class).where("userId = ?", 1L).orderBy("id");
+        assertEquals("SELECT * FROM orders WHERE userId = ? ORDER BY id", q3.sql());
+        assertEquals(2, mapper.querySQLCache.size());
+        // cached shape is not changed by later order by
+        q3.desc();
+        assertEquals("SELECT * FROM orders WHERE userId = ? ORDER BY id DESC", q3.sql());
+        assertEquals("SELECT * FROM orders WHERE userId = ? ORDER BY id",
+                dbTemplate.from(OrderEntity.class).where("userId = ?", 3L).orderBy("id").sql());
+    }
+
+    @Test
+    void testParamsWithoutLimit() {
+        Object[] args = { 1L, 2L };
+        Where<OrderEntity> where = dbTemplate.from(OrderEntity.class).where("userId = ? AND id > ?", args);
+        // arguments are bound without copy
+        assertSame(args, where.criteria.params());
+        assertEquals(0, dbTemplate.from(OrderEntity.class).criteria.params().length);
+    }
+
+    @Test
+    void testStreamAndForEach() {
+        StreamingJdbcTemplate jdbcTemplate = new StreamingJdbcTemplate();
+        DbTemplate db = new DbTemplate(jdbcTemplate);
+        db.fetchSize = 500;
+        for (long i = 1; i <= 3; i++) {
+            jdbcTemplate.rows.add(new Object[] { i, i * 10 });
+        }
+        List<Long> ids = new ArrayList<>();
+        db.from(OrderEntity.class).where("userId = ?", 1L).orderBy("id").forEach(order -> ids.add(order.id));
+        assertEquals(List.of(1L, 2L, 3L), ids);
+        assertEquals(List.of(
+                "prepareStatement[SELECT * FROM orders WHERE userId = ? ORDER BY id, "
+                        + ResultSet.TYPE_FORWARD_ONLY + ", " + ResultSet.CONCUR_READ_ONLY + "]",
+                "setFetchSize[500]", "setObject[1, 1]"), jdbcTemplate.calls);
+        try (Stream<OrderEntity> stream = db.from(OrderEntity.class).limit(3).stream()) {
+            assertEquals(List.of(10L, 20L, 30L), stream.map(order -> order.sequenceId).collect(Collectors.toList()));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.helltractor.exchange.db;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.support.KeyHolder;
+
+import com.helltractor.exchange.enums.UserType;
+import com.helltractor.exchange.model.quatation.TickEntity;
+import com.helltractor.exchange.model.trade.EventEntity;
+import com.helltractor.exchange.model.ui.UserEntity;
+
+public class DbTemplateTest {
+
+    // record statements instead of executing them
+    static class RecordingJdbcTemplate extends JdbcTemplate {
+
+        final List<String> sqls = new ArrayList<>();
+
+        final List<Integer> params = new ArrayList<>();
+
+        long nextKey = 1000;
+
+        // rows inserted by next statement with generated keys
+        int identityRows = 0;
+
+        @Override
+        public int update(String sql, Object... args) {
+            this.sqls.add(sql);
+            this.params.add(args.length);
+            return 1;
+        }
+
+        @Override
+        public int update(PreparedStatementCreator psc, KeyHolder generatedKeyHolder) {
+            int rows = this.identityRows;
+            this.sqls.add("identity");
+            this.params.add(rows);
+            for (int i = 0; i < rows; i++) {
+                generatedKeyHolder.getKeyList().add(Map.of("GENERATED_KEY", BigInteger.valueOf(nextKey++)));
+            }
+            return rows;
+        }
+    }
+
+    RecordingJdbcTemplate jdbcTemplate = new RecordingJdbcTemplate();
+
+    DbTemplate dbTemplate = new DbTemplate(jdbcTemplate);
+
+    List<EventEntity> events(int n) {
+        List<EventEntity> list = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            EventEntity event = new EventEntity();
+            event.sequenceId = i + 1;
+            event.previousId = i;
+            event.data = new byte[0];
+            list.add(event);
+        }
+        return list;
+    }
+
+    @Test
+    void testInsertInChunks() {
+        dbTemplate.insertBatchSize = 500;
+        dbTemplate.insert(events(1203));
+        assertEquals(3, jdbcTemplate.sqls.size());
+        int columns = dbTemplate.getMapper(EventEntity.class).insertableProperties.size();
+        assertEquals(List.of(500 * columns, 500 * columns, 203 * columns), jdbcTemplate.params);
+        String sql = jdbcTemplate.sqls.get(2);
+        assertTrue(sql.startsWith("INSERT INTO events ("), sql);
+        // 203 groups of values
+        assertEquals(203, sql.split("\\(\\?").length - 1);
+    }
+
+    @Test
+    void testInsertIgnoreMixedStream() {
+        dbTemplate.insertBatchSize = 2;
+        TickEntity tick = new TickEntity();
+        List<Object> beans = new ArrayList<>(events(3));
+        beans.add(tick);
+        beans.add(tick);
+        beans.addAll(events(1));
+        dbTemplate.insertIgnore(Stream.of(beans.toArray()));
+        // events: 2 + 1, ticks: 2 without reading keys, events: 1
+        assertEquals(4, jdbcTemplate.sqls.size());
+        assertTrue(jdbcTemplate.sqls.get(0).startsWith("INSERT IGNORE INTO events"));
+        assertTrue(jdbcTemplate.sqls.get(2).startsWith("INSERT IGNORE INTO ticks"));
+    }
+
+    @Test
+    void testReadGeneratedKeys() {
+        List<UserEntity> users = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            UserEntity user = new UserEntity();
+            user.type = UserType.TRADER;
+            users.add(user);
+        }
+        jdbcTemplate.identityRows = 3;
+        dbTemplate.insert(users);
+        assertEquals(List.of("identity"), jdbcTemplate.sqls);
+        assertEquals(1000L, users.get(0).id);
+        assertEquals(1002L, users.get(2).id);
+    }
+
+    @Test
+    void testMaxParameters() {
+        dbTemplate.insertBatchSize = 1_000_000;
+        dbTemplate.insert(events(20000));
+        int columns = dbTemplate.getMapper(EventEntity.class).insertableProperties.size();
+        for (int params : jdbcTemplate.params) {
+            assertTrue(params <= DbTemplate.MAX_PARAMETERS);
+            assertEquals(0, params % columns);
+        }
+        assertEquals(20000 * columns, jdbcTemplate.params.stream().mapToInt(Integer::intValue).sum());
+    }
+}
@@ -0,0 +1,95 @@
+package com.helltractor.exchange.db;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.helltractor.exchange.enums.Direction;
+import com.helltractor.exchange.enums.OrderStatus;
+import com.helltractor.exchange.model.trade.MatchDetailEntity;
+import com.helltractor.exchange.model.trade.OrderEntity;
+
+public class MapperTest {
+
+    // in-memory result set, only typed getters used by column readers are supported
+    static ResultSet resultSet(String[] labels, Object[][] rows) {
+        ResultSetMetaData meta = (ResultSetMetaData) Proxy.newProxyInstance(MapperTest.class.getClassLoader(),
+                new Class<?>[] { ResultSetMetaData.class }, (proxy, method, args) -> switch (method.getName()) {
+                    case "getColumnCount" -> labels.length;
+                    case "getColumnLabel" -> labels[(Integer) args[0] - 1];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        int[] row = { -1 };
+        return (ResultSet) Proxy.newProxyInstance(MapperTest.class.getClassLoader(),
+                new Class<?>[] { ResultSet.class }, (proxy, method, args) -> {
+                    if (method.getName().equals("getMetaData")) {
+                        return meta;
+                    }
+                    if (method.getName().equals("next")) {
+                        return ++row[0] < rows.length;
+                    }
+                    Object value = rows[row[0]][(Integer) args[0] - 1];
+                    return switch (method.getName()) {
+                        case "getLong" -> value == null ? 0L : ((Number) value).longValue();
+                        case "getString" -> (String) value;
+                        case "getBigDecimal" -> (BigDecimal) value;
+                        case "getObject" -> value == null ? null : ((Class<?>) args[1]).cast(value);
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    };
+                });
+    }
+
+    @Test
+    void testReadByColumnIndex() throws Exception {
+        Mapper<OrderEntity> mapper = new Mapper<>(OrderEntity.class);
+        String[] labels = { "id", "sequenceId", "direction", "userId", "status", "price", "createTime", "unknown" };
+        Object[][] rows = {
+                { 1L, 10L, "BUY", 100L, "PENDING", new BigDecimal("20.5"), 12345L, "x" },
+                { 2L, 11L, "SELL", null, null, null, 0L, null } };
+        List<OrderEntity> orders = mapper.resultSetExtractor.extractData(resultSet(labels, rows));
+        assertEquals(2, orders.size());
+        OrderEntity order = orders.get(0);
+        assertEquals(1L, order.id);
+        assertEquals(10, order.sequenceId);
+        assertEquals(Direction.BUY, order.direction);
+        assertEquals(100L, order.userId);
+        assertEquals(OrderStatus.PENDING, order.status);
+        assertEquals(new BigDecimal("20.5"), order.price);
+        assertEquals(12345, order.createTime);
+        order = orders.get(1);
+        assertEquals(Direction.SELL, order.direction);
+        assertNull(order.userId);
+        assertNull(order.status);
+        assertNull(order.price);
+    }
+
+    @Test
+    void testGetAndSet() throws Exception {
+        Mapper<OrderEntity> mapper = new Mapper<>(OrderEntity.class);
+        OrderEntity order = mapper.newInstance();
+        mapper.allPropertiesMap.get("status").set(order, "FULLY_FILLED");
+        mapper.allPropertiesMap.get("sequenceId").set(order, 7L);
+        mapper.id.set(order, 3L);
+        assertEquals(OrderStatus.FULLY_FILLED, order.status);
+        assertEquals(7, order.sequenceId);
+        assertEquals("FULLY_FILLED", mapper.allPropertiesMap.get("status").get(order));
+        assertEquals(3L, mapper.getIdValue(order));
+        assertNull(mapper.allPropertiesMap.get("direction").get(order));
+    }
+
+    @Test
+    void testHistoryIndexes() throws Exception {
+        String orders = new Mapper<>(OrderEntity.class).ddl();
+        assertTrue(orders.contains("  INDEX IDX_UID_ID (userId,id),\n"), orders);
+        String matches = new Mapper<>(MatchDetailEntity.class).ddl();
+        assertTrue(matches.contains("  INDEX IDX_OID_CT (orderId,createTime),\n  INDEX IDX_OID_ID (orderId,id),\n"),
+                matches);
+    }
+}
@@ -0,0 +1,141 @@
+package com.helltractor.exchange.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.helltractor.exchange.model.trade.EventEntity;
+
+public class EventJournalTest {
+
+    @TempDir
+    Path dir;
+
+    // stream 0: ids 1, 3, 5..., stream 1: ids 2, 4, 6...
+    List<JournalRecord> records(long from, long to) {
+        List<JournalRecord> records = new ArrayList<>();
+        for (long id = from; id <= to; id++) {
+            EventEntity event = new EventEntity();
+            event.sequenceId = id;
+            event.previousId = id > 2 ? id - 2 : 0;
+            event.streamId = (int) ((id + 1) % 2);
+            event.createTime = 1_700_000_000_000L + id;
+            event.data = new byte[100];
+            event.data[0] = (byte) id;
+            records.add(new JournalRecord(event, id % 10 == 0 ? "u-" + id : null));
+        }
+        return records;
+    }
+
+    List<JournalRecord> readAll() throws IOException {
+        List<JournalRecord> records = new ArrayList<>();
+        for (Path segment : EventJournal.listSegments(dir)) {
+            EventJournal.read(segment, 0, Integer.MAX_VALUE, records);
+        }
+        return records;
+    }
+
+    @Test
+    void testAppendRollAndReopen() throws IOException {
+        try (EventJournal journal = new EventJournal(dir, 4096)) {
+            journal.append(records(1, 50));
+            journal.force();
+            EventJournal.Position forced = journal.getForcedPosition();
+            assertTrue(forced.segment() > 0, "rolled to segment " + forced.segment());
+        }
+        try (EventJournal journal = new EventJournal(dir, 4096)) {
+            journal.append(records(51, 60));
+        }
+        List<JournalRecord> records = readAll();
+        assertEquals(60, records.size());
+        for (int i = 0; i < 60; i++) {
+            EventEntity event = records.get(i).event();
+            assertEquals(i + 1, event.sequenceId);
+            assertEquals((byte) (i + 1), event.data[0]);
+        }
+        assertEquals("u-60", records.get(59).uniqueId());
+        assertNull(records.get(58).uniqueId());
+    }
+
+    @Test
+    void testTruncateTornRecord() throws IOException {
+        try (EventJournal journal = new EventJournal(dir, 1 << 16)) {
+            journal.append(records(1, 3));
+        }
+        Path segment = EventJournal.segmentPath(dir, 0);
+        List<JournalRecord> records = new ArrayList<>();
+        int end = EventJournal.read(segment, 0, Integer.MAX_VALUE, records);
+        // damage last record
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}), end - 10);
+        }
+        try (EventJournal journal = new EventJournal(dir, 1 << 16)) {
+            journal.append(records(3, 4));
+        }
+        records = readAll();
+        assertEquals(4, records.size());
+        assertEquals(4, records.get(3).event().sequenceId);
+    }
+
+    @Test
+    void testReadStream() throws IOException {
+        try (EventJournal journal = new EventJournal(dir, 4096)) {
+            journal.append(records(1, 100));
+        }
+        // journal does not start at beginning of stream:
+        EventJournal.listSegments(dir).get(0).toFile().delete();
+        assertNull(new JournalReader(dir, 0).read(0, 10));
+        List<EventEntity> events = new JournalReader(dir, 1).read(80, 5);
+        assertEquals(List.of(82L, 84L, 86L, 88L, 90L), events.stream().map(e -> e.sequenceId).toList());
+        assertEquals(0, new JournalReader(dir, 1).read(100, 5).size());
+    }
+
+    @Test
+    void testReadStreamByPages() throws IOException {
+        try (EventJournal journal = new EventJournal(dir, 4096)) {
+            journal.append(records(1, 200));
+        }
+        JournalReader reader = new JournalReader(dir, 0);
+        List<Long> ids = new ArrayList<>();
+        long last = 0;
+        List<EventEntity> page;
+        do {
+            page = reader.read(last, 7);
+            for (EventEntity event : page) {
+                assertEquals(last, event.previousId);
+                ids.add(last = event.sequenceId);
+            }
+        } while (page.size() == 7);
+        assertEquals(100, ids.size());
+        assertEquals(199, last);
+        // pages after events loaded from elsewhere continue from cursor:
+        JournalReader skipping = new JournalReader(dir, 1);
+        assertEquals(List.of(2L, 4L), skipping.read(0, 2).stream().map(e -> e.sequenceId).toList());
+        assertEquals(List.of(52L, 54L), skipping.read(50, 2).stream().map(e -> e.sequenceId).toList());
+    }
+
+    @Test
+    void testReadForcedRecordsOnly() throws IOException {
+        try (EventJournal journal = new EventJournal(dir, 1 << 16)) {
+            journal.append(records(1, 10));
+            journal.force();
+            journal.append(records(11, 20));
+            JournalReader reader = new JournalReader(dir, 0);
+            List<EventEntity> events = reader.read(0, 100);
+            assertEquals(9, events.get(events.size() - 1).sequenceId);
+            assertEquals(0, reader.read(9, 100).size());
+            journal.force();
+            assertEquals(List.of(11L, 13L, 15L, 17L, 19L), reader.read(9, 100).stream().map(e -> e.sequenceId).toList());
+        }
+    }
+}
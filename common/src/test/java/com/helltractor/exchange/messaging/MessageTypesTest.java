@@ -0,0 +1,163 @@
+package com.helltractor.exchange.messaging;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.helltractor.exchange.enums.AssetEnum;
+import com.helltractor.exchange.enums.Direction;
+import com.helltractor.exchange.message.TickMessage;
+import com.helltractor.exchange.message.event.OrderCancelEvent;
+import com.helltractor.exchange.message.event.OrderRequestEvent;
+import com.helltractor.exchange.message.event.TransferEvent;
+import com.helltractor.exchange.message.event.WatermarkEvent;
+import com.helltractor.exchange.model.quatation.TickEntity;
+
+public class MessageTypesTest {
+
+    MessageTypes messageTypes;
+
+    @BeforeEach
+    void setUp() {
+        messageTypes = new MessageTypes();
+        messageTypes.init();
+    }
+
+    OrderRequestEvent createOrderRequestEvent() {
+        OrderRequestEvent event = new OrderRequestEvent();
+        event.refId = "ref-1";
+        event.createTime = 1_700_000_000_123L;
+        event.sequenceId = 10_001;
+        event.previousId = 10_000;
+        event.uniqueId = null;
+        event.symbolId = 0;
+        event.userId = 12345L;
+        event.direction = Direction.SELL;
+        event.price = new BigDecimal("23667.8");
+        event.quantity = new BigDecimal("0.05");
+        return event;
+    }
+
+    @Test
+    void testOrderRequestEvent() {
+        OrderRequestEvent event = createOrderRequestEvent();
+        byte[] data = messageTypes.serialize(event);
+        assertEquals(BinaryCodec.FORMAT_VERSION, data[0]);
+        // much smaller than JSON
+        assertTrue(data.length * 4 < messageTypes.serializeToJson(event).length(), "binary size: " + data.length);
+        OrderRequestEvent decoded = assertInstanceOf(OrderRequestEvent.class, messageTypes.deserialize(data));
+        assertEquals(event.toString(), decoded.toString());
+        // scale is kept
+        assertEquals("23667.8", decoded.price.toPlainString());
+    }
+
+    @Test
+    void testOrderCancelAndTransferEvent() {
+        OrderCancelEvent cancel = new OrderCancelEvent();
+        cancel.sequenceId = 7;
+        cancel.previousId = 6;
+        cancel.uniqueId = "唯一";
+        cancel.streamId = 63;
+        cancel.userId = 99L;
+        cancel.refOrderId = 700101L;
+        OrderCancelEvent decodedCancel = assertInstanceOf(OrderCancelEvent.class,
+                messageTypes.deserialize(messageTypes.serialize(cancel)));
+        assertEquals(cancel.toString(), decodedCancel.toString());
+
+        TransferEvent transfer = new TransferEvent();
+        transfer.sequenceId = Long.MAX_VALUE;
+        transfer.previousId = Long.MAX_VALUE - 1;
+        transfer.fromUserId = 1L;
+        transfer.toUserId = null;
+        transfer.asset = AssetEnum.BTC;
+        // unscaled value does not fit in long
+        transfer.amount = new BigDecimal("123456789012345678901234567890.123456789");
+        transfer.sufficient = true;
+        TransferEvent decodedTransfer = assertInstanceOf(TransferEvent.class,
+                messageTypes.deserialize(messageTypes.serialize(transfer)));
+        assertEquals(transfer.toString(), decodedTransfer.toString());
+    }
+
+    @Test
+    void testWatermarkEvent() {
+        WatermarkEvent watermark = new WatermarkEvent();
+        watermark.sequenceId = 6401;
+        watermark.previousId = 6337;
+        watermark.streamId = 1;
+        watermark.createTime = 1_700_000_000_000L;
+        byte[] data = messageTypes.serialize(watermark);
+        assertEquals(BinaryCodec.FORMAT_VERSION, data[0]);
+        WatermarkEvent decoded = assertInstanceOf(WatermarkEvent.class, messageTypes.deserialize(data));
+        assertEquals(watermark.toString(), decoded.toString());
+    }
+
+    @Test
+    void testTickMessage() {
+        TickMessage message = new TickMessage();
+        message.sequenceId = 88;
+        message.createTime = 1_700_000_000_000L;
+        TickEntity tick = new TickEntity();
+        tick.sequenceId = 88;
+        tick.takerOrderId = 8800101L;
+        tick.makerOrderId = 7700101L;
+        tick.takerDirection = true;
+        tick.price = new BigDecimal("-1.5");
+        tick.quantity = BigDecimal.ZERO;
+        tick.createTime = message.createTime;
+        message.ticks = List.of(tick);
+        TickMessage decoded = assertInstanceOf(TickMessage.class,
+                messageTypes.deserialize(messageTypes.serialize(message)));
+        assertNull(decoded.refId);
+        assertEquals(88, decoded.sequenceId);
+        assertEquals(1, decoded.ticks.size());
+        TickEntity decodedTick = decoded.ticks.get(0);
+        assertEquals(tick.takerOrderId, decodedTick.takerOrderId);
+        assertEquals(tick.makerOrderId, decodedTick.makerOrderId);
+        assertEquals(tick.toJson(), decodedTick.toJson());
+    }
+
+    @Test
+    void testReadLegacyJson() {
+        OrderRequestEvent event = createOrderRequestEvent();
+        // data written by previous version
+        byte[] legacy = messageTypes.serializeToJson(event).getBytes(StandardCharsets.UTF_8);
+        assertEquals(event.toString(), messageTypes.deserialize(legacy).toString());
+    }
+
+    @Test
+    void testReadVersion1() {
+        // version 1 has no streamId
+        BinaryCodec.Writer out = new BinaryCodec.Writer();
+        out.writeByte(1);
+        out.writeByte(2);
+        BinaryCodec.writeMessage(new OrderCancelEvent(), out);
+        out.writeLong(7);
+        out.writeLong(6);
+        out.writeString(null);
+        out.writeNullableLong(99L);
+        out.writeNullableLong(700101L);
+        OrderCancelEvent decoded = assertInstanceOf(OrderCancelEvent.class, messageTypes.deserialize(out.toByteArray()));
+        assertEquals(7, decoded.sequenceId);
+        assertEquals(0, decoded.streamId);
+        assertEquals(700101L, decoded.refOrderId);
+    }
+
+    @Test
+    void testInvalidBinary() {
+        byte[] data = messageTypes.serialize(createOrderRequestEvent());
+        byte[] truncated = Arrays.copyOf(data, data.length - 1);
+        assertThrows(IllegalArgumentException.class, () -> messageTypes.deserialize(truncated));
+        byte[] unknown = data.clone();
+        unknown[1] = 15;
+        assertThrows(IllegalArgumentException.class, () -> messageTypes.deserialize(unknown));
+    }
+}
@@ -0,0 +1,130 @@
+package com.helltractor.exchange.messaging;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.helltractor.exchange.enums.AssetEnum;
+import com.helltractor.exchange.message.AbstractMessage;
+import com.helltractor.exchange.message.event.AbstractEvent;
+import com.helltractor.exchange.message.event.TransferEvent;
+
+public class ParallelMessageDecoderTest {
+
+    static final int CHUNK_SIZE = 10;
+
+    // names of threads which decoded records
+    Set<String> decodeThreads = ConcurrentHashMap.newKeySet();
+
+    MessageTypes messageTypes = new MessageTypes() {
+        @Override
+        public AbstractMessage deserialize(byte[] data) {
+            decodeThreads.add(Thread.currentThread().getName());
+            return super.deserialize(data);
+        }
+    };
+
+    // handled chunks and thread names of handler
+    List<List<Long>> chunks = new ArrayList<>();
+
+    List<String> handleThreads = new ArrayList<>();
+
+    ParallelMessageDecoder<AbstractEvent> decoder;
+
+    @BeforeEach
+    void setUp() {
+        messageTypes.init();
+        decoder = new ParallelMessageDecoder<>(messageTypes, messages -> {
+            chunks.add(messages.stream().map(m -> m.sequenceId).toList());
+            handleThreads.add(Thread.currentThread().getName());
+        }, "test", 3, CHUNK_SIZE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        decoder.shutdown();
+    }
+
+    @Test
+    void testHandleChunksInOrder() {
+        decoder.onMessage(records(1, 95));
+        assertEquals(10, chunks.size());
+        List<Long> ids = new ArrayList<>();
+        chunks.forEach(ids::addAll);
+        assertEquals(sequenceIds(1, 95), ids);
+        assertEquals(5, chunks.get(9).size());
+        // decoded on workers, handled on caller thread:
+        String caller = Thread.currentThread().getName();
+        assertTrue(handleThreads.stream().allMatch(caller::equals));
+        assertTrue(decodeThreads.stream().allMatch(name -> name.startsWith("decode-test-")), decodeThreads.toString());
+    }
+
+    @Test
+    void testSmallBatchOnCallerThread() {
+        decoder.onMessage(records(1, CHUNK_SIZE));
+        assertEquals(List.of(sequenceIds(1, CHUNK_SIZE)), chunks);
+        assertEquals(Set.of(Thread.currentThread().getName()), decodeThreads);
+        assertEquals(List.of(Thread.currentThread().getName()), handleThreads);
+    }
+
+    @Test
+    void testDecodeFailureInLaterChunk() {
+        List<ConsumerRecord<String, byte[]>> data = records(1, 30);
+        // record 25 in chunk 2 cannot be decoded:
+        data.set(24, new ConsumerRecord<>("test", 0, 24, null, "bad".getBytes(StandardCharsets.UTF_8)));
+        RuntimeException e = assertThrows(RuntimeException.class, () -> decoder.onMessage(data));
+        assertTrue(e.getMessage().startsWith("Unable to handle message"), e.getMessage());
+        // chunks before the failed one are already handled:
+        assertEquals(List.of(sequenceIds(1, 10), sequenceIds(11, 20)), chunks);
+
+        // container retries the whole batch, and handled chunks are passed to handler again:
+        chunks.clear();
+        decoder.onMessage(records(1, 30));
+        assertEquals(List.of(sequenceIds(1, 10), sequenceIds(11, 20), sequenceIds(21, 30)), chunks);
+    }
+
+    @Test
+    void testShutdown() {
+        decoder.shutdown();
+        // small batch does not need workers:
+        decoder.onMessage(records(1, 5));
+        assertEquals(List.of(sequenceIds(1, 5)), chunks);
+        assertThrows(RejectedExecutionException.class, () -> decoder.onMessage(records(6, 25)));
+        assertEquals(1, chunks.size());
+    }
+
+    List<ConsumerRecord<String, byte[]>> records(long from, long to) {
+        List<ConsumerRecord<String, byte[]>> records = new ArrayList<>();
+        for (long id = from; id <= to; id++) {
+            TransferEvent event = new TransferEvent();
+            event.sequenceId = id;
+            event.previousId = id - 1;
+            event.fromUserId = 1L;
+            event.toUserId = 2000L;
+            event.asset = AssetEnum.USD;
+            event.amount = BigDecimal.ONE;
+            records.add(new ConsumerRecord<>("test", 0, id, null, messageTypes.serialize(event)));
+        }
+        return records;
+    }
+
+    List<Long> sequenceIds(long from, long to) {
+        List<Long> ids = new ArrayList<>();
+        for (long id = from; id <= to; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+}
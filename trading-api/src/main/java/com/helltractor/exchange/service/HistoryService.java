@@ -3,26 +3,101 @@ package com.helltractor.exchange.service;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.helltractor.exchange.bean.SimpleMatchDetailRecord;
+import com.helltractor.exchange.db.From;
+import com.helltractor.exchange.db.Where;
 import com.helltractor.exchange.model.trade.MatchDetailEntity;
 import com.helltractor.exchange.model.trade.OrderEntity;
+import com.helltractor.exchange.redis.RedisCache;
+import com.helltractor.exchange.redis.RedisService;
 import com.helltractor.exchange.support.AbstractDbService;
 
+import jakarta.annotation.PostConstruct;
+
 /**
  * Find history details service.
+ * <p>
+ * Recent closed orders and match details of active users are served from an in-memory cache, which is fed by order
+ * notifications of trading engine. Misses and deep pages are loaded from database.
  */
 @Component
 public class HistoryService extends AbstractDbService {
 
+    // max match details of one order to be cached
+    static final int MAX_CACHED_MATCH_DETAILS = 1000;
+
+    @Autowired
+    private RedisService redisService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${exchange.api.history-cache.max-users:1000}")
+    private int cacheMaxUsers = 1000;
+
+    @Value("${exchange.api.history-cache.orders-per-user:100}")
+    private int cacheOrdersPerUser = 100;
+
+    @Value("${exchange.api.history-cache.match-orders-per-user:20}")
+    private int cacheMatchOrdersPerUser = 20;
+
+    @Value("${exchange.api.history-cache.expire-seconds:60}")
+    private long cacheExpireSeconds = 60;
+
+    private RecentOrderCache recentOrderCache = null;
+
+    @PostConstruct
+    public void init() {
+        if (this.cacheMaxUsers > 0 && this.cacheOrdersPerUser > 0) {
+            this.recentOrderCache = new RecentOrderCache(this.cacheMaxUsers, this.cacheOrdersPerUser,
+                    this.cacheMatchOrdersPerUser, this.cacheExpireSeconds * 1000);
+            this.redisService.subscribe(RedisCache.Topic.NOTIFICATION, this::onNotification);
+        }
+    }
+
+    private void onNotification(String msg) {
+        try {
+            JsonNode node = this.objectMapper.readTree(msg);
+            String type = node.path("type").asText();
+            if (!type.equals("order_matched") && !type.equals("order_canceled")) {
+                return;
+            }
+            OrderEntity order = this.objectMapper.treeToValue(node.get("data"), OrderEntity.class);
+            // 只缓存已完成的订单
+            if (order != null && order.userId != null && order.status != null && order.status.isFinalStatus) {
+                this.recentOrderCache.onOrderClosed(order);
+            }
+        } catch (Exception e) {
+            logger.warn("Invalid notification: {}", msg, e);
+        }
+    }
+
     /**
-     * Get history orders by userId.
+     * Get history orders by userId, newest first. Pass id of the last order of previous page as before to get next
+     * page, which is served by index (userId, id) at the same cost as the first page.
      */
-    public List<OrderEntity> getHistoryOrders(Long userId, int maxResults) {
-        return dataBase.from(OrderEntity.class)
-                .where("userId = ?", userId)
-                .orderBy("id")
+    public List<OrderEntity> getHistoryOrders(Long userId, Long before, int maxResults) {
+        if (this.recentOrderCache != null) {
+            List<OrderEntity> orders = this.recentOrderCache.getOrders(userId, before, maxResults,
+                    limit -> loadHistoryOrders(userId, null, limit));
+            if (orders != null) {
+                return orders;
+            }
+        }
+        return loadHistoryOrders(userId, before, maxResults);
+    }
+
+    private List<OrderEntity> loadHistoryOrders(Long userId, Long before, int maxResults) {
+        From<OrderEntity> from = dataBase.from(OrderEntity.class);
+        Where<OrderEntity> where = before == null ? from.where("userId = ?", userId)
+                : from.where("userId = ? AND id < ?", userId, before);
+        return where.orderBy("id")
                 .desc()
                 .limit(maxResults)
                 .list();
@@ -32,6 +107,12 @@ public class HistoryService extends AbstractDbService {
      * Get history order by userId and orderId.
      */
     public OrderEntity getHistoryOrder(Long userId, Long orderId) {
+        if (this.recentOrderCache != null) {
+            OrderEntity order = this.recentOrderCache.getOrder(userId, orderId);
+            if (order != null) {
+                return order;
+            }
+        }
         OrderEntity entity = dataBase.fetch(OrderEntity.class, orderId);
         if (entity == null || !entity.userId.equals(userId)) {
             return null;
@@ -40,16 +121,31 @@ public class HistoryService extends AbstractDbService {
     }
 
     /**
-     * Get history match details by orderId.
+     * Get history match details of order of user, in match order. Pass id of the last match detail of previous page
+     * as after to get next page, which is served by index (orderId, id).
      */
-    public List<SimpleMatchDetailRecord> getHistoryMatchDetails(Long orderId) {
-        List<MatchDetailEntity> details = dataBase.select("price", "quantity", "type")
-                .from(MatchDetailEntity.class)
-                .where("orderId = ?", orderId)
-                .orderBy("id")
+    public List<SimpleMatchDetailRecord> getHistoryMatchDetails(Long userId, Long orderId, Long after,
+            int maxResults) {
+        if (this.recentOrderCache != null) {
+            List<SimpleMatchDetailRecord> details = this.recentOrderCache.getMatchDetails(userId, orderId, after,
+                    maxResults, () -> loadHistoryMatchDetails(orderId, null, MAX_CACHED_MATCH_DETAILS));
+            if (details != null) {
+                return details;
+            }
+        }
+        return loadHistoryMatchDetails(orderId, after, maxResults);
+    }
+
+    private List<SimpleMatchDetailRecord> loadHistoryMatchDetails(Long orderId, Long after, int maxResults) {
+        From<MatchDetailEntity> from = dataBase.select("id", "price", "quantity", "type")
+                .from(MatchDetailEntity.class);
+        Where<MatchDetailEntity> where = after == null ? from.where("orderId = ?", orderId)
+                : from.where("orderId = ? AND id > ?", orderId, after);
+        List<MatchDetailEntity> details = where.orderBy("id")
+                .limit(maxResults)
                 .list();
         return details.stream().map(e
-                -> new SimpleMatchDetailRecord(e.price, e.quantity, e.type))
+                -> new SimpleMatchDetailRecord(e.id, e.price, e.quantity, e.type))
                 .collect(Collectors.toList());
     }
 }
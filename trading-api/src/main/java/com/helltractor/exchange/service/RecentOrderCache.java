@@ -0,0 +1,233 @@
+package com.helltractor.exchange.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import com.helltractor.exchange.bean.SimpleMatchDetailRecord;
+import com.helltractor.exchange.model.trade.OrderEntity;
+
+/**
+ * Bounded LRU of recent closed orders and their match details per user.
+ * <p>
+ * The orders of a user are loaded from database on first query, then kept up to date by closed order notifications,
+ * so that the cache always holds the newest closed orders by id. A page is answered from cache only if it lies within
+ * the cached orders, otherwise the caller falls back to database. Match details of a closed order never change, and
+ * are cached only if they add up to the filled quantity of the order, since they are written into database
+ * asynchronously. Notifications may be lost, so loaded orders are refreshed from database after expiration.
+ * <p>
+ * Returns null for any miss. Called by web threads and the notification listener concurrently.
+ */
+class RecentOrderCache {
+
+    private final int ordersPerUser;
+
+    private final int matchOrdersPerUser;
+
+    private final long expireMillis;
+
+    // userId -> UserOrders
+    private final LinkedHashMap<Long, UserOrders> users;
+
+    RecentOrderCache(int maxUsers, int ordersPerUser, int matchOrdersPerUser, long expireMillis) {
+        this.ordersPerUser = ordersPerUser;
+        this.matchOrdersPerUser = matchOrdersPerUser;
+        this.expireMillis = expireMillis;
+        this.users = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, UserOrders> eldest) {
+                return size() > maxUsers;
+            }
+        };
+    }
+
+    private UserOrders getUser(Long userId, boolean create) {
+        synchronized (this.users) {
+            UserOrders user = this.users.get(userId);
+            if (user == null && create) {
+                user = new UserOrders();
+                this.users.put(userId, user);
+            }
+            return user;
+        }
+    }
+
+    /**
+     * Add closed order of notification to cached user. Users without cache are skipped, so that notifications of
+     * users who never query do not evict cached users.
+     */
+    void onOrderClosed(OrderEntity order) {
+        UserOrders user = getUser(order.userId, false);
+        if (user == null) {
+            return;
+        }
+        synchronized (user) {
+            user.orders.put(order.id, order);
+            user.trim(this.ordersPerUser);
+        }
+    }
+
+    /**
+     * Get closed orders with id less than before, newest first.
+     *
+     * @param recentLoader Load newest closed orders of user from database, with max results.
+     */
+    List<OrderEntity> getOrders(Long userId, Long before, int maxResults, IntFunction<List<OrderEntity>> recentLoader) {
+        UserOrders user = load(userId, recentLoader);
+        if (user == null) {
+            return null;
+        }
+        synchronized (user) {
+            Map<Long, OrderEntity> orders = before == null ? user.orders : user.orders.tailMap(before, false);
+            if (orders.size() < maxResults && !user.complete) {
+                // 页面超出缓存范围
+                return null;
+            }
+            List<OrderEntity> list = new ArrayList<>(Math.min(maxResults, orders.size()));
+            for (OrderEntity order : orders.values()) {
+                if (list.size() >= maxResults) {
+                    break;
+                }
+                list.add(order);
+            }
+            return list;
+        }
+    }
+
+    /**
+     * Get cached closed order of user.
+     */
+    OrderEntity getOrder(Long userId, Long orderId) {
+        UserOrders user = getUser(userId, false);
+        if (user == null) {
+            return null;
+        }
+        synchronized (user) {
+            return user.orders.get(orderId);
+        }
+    }
+
+    /**
+     * Get match details of a cached closed order with id greater than after, in match order.
+     *
+     * @param loader Load all match details of order from database.
+     */
+    List<SimpleMatchDetailRecord> getMatchDetails(Long userId, Long orderId, Long after, int maxResults,
+            Supplier<List<SimpleMatchDetailRecord>> loader) {
+        UserOrders user = getUser(userId, false);
+        if (user == null) {
+            return null;
+        }
+        OrderEntity order;
+        List<SimpleMatchDetailRecord> details;
+        synchronized (user) {
+            order = user.orders.get(orderId);
+            details = user.matches.get(orderId);
+        }
+        if (order == null) {
+            return null;
+        }
+        if (details == null) {
+            details = loader.get();
+            if (!isComplete(order, details)) {
+                return null;
+            }
+            synchronized (user) {
+                if (user.orders.containsKey(orderId)) {
+                    user.matches.put(orderId, details);
+                    user.trimMatches(this.matchOrdersPerUser);
+                }
+            }
+        }
+        List<SimpleMatchDetailRecord> list = new ArrayList<>();
+        for (SimpleMatchDetailRecord detail : details) {
+            if (list.size() >= maxResults) {
+                break;
+            }
+            if (after == null || detail.id() > after) {
+                list.add(detail);
+            }
+        }
+        return list;
+    }
+
+    private static boolean isComplete(OrderEntity order, List<SimpleMatchDetailRecord> details) {
+        BigDecimal filled = BigDecimal.ZERO;
+        for (SimpleMatchDetailRecord detail : details) {
+            filled = filled.add(detail.quantity());
+        }
+        return filled.compareTo(order.quantity.subtract(order.unfilledQuantity)) == 0;
+    }
+
+    /**
+     * Load newest closed orders of user if not loaded or expired. Returns null if another thread is loading.
+     */
+    private UserOrders load(Long userId, IntFunction<List<OrderEntity>> recentLoader) {
+        UserOrders user = getUser(userId, true);
+        long now = System.currentTimeMillis();
+        synchronized (user) {
+            if (user.loadTime > 0 && now - user.loadTime < this.expireMillis) {
+                return user;
+            }
+            if (user.loading) {
+                return null;
+            }
+            user.loading = true;
+        }
+        List<OrderEntity> recent = null;
+        try {
+            recent = recentLoader.apply(this.ordersPerUser);
+        } finally {
+            synchronized (user) {
+                user.loading = false;
+                if (recent != null) {
+                    // 加载期间收到的通知优先
+                    for (OrderEntity order : recent) {
+                        user.orders.putIfAbsent(order.id, order);
+                    }
+                    user.complete = recent.size() < this.ordersPerUser;
+                    user.trim(this.ordersPerUser);
+                    user.loadTime = now;
+                }
+            }
+        }
+        return user;
+    }
+
+    static final class UserOrders {
+
+        // orderId -> closed order, newest first
+        final TreeMap<Long, OrderEntity> orders = new TreeMap<>(Comparator.reverseOrder());
+
+        // orderId -> complete match details
+        final LinkedHashMap<Long, List<SimpleMatchDetailRecord>> matches = new LinkedHashMap<>(16, 0.75f, true);
+
+        // all closed orders of user are cached
+        boolean complete = false;
+
+        boolean loading = false;
+
+        long loadTime = 0;
+
+        void trim(int maxOrders) {
+            while (this.orders.size() > maxOrders) {
+                Long orderId = this.orders.lastKey();
+                this.orders.remove(orderId);
+                this.matches.remove(orderId);
+                this.complete = false;
+            }
+        }
+
+        void trimMatches(int maxMatchOrders) {
+            while (this.matches.size() > maxMatchOrders) {
+                this.matches.remove(this.matches.keySet().iterator().next());
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.helltractor.exchange.service;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -7,6 +9,8 @@ import com.helltractor.exchange.message.event.AbstractEvent;
 import com.helltractor.exchange.messaging.MessageProducer;
 import com.helltractor.exchange.messaging.Messaging;
 import com.helltractor.exchange.messaging.MessagingFactory;
+import com.helltractor.exchange.messaging.SequenceStreams;
+import com.helltractor.exchange.support.LoggerSupport;
 
 import jakarta.annotation.PostConstruct;
 
@@ -14,19 +18,38 @@ import jakarta.annotation.PostConstruct;
  * Send event service.
  */
 @Component
-public class SendEventService {
+public class SendEventService extends LoggerSupport {
 
     @Autowired
     private MessagingFactory messagingFactory;
 
     private MessageProducer<AbstractEvent> messageProducer;
 
+    private int streams;
+
     @PostConstruct
     public void init() {
-        this.messageProducer = this.messagingFactory.createMessageProducer(Messaging.Topic.SEQUENCE, AbstractEvent.class);
+        this.streams = this.messagingFactory.getSequenceStreams();
+        // 按序列流发送到对应分区
+        this.messageProducer = this.messagingFactory.createMessageProducer(Messaging.Topic.SEQUENCE, AbstractEvent.class,
+                event -> event.streamId);
+    }
+
+    /**
+     * Get sequence stream of market symbol.
+     */
+    public int streamOf(long symbolId) {
+        return SequenceStreams.streamOf(symbolId, this.streams);
     }
 
-    public void sendMessage(AbstractEvent message) {
-        this.messageProducer.sendMessages(message);
+    /**
+     * Send event to sequencer. The returned future completes exceptionally if the event is not sent, which is logged.
+     */
+    public CompletableFuture<Void> sendMessage(AbstractEvent message) {
+        return this.messageProducer.sendMessages(message).whenComplete((r, e) -> {
+            if (e != null) {
+                logger.warn("send event failed: {}", message);
+            }
+        });
     }
 }
@@ -29,6 +29,7 @@ import com.helltractor.exchange.bean.OrderRequestBean;
 import com.helltractor.exchange.bean.SimpleMatchDetailRecord;
 import com.helltractor.exchange.ctx.UserContext;
 import com.helltractor.exchange.message.ApiResultMessage;
+import com.helltractor.exchange.message.event.AbstractEvent;
 import com.helltractor.exchange.message.event.OrderCancelEvent;
 import com.helltractor.exchange.message.event.OrderRequestEvent;
 import com.helltractor.exchange.model.trade.OrderEntity;
@@ -130,8 +131,8 @@ public class TradingApiController extends LoggerSupport {
 
     @ResponseBody
     @GetMapping(value = "/orderBook", produces = "application/json")
-    public String getOrderBook() {
-        String data = redisService.get(RedisCache.Key.ORDER_BOOK);
+    public String getOrderBook(@RequestParam(value = "symbolId", defaultValue = "0") long symbolId) {
+        String data = redisService.get(RedisCache.Key.orderBook(symbolId));
         return data == null ? OrderBookBean.EMPTY : data;
     }
 
@@ -195,16 +196,22 @@ public class TradingApiController extends LoggerSupport {
 
     @GetMapping("/history/orders")
     public List<OrderEntity> getHistoryOrders(
+            @RequestParam(value = "before", required = false) Long before,
             @RequestParam(value = "maxResults", defaultValue = "100") int maxResults) {
         final Long userId = UserContext.getRequiredUserId();
         if (maxResults < 1 || maxResults > 1000) {
             throw new ApiException(ApiError.PARAMETER_INVALID, "maxResults", "Invalid parameter.");
         }
-        return historyService.getHistoryOrders(userId, maxResults);
+        return historyService.getHistoryOrders(userId, before, maxResults);
     }
 
     @GetMapping("/history/orders/{orderId}/matches")
-    public List<SimpleMatchDetailRecord> getOrderMatchDetails(@PathVariable("orderId") Long orderId) throws Exception {
+    public List<SimpleMatchDetailRecord> getOrderMatchDetails(@PathVariable("orderId") Long orderId,
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestParam(value = "maxResults", defaultValue = "1000") int maxResults) throws Exception {
+        if (maxResults < 1 || maxResults > 1000) {
+            throw new ApiException(ApiError.PARAMETER_INVALID, "maxResults", "Invalid parameter.");
+        }
         final Long userId = UserContext.getRequiredUserId();
         // search active order
         String strOpenOrder = tradingEngineApiProxyService.get("/internal/" + userId + "/orders/" + orderId);
@@ -216,7 +223,7 @@ public class TradingApiController extends LoggerSupport {
                 throw new ApiException(ApiError.ORDER_NOT_FOUND, orderId.toString(), "Order not found.");
             }
         }
-        return this.historyService.getHistoryMatchDetails(orderId);
+        return this.historyService.getHistoryMatchDetails(userId, orderId, after, maxResults);
     }
 
     @PostMapping(value = "/orders/{orderId}/cancel", produces = "application/json")
@@ -227,11 +234,14 @@ public class TradingApiController extends LoggerSupport {
         if (orderStr.equals("null")) {
             throw new ApiException(ApiError.ORDER_NOT_FOUND, orderId.toString(), "Active order not found.");
         }
+        final OrderEntity order = JsonUtil.readJson(orderStr, OrderEntity.class);
         final String refId = IdUtil.generateUniqueId();
         var message = new OrderCancelEvent();
         message.refId = refId;
         message.refOrderId = orderId;
         message.userId = userId;
+        // 与订单在同一序列流中，保证在订单之后处理
+        message.streamId = this.sendEventService.streamOf(order.symbolId);
         message.createTime = System.currentTimeMillis();
         ResponseEntity<String> timeout = new ResponseEntity<>(getTimeoutJson(), HttpStatus.BAD_REQUEST);
         DeferredResult<ResponseEntity<String>> deferred = new DeferredResult<>(this.asyncTimeout, timeout);
@@ -242,7 +252,7 @@ public class TradingApiController extends LoggerSupport {
         // track deferred
         this.deferredResultMap.put(refId, deferred);
         logger.info("cancel order message created: {}", message);
-        this.sendEventService.sendMessage(message);
+        sendEvent(message, refId);
         return deferred;
     }
 
@@ -259,6 +269,7 @@ public class TradingApiController extends LoggerSupport {
         event.direction = orderRequest.direction;
         event.price = orderRequest.price;
         event.quantity = orderRequest.quantity;
+        event.streamId = this.sendEventService.streamOf(event.symbolId);
         event.createTime = System.currentTimeMillis();
 
         ResponseEntity<String> timeout = new ResponseEntity<>(getTimeoutJson(), HttpStatus.BAD_REQUEST);
@@ -269,7 +280,24 @@ public class TradingApiController extends LoggerSupport {
         });
         // track deferred
         this.deferredResultMap.put(event.refId, deferred);
-        this.sendEventService.sendMessage(event);
+        sendEvent(event, refId);
         return deferred;
     }
+
+    /**
+     * Send event, and fail the deferred result of refId at once if the event is not sent, instead of waiting for
+     * timeout.
+     */
+    private void sendEvent(AbstractEvent event, String refId) {
+        this.sendEventService.sendMessage(event).whenComplete((r, e) -> {
+            if (e != null) {
+                DeferredResult<ResponseEntity<String>> deferred = this.deferredResultMap.remove(refId);
+                if (deferred != null) {
+                    String error = JsonUtil.writeJson(
+                            new ApiErrorResponse(ApiError.INTERNAL_SERVER_ERROR, null, "Send request failed."));
+                    deferred.setResult(new ResponseEntity<>(error, HttpStatus.BAD_GATEWAY));
+                }
+            }
+        });
+    }
 }
@@ -1,6 +1,7 @@
 package com.helltractor.exchange.web.api;
 
 import java.util.Map;
+import java.util.concurrent.CompletionException;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -8,6 +9,8 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.helltractor.exchange.ApiError;
+import com.helltractor.exchange.ApiException;
 import com.helltractor.exchange.bean.TransferRequestBean;
 import com.helltractor.exchange.enums.UserType;
 import com.helltractor.exchange.message.event.TransferEvent;
@@ -41,7 +44,12 @@ public class TradingInternalApiController extends AbstractApiController {
         message.asset = transferRequest.asset;
         message.amount = transferRequest.amount;
         message.sufficient = transferRequest.fromUserId.longValue() != UserType.DEBT.getInternalUserId();
-        this.sendEventService.sendMessage(message);
+        try {
+            // 等待发送成功，失败时由调用方重试
+            this.sendEventService.sendMessage(message).join();
+        } catch (CompletionException e) {
+            throw new ApiException(ApiError.INTERNAL_SERVER_ERROR, null, "Send transfer event failed.");
+        }
         logger.info("transfer event sent: {}", message);
         return Map.of("result", Boolean.TRUE);
     }
@@ -0,0 +1,127 @@
+package com.helltractor.exchange.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+
+import com.helltractor.exchange.bean.SimpleMatchDetailRecord;
+import com.helltractor.exchange.enums.MatchType;
+import com.helltractor.exchange.model.trade.OrderEntity;
+
+public class RecentOrderCacheTest {
+
+    static final Long USER_A = 2000L;
+
+    static final Long USER_B = 3000L;
+
+    RecentOrderCache cache = new RecentOrderCache(10, 5, 2, 60_000);
+
+    AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void testPageInRangeOrFallback() {
+        // newest 5 of more closed orders:
+        List<OrderEntity> recent = orders(USER_A, 10, 9, 8, 7, 6);
+        assertEquals(List.of(10L, 9L, 8L), ids(this.cache.getOrders(USER_A, null, 3, loader(recent))));
+        assertEquals(List.of(7L, 6L), ids(this.cache.getOrders(USER_A, 8L, 2, loader(recent))));
+        // page beyond cached orders falls back to database:
+        assertNull(this.cache.getOrders(USER_A, 8L, 3, loader(recent)));
+        assertEquals(1, this.loads.get());
+    }
+
+    @Test
+    void testCompleteUntilTrimmed() {
+        // user has only 2 closed orders:
+        List<OrderEntity> recent = orders(USER_A, 2, 1);
+        assertEquals(List.of(2L, 1L), ids(this.cache.getOrders(USER_A, null, 10, loader(recent))));
+        for (long id = 3; id <= 5; id++) {
+            this.cache.onOrderClosed(order(USER_A, id));
+        }
+        assertEquals(List.of(5L, 4L, 3L, 2L, 1L), ids(this.cache.getOrders(USER_A, null, 10, loader(recent))));
+
+        // order 1 is trimmed, so cache no longer holds all orders:
+        this.cache.onOrderClosed(order(USER_A, 6));
+        assertEquals(List.of(6L, 5L, 4L), ids(this.cache.getOrders(USER_A, null, 3, loader(recent))));
+        assertNull(this.cache.getOrders(USER_A, null, 10, loader(recent)));
+        assertEquals(1, this.loads.get());
+    }
+
+    @Test
+    void testNotificationOfUncachedUser() {
+        this.cache.onOrderClosed(order(USER_B, 1));
+        assertNull(this.cache.getOrder(USER_B, 1L));
+        this.cache.getOrders(USER_B, null, 10, loader(List.of()));
+        this.cache.onOrderClosed(order(USER_B, 2));
+        assertEquals(2L, this.cache.getOrder(USER_B, 2L).id);
+    }
+
+    @Test
+    void testMatchDetailsCachedWhenComplete() {
+        // quantity 3 with 2 filled:
+        OrderEntity order = order(USER_A, 1);
+        order.unfilledQuantity = BigDecimal.ONE;
+        this.cache.getOrders(USER_A, null, 10, loader(List.of(order)));
+        List<SimpleMatchDetailRecord> partial = List.of(detail(11, "1"));
+        List<SimpleMatchDetailRecord> complete = List.of(detail(11, "1"), detail(12, "0.5"), detail(13, "0.5"));
+
+        // details not yet all written to database are not cached:
+        AtomicInteger detailLoads = new AtomicInteger();
+        assertNull(this.cache.getMatchDetails(USER_A, 1L, null, 10, () -> {
+            detailLoads.incrementAndGet();
+            return partial;
+        }));
+        assertEquals(List.of(11L, 12L, 13L), detailIds(this.cache.getMatchDetails(USER_A, 1L, null, 10, () -> {
+            detailLoads.incrementAndGet();
+            return complete;
+        })));
+        assertEquals(List.of(12L), detailIds(this.cache.getMatchDetails(USER_A, 1L, 11L, 1, () -> {
+            detailLoads.incrementAndGet();
+            return complete;
+        })));
+        assertEquals(2, detailLoads.get());
+        // order not cached:
+        assertNull(this.cache.getMatchDetails(USER_A, 99L, null, 10, () -> complete));
+    }
+
+    IntFunction<List<OrderEntity>> loader(List<OrderEntity> orders) {
+        return maxResults -> {
+            this.loads.incrementAndGet();
+            return orders.subList(0, Math.min(maxResults, orders.size()));
+        };
+    }
+
+    List<OrderEntity> orders(Long userId, long... ids) {
+        List<OrderEntity> orders = new ArrayList<>();
+        for (long id : ids) {
+            orders.add(order(userId, id));
+        }
+        return orders;
+    }
+
+    OrderEntity order(Long userId, long id) {
+        OrderEntity order = new OrderEntity();
+        order.id = id;
+        order.userId = userId;
+        order.quantity = new BigDecimal("3");
+        order.unfilledQuantity = BigDecimal.ZERO;
+        return order;
+    }
+
+    SimpleMatchDetailRecord detail(long id, String quantity) {
+        return new SimpleMatchDetailRecord(id, new BigDecimal("100"), new BigDecimal(quantity), MatchType.TAKER);
+    }
+
+    List<Long> ids(List<OrderEntity> orders) {
+        return orders.stream().map(o -> o.id).toList();
+    }
+
+    List<Long> detailIds(List<SimpleMatchDetailRecord> details) {
+        return details.stream().map(SimpleMatchDetailRecord::id).toList();
+    }
+}
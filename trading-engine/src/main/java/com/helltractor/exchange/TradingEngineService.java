@@ -6,12 +6,12 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -21,13 +21,15 @@ import com.helltractor.exchange.assets.Asset;
 import com.helltractor.exchange.assets.AssetService;
 import com.helltractor.exchange.assets.Transfer;
 import com.helltractor.exchange.bean.OrderBookBean;
+import com.helltractor.exchange.bean.OrderBookDeltaBean;
 import com.helltractor.exchange.clearing.ClearingService;
 import com.helltractor.exchange.enums.AssetEnum;
 import com.helltractor.exchange.enums.Direction;
 import com.helltractor.exchange.enums.MatchType;
 import com.helltractor.exchange.enums.UserType;
-import com.helltractor.exchange.match.MatchDetailRecord;
+import com.helltractor.exchange.match.MarketSymbol;
 import com.helltractor.exchange.match.MatchEngine;
+import com.helltractor.exchange.match.MatchEngineGroup;
 import com.helltractor.exchange.match.MatchResult;
 import com.helltractor.exchange.message.ApiResultMessage;
 import com.helltractor.exchange.message.NotificationMessage;
@@ -40,12 +42,18 @@ import com.helltractor.exchange.messaging.MessageConsumer;
 import com.helltractor.exchange.messaging.MessageProducer;
 import com.helltractor.exchange.messaging.Messaging;
 import com.helltractor.exchange.messaging.MessagingFactory;
+import com.helltractor.exchange.messaging.SequenceStreams;
 import com.helltractor.exchange.model.quatation.TickEntity;
 import com.helltractor.exchange.model.trade.MatchDetailEntity;
 import com.helltractor.exchange.model.trade.OrderEntity;
 import com.helltractor.exchange.order.OrderService;
+import com.helltractor.exchange.snapshot.EngineSnapshotService;
+import com.helltractor.exchange.snapshot.UserSnapshotService;
 import com.helltractor.exchange.redis.RedisCache;
 import com.helltractor.exchange.redis.RedisService;
+import com.helltractor.exchange.sink.RingBufferSink;
+import com.helltractor.exchange.sink.WaitStrategy;
+import com.helltractor.exchange.store.EventMerger;
 import com.helltractor.exchange.store.StoreService;
 import com.helltractor.exchange.support.LoggerSupport;
 import com.helltractor.exchange.util.IpUtil;
@@ -57,6 +65,15 @@ import jakarta.annotation.PreDestroy;
 @Component
 public class TradingEngineService extends LoggerSupport {
 
+    // 输出线程每批最多处理的元素数
+    static final int SINK_BATCH_SIZE = 1000;
+
+    /**
+     * Closed orders and match details of a cleared order, to be saved to database.
+     */
+    record ClearedEntities(List<OrderEntity> closedOrders, List<MatchDetailEntity> matchDetails) {
+    }
+
     @Autowired(required = false)
     private final ZoneId zoneId = ZoneId.systemDefault();
 
@@ -70,7 +87,13 @@ public class TradingEngineService extends LoggerSupport {
     AssetService assetService;
 
     @Autowired
-    MatchEngine matchEngine;
+    MatchEngineGroup matchEngineGroup;
+
+    @Autowired
+    UserSnapshotService userSnapshotService;
+
+    @Autowired
+    EngineSnapshotService engineSnapshotService;
 
     @Autowired
     RedisService redisService;
@@ -87,196 +110,222 @@ public class TradingEngineService extends LoggerSupport {
     @Value("#{exchangeConfiguration.debugMode}")
     private final boolean debugMode = false;
 
+    @Value("${exchange.engine.decode-threads:2}")
+    private int decodeThreads = 2;
+
+    @Value("${exchange.engine.decode-chunk-size:64}")
+    private int decodeChunkSize = 64;
+
+    @Value("${exchange.engine.sink.buffer-size:16384}")
+    private int sinkBufferSize = 16384;
+
+    @Value("${exchange.engine.sink.wait-strategy:blocking}")
+    private String sinkWaitStrategy = "blocking";
+
+    // 序列流数量，各流的消息按sequenceId合并后处理
+    int sequenceStreams = 1;
+
     private boolean fatalError = false;
+    private EventMerger eventMerger;
     private MessageConsumer consumer;
     private MessageProducer<TickMessage> producer;
+    // 已处理的最大sequenceId
     private long lastSequenceId = 0;
+    // 每个序列流已处理的最后sequenceId
+    final long[] lastSequenceIds = new long[SequenceStreams.MAX_STREAMS];
     private boolean orderBookChanged = false;
     private String shaUpdateOrderBookLua;
 
-    private Thread tickThread;
-    private Thread notifyThread;
-    private Thread apiResultThread;
-    private Thread orderBookThread;
-    private Thread dbThread;
+    // 引擎输出，在init()中创建，直接驱动引擎时(测试)为null
+    private RingBufferSink<TickMessage> tickSink;
+    private RingBufferSink<NotificationMessage> notifySink;
+    private RingBufferSink<ApiResultMessage> apiResultSink;
+    private RingBufferSink<OrderBookBean> orderBookSink;
+    RingBufferSink<ClearedEntities> dbSink;
 
-    private OrderBookBean latestOrderBook = null;
-    private final Queue<List<OrderEntity>> orderQueue = new ConcurrentLinkedQueue<>();
-    private final Queue<List<MatchDetailEntity>> matchQueue = new ConcurrentLinkedQueue<>();
-    private final Queue<TickMessage> tickQueue = new ConcurrentLinkedQueue<>();
-    private final Queue<ApiResultMessage> apiResultQueue = new ConcurrentLinkedQueue<>();
-    private final Queue<NotificationMessage> notificationQueue = new ConcurrentLinkedQueue<>();
+    // 已冻结资产、等待撮合的订单，每个交易对最多一个
+    private final List<OrderRequestEvent> pendingEvents = new ArrayList<>();
+    private final List<OrderEntity> pendingOrders = new ArrayList<>();
 
     @PostConstruct
     public void init() {
+        this.sequenceStreams = this.messagingFactory.getSequenceStreams();
+        restoreSnapshot();
         this.shaUpdateOrderBookLua = this.redisService.loadScriptFromClassPath("/redis/update-orderbook.lua");
-        this.consumer = this.messagingFactory.createBatchMessageListener(Messaging.Topic.TRADE, IpUtil.getHostId(),
-                this::processMessages);
         this.producer = this.messagingFactory.createMessageProducer(Messaging.Topic.TICK, TickMessage.class);
-        this.tickThread = new Thread(this::runTickThread, "async-tick");
-        this.tickThread.start();
-        this.notifyThread = new Thread(this::runNotifyThread, "async-notify");
-        this.notifyThread.start();
-        this.orderBookThread = new Thread(this::runOrderBookThread, "async-orderbook");
-        this.orderBookThread.start();
-        this.apiResultThread = new Thread(this::runApiResultThread, "async-api-result");
-        this.apiResultThread.start();
-        this.dbThread = new Thread(this::runDbThread, "async-db");
-        this.dbThread.start();
+        this.tickSink = createSink("async-tick", this::sendTicks);
+        this.notifySink = createSink("async-notify", this::publishNotifications);
+        this.orderBookSink = createSink("async-orderbook", this::updateOrderBook);
+        this.apiResultSink = createSink("async-api-result", this::publishApiResults);
+        this.dbSink = createSink("async-db", this::saveToDb);
+        // 先启动输出线程，再开始消费消息
+        this.consumer = this.messagingFactory.createBatchMessageListener(Messaging.Topic.TRADE, IpUtil.getHostId(),
+                this::processMessages, this.decodeThreads, this.decodeChunkSize);
     }
 
     @PreDestroy
     public void destroy() {
         this.consumer.stop();
-        this.orderBookThread.interrupt();
-        this.dbThread.interrupt();
-    }
-
-    private void runTickThread() {
-        logger.info("start tick thread...");
-        for (;;) {
-            List<TickMessage> messages = new ArrayList<>();
-            for (;;) {
-                TickMessage message = this.tickQueue.poll();
-                if (message != null) {
-                    messages.add(message);
-                    if (messages.size() >= 1000) {
-                        break;
-                    }
-                } else {
-                    break;
-                }
-            }
-            if (!messages.isEmpty()) {
-                if (logger.isDebugEnabled()) {
-                    logger.debug("send {} tick messages...", messages.size());
-                }
-                this.producer.sendMessages(messages);
-            } else {
-                try {
-                    Thread.sleep(1);
-                } catch (InterruptedException e) {
-                    logger.warn("{} was interrupted.", Thread.currentThread().getName());
-                    break;
-                }
-            }
+        if (this.eventMerger != null) {
+            this.eventMerger.close();
+        }
+        for (RingBufferSink<?> sink : List.of(this.tickSink, this.notifySink, this.orderBookSink, this.apiResultSink,
+                this.dbSink)) {
+            sink.stop();
         }
     }
 
-    private void runNotifyThread() {
-        logger.info("start publish notify to redis...");
-        for (;;) {
-            NotificationMessage message = this.notificationQueue.poll();
-            if (message != null) {
-                redisService.publish(RedisCache.Topic.NOTIFICATION, JsonUtil.writeJson(message));
-            } else {
-                try {
-                    Thread.sleep(1);
-                } catch (InterruptedException e) {
-                    logger.warn("{} was interrupted.", Thread.currentThread().getName());
-                    break;
-                }
+    /**
+     * Load latest engine snapshot, so that only events after it are replayed.
+     */
+    void restoreSnapshot() {
+        this.lastSequenceId = this.engineSnapshotService.restore(this.lastSequenceIds);
+        if (this.lastSequenceId > 0) {
+            for (Long userId : this.assetService.getUserAssets().keySet()) {
+                this.userSnapshotService.markChanged(userId);
             }
+            this.userSnapshotService.publish(this.lastSequenceId);
         }
     }
 
-    private void runOrderBookThread() {
-        logger.info("start update orderbook snapshot to redis...");
-        for (;;) {
-            // 获取OrderBookBean的引用，确保后续操作针对局部变量而非成员变量
-            final OrderBookBean orderBook = this.latestOrderBook;
-            // 仅在OrderBookBean更新后刷新Redis
-            if (orderBook != null && orderBook.sequenceId > lastSequenceId) {
-                if (logger.isDebugEnabled()) {
-                    logger.debug("update orderbook snapshot at sequence id {}...", orderBook.sequenceId);
-                }
-                redisService.executeScriptReturnBoolean(this.shaUpdateOrderBookLua,
-                        // keys: [cache-key]
-                        new String[]{RedisCache.Key.ORDER_BOOK},
-                        // args: [sequenceId, json-data]
-                        new String[]{String.valueOf(orderBook.sequenceId), JsonUtil.writeJson(orderBook)});
-                lastSequenceId = orderBook.sequenceId;
-            } else {
-                try {
-                    Thread.sleep(1);
-                } catch (InterruptedException e) {
-                    logger.warn("{} was interrupted.", Thread.currentThread().getName());
-                    break;
-                }
+    private <E> RingBufferSink<E> createSink(String name, Consumer<List<E>> handler) {
+        RingBufferSink<E> sink = new RingBufferSink<>(name, this.sinkBufferSize,
+                WaitStrategy.of(this.sinkWaitStrategy), SINK_BATCH_SIZE, handler);
+        sink.start();
+        return sink;
+    }
+
+    private void sendTicks(List<TickMessage> messages) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("send {} tick messages...", messages.size());
+        }
+        // 行情只用于展示，发送失败时丢弃并记录，列表在返回后被复用
+        final int size = messages.size();
+        this.producer.sendMessages(messages).whenComplete((r, e) -> {
+            if (e != null) {
+                logger.warn("dropped {} tick messages: {}", size, e.getMessage());
             }
+        });
+    }
+
+    private void publishNotifications(List<NotificationMessage> messages) {
+        for (NotificationMessage message : messages) {
+            redisService.publish(RedisCache.Topic.NOTIFICATION, JsonUtil.writeJson(message));
         }
     }
 
-    private void runApiResultThread() {
-        logger.info("start publish api result to redis...");
-        for (;;) {
-            ApiResultMessage result = this.apiResultQueue.poll();
-            if (result != null) {
-                redisService.publish(RedisCache.Topic.TRADING_API_RESULT, JsonUtil.writeJson(result));
-            } else {
-                try {
-                    Thread.sleep(1);
-                } catch (InterruptedException e) {
-                    logger.warn("{} was interrupted.", Thread.currentThread().getName());
-                    break;
-                }
-            }
+    private void publishApiResults(List<ApiResultMessage> results) {
+        for (ApiResultMessage result : results) {
+            redisService.publish(RedisCache.Topic.TRADING_API_RESULT, JsonUtil.writeJson(result));
         }
     }
 
-    private void runDbThread() {
-        logger.info("start batch insert to database...");
-        for (;;) {
-            try {
-                saveToDb();
-            } catch (InterruptedException e) {
-                logger.warn("{} was interrupted.", Thread.currentThread().getName());
-                break;
+    private void updateOrderBook(List<OrderBookBean> orderBooks) {
+        // 每个交易对仅需刷新批次中最新的OrderBook
+        Set<Long> updated = new HashSet<>();
+        for (int i = orderBooks.size() - 1; i >= 0; i--) {
+            final OrderBookBean orderBook = orderBooks.get(i);
+            if (!updated.add(orderBook.symbolId)) {
+                continue;
             }
+            if (logger.isDebugEnabled()) {
+                logger.debug("update orderbook snapshot of symbol {} at sequence id {}...", orderBook.symbolId,
+                        orderBook.sequenceId);
+            }
+            redisService.executeScriptReturnBoolean(this.shaUpdateOrderBookLua,
+                    // keys: [cache-key]
+                    new String[]{RedisCache.Key.orderBook(orderBook.symbolId)},
+                    // args: [sequenceId, json-data]
+                    new String[]{String.valueOf(orderBook.sequenceId), JsonUtil.writeJson(orderBook)});
         }
     }
 
     public void processMessages(List<AbstractEvent> messages) {
         for (AbstractEvent message : messages) {
-            processEvent(message);
+            applyEvent(message);
+        }
+        flushPendingOrdersOrPanic();
+        this.userSnapshotService.publish(this.lastSequenceId);
+        if (!this.fatalError && this.engineSnapshotService.trySnapshot(this.lastSequenceId, this.lastSequenceIds)) {
+            // 状态已复制，回收余额全为零的账户及其用户快照
+            this.assetService.evictZeroAccounts(this.userSnapshotService::evict);
         }
         if (this.orderBookChanged) {
+            publishOrderBooks(messages.get(messages.size() - 1).createTime);
+        }
+    }
+
+    /**
+     * Publish order book and changed price levels of each symbol changed since last call.
+     */
+    void publishOrderBooks(long ts) {
+        for (MatchEngine matchEngine : this.matchEngineGroup.getEngines()) {
+            // 取出所有交易对变化的价格档位，未变化的交易对无需推送
+            OrderBookDeltaBean delta = matchEngine.getOrderBookDelta();
+            if (delta == null) {
+                continue;
+            }
             // 获取最新的OrderBook快照
-            this.latestOrderBook = this.matchEngine.getOrderBook(this.orderBookDepth);
+            publishOrderBook(matchEngine.getOrderBook(this.orderBookDepth));
+            // 广播变化的价格档位
+            publishNotification(createNotification(ts, "orderbook_delta", null, delta));
         }
+        this.orderBookChanged = false;
     }
 
+    /**
+     * Process event and wait until matched and cleared.
+     */
     public void processEvent(AbstractEvent event) {
+        applyEvent(event);
+        flushPendingOrdersOrPanic();
+        this.userSnapshotService.publish(this.lastSequenceId);
+    }
+
+    /**
+     * Process event or watermark. Events of all streams are applied in sequenceId order, and an order request may be
+     * left pending and matched later together with orders of other symbols.
+     */
+    private void applyEvent(AbstractEvent event) {
         if (this.fatalError) {
             return;
         }
-        // 判断是否重复消息
-        if (event.sequenceId <= this.lastSequenceId) {
-            logger.warn("skip duplicated event: {}", event);
-            return;
+        if (this.eventMerger == null) {
+            // 在恢复快照之后创建，丢失的消息从数据库补齐
+            this.eventMerger = new EventMerger(this.sequenceStreams, this.lastSequenceIds,
+                    (streamId, lastEventId) -> this.storeService.openEventStream(streamId, lastEventId));
         }
-        // 判断是否丢失了消息
-        if (event.previousId > this.lastSequenceId) {
-            List<AbstractEvent> events = storeService.loadEventFromDb(this.lastSequenceId);
-            if (events.isEmpty()) {
-                logger.error("cannot load lost event from db.");
-                panic();
-                return;
-            }
-            for (AbstractEvent e : events) {
-                this.processEvent(e);
+        try {
+            this.eventMerger.offer(event);
+            AbstractEvent next;
+            while (!this.fatalError && (next = this.eventMerger.poll()) != null) {
+                applyEventInOrder(next);
             }
+        } catch (RuntimeException e) {
+            logger.error("bad event or load lost event from db failed: " + event, e);
+            panic();
+        }
+    }
+
+    /**
+     * Process event which must follow last processed event of the same stream.
+     */
+    private void applyEventInOrder(AbstractEvent event) {
+        final long lastStreamSequenceId = this.lastSequenceIds[event.streamId];
+        // 判断是否重复消息
+        if (event.sequenceId <= lastStreamSequenceId) {
+            logger.warn("skip duplicated event: {}", event);
             return;
         }
-        // 判断当前消息是否指向上一条消息
-        if (event.previousId != this.lastSequenceId) {
-            logger.error("bad event: expected previous id {} but actual {} for event: {}", this.lastSequenceId,
+        // 判断当前消息是否指向同一流的上一条消息
+        if (event.previousId != lastStreamSequenceId) {
+            logger.error("bad event: expected previous id {} but actual {} for event: {}", lastStreamSequenceId,
                     event.previousId, event);
             panic();
             return;
         }
         if (logger.isDebugEnabled()) {
-            logger.debug("process event {} -> {}: {}...", this.lastSequenceId, event.sequenceId, event);
+            logger.debug("process event {} -> {}: {}...", lastStreamSequenceId, event.sequenceId, event);
         }
         try {
             if (event instanceof OrderRequestEvent) {
@@ -295,81 +344,139 @@ public class TradingEngineService extends LoggerSupport {
             panic();
             return;
         }
-        this.lastSequenceId = event.sequenceId;
+        this.lastSequenceIds[event.streamId] = event.sequenceId;
+        // 各流的sequenceId全局唯一且递增，取最大值作为引擎进度
+        this.lastSequenceId = Math.max(this.lastSequenceId, event.sequenceId);
         if (logger.isDebugEnabled()) {
             logger.debug("set last processed sequence id: {}...", this.lastSequenceId);
         }
         if (debugMode) {
+            flushPendingOrdersOrPanic();
             this.validate();
             this.debug();
         }
     }
 
     private void createOrder(OrderRequestEvent event) {
+        MatchEngine matchEngine = this.matchEngineGroup.getEngine(event.symbolId);
+        if (matchEngine == null) {
+            logger.warn("create order failed: symbol {} not found.", event.symbolId);
+            publishApiResult(ApiResultMessage.createOrderFailed(event.refId, event.createTime));
+            return;
+        }
+        // 同一交易对的订单必须在之前的订单撮合清算后处理
+        for (OrderEntity pending : this.pendingOrders) {
+            if (pending.symbolId == event.symbolId) {
+                flushPendingOrders();
+                break;
+            }
+        }
         // 创建订单ID
         ZonedDateTime zonedDateTime = ZonedDateTime.ofInstant(Instant.ofEpochMilli(event.createTime), zoneId);
         int year = zonedDateTime.getYear();
         int month = zonedDateTime.getMonthValue();
         long orderId = event.sequenceId * 10000 + (year * 100L + month);
         // 创建订单
-        OrderEntity order = orderService.createOrder(event.sequenceId, event.createTime,
+        OrderEntity order = orderService.createOrder(matchEngine.symbol, event.sequenceId, event.createTime,
                 orderId, event.userId, event.direction, event.price, event.quantity);
+        if (order == null && !this.pendingOrders.isEmpty()) {
+            // 清算只会增加可用资产，因此冻结成功与否不受等待中订单影响；冻结失败时，清算等待中订单后重试
+            flushPendingOrders();
+            order = orderService.createOrder(matchEngine.symbol, event.sequenceId, event.createTime,
+                    orderId, event.userId, event.direction, event.price, event.quantity);
+        }
         if (order == null) {
             logger.warn("create order failed.");
             // 推送失败结果
-            this.apiResultQueue.add(ApiResultMessage.createOrderFailed(event.refId, event.createTime));
+            publishApiResult(ApiResultMessage.createOrderFailed(event.refId, event.createTime));
             return;
         }
-        // 撮合和清算
-        MatchResult result = this.matchEngine.processOrder(event.sequenceId, order);
-        this.clearingService.clearMatchResult(result);
+        this.pendingEvents.add(event);
+        this.pendingOrders.add(order);
+    }
+
+    private void flushPendingOrdersOrPanic() {
+        try {
+            flushPendingOrders();
+        } catch (Exception e) {
+            logger.error("process pending orders error.", e);
+            panic();
+        }
+    }
+
+    /**
+     * Match pending orders (concurrently if more than one symbol), then clear in sequence order.
+     */
+    private void flushPendingOrders() {
+        if (this.pendingOrders.isEmpty()) {
+            return;
+        }
+        List<MatchResult> results = this.matchEngineGroup.processOrders(this.pendingOrders);
+        for (int i = 0; i < results.size(); i++) {
+            clearOrder(this.pendingEvents.get(i), results.get(i));
+        }
+        this.pendingEvents.clear();
+        this.pendingOrders.clear();
+    }
+
+    private void clearOrder(OrderRequestEvent event, MatchResult result) {
+        OrderEntity order = result.takerOrder;
+        MarketSymbol symbol = this.matchEngineGroup.getEngine(order.symbolId).symbol;
+        // 清算
+        this.clearingService.clearMatchResult(symbol, result);
+        this.userSnapshotService.markChanged(order.userId);
         // 推送成功结果,注意必须复制一份OrderEntity,因为将异步序列化
-        this.apiResultQueue.add(ApiResultMessage.orderSuccess(event.refId, order.copy(), event.createTime));
+        publishApiResult(ApiResultMessage.orderSuccess(event.refId, order.copy(), event.createTime));
         this.orderBookChanged = true;
         // 收集Notification
         List<NotificationMessage> notifications = new ArrayList<>();
         notifications.add(createNotification(event.createTime, "order_matched", order.userId, order.copy()));
         // 收集已完成的OrderEntity并生成MatchDetailEntity, TickEntity
-        if (!result.matchDetails.isEmpty()) {
+        if (!result.isEmpty()) {
             List<OrderEntity> closedOrders = new ArrayList<>();
             List<MatchDetailEntity> matchDetails = new ArrayList<>();
             List<TickEntity> ticks = new ArrayList<>();
             if (result.takerOrder.status.isFinalStatus) {
                 closedOrders.add(result.takerOrder);
             }
-            for (MatchDetailRecord detail : result.matchDetails) {
-                OrderEntity makerOrder = detail.makerOrder();
+            for (int i = 0; i < result.size(); i++) {
+                OrderEntity makerOrder = result.makerOrder(i);
+                this.userSnapshotService.markChanged(makerOrder.userId);
                 notifications.add(createNotification(event.createTime, "order_matched", makerOrder.userId, makerOrder.copy()));
                 if (makerOrder.status.isFinalStatus) {
                     closedOrders.add(makerOrder);
                 }
+                // 成交价格即Maker价格，仅需将成交数量转换为BigDecimal
+                BigDecimal price = makerOrder.price;
+                BigDecimal quantity = symbol.fixedPoint().toQuantity(result.quantity(i));
                 MatchDetailEntity takerDetail = generateMatchDetailEntity(event.sequenceId, event.createTime,
-                        detail, true);
+                        order, makerOrder, MatchType.TAKER, price, quantity);
                 MatchDetailEntity makerDetail = generateMatchDetailEntity(event.sequenceId, event.createTime,
-                        detail, false);
+                        makerOrder, order, MatchType.MAKER, price, quantity);
                 matchDetails.add(takerDetail);
                 matchDetails.add(makerDetail);
                 TickEntity tick = new TickEntity();
                 tick.sequenceId = event.sequenceId;
-                tick.takerOrderId = detail.takerOrder().id;
-                tick.makerOrderId = detail.makerOrder().id;
-                tick.price = detail.price();
-                tick.quantity = detail.quantity();
-                tick.takerDirection = detail.takerOrder().direction == Direction.BUY;
+                tick.takerOrderId = order.id;
+                tick.makerOrderId = makerOrder.id;
+                tick.price = price;
+                tick.quantity = quantity;
+                tick.takerDirection = order.direction == Direction.BUY;
                 tick.createTime = event.createTime;
                 ticks.add(tick);
             }
             // 异步写入数据库
-            this.orderQueue.add(closedOrders);
-            this.matchQueue.add(matchDetails);
+            publishEntities(new ClearedEntities(closedOrders, matchDetails));
             // 异步发送Tick消息
             TickMessage msg = new TickMessage();
             msg.sequenceId = event.sequenceId;
             msg.createTime = event.createTime;
             msg.ticks = ticks;
-            this.tickQueue.add(msg);
+            publishTick(msg);
             // 异步通知OrderMatch
-            this.notificationQueue.addAll(notifications);
+            for (NotificationMessage notification : notifications) {
+                publishNotification(notification);
+            }
         }
     }
 
@@ -383,80 +490,109 @@ public class TradingEngineService extends LoggerSupport {
     }
 
     private void cancelOrder(OrderCancelEvent event) {
+        flushPendingOrders();
         OrderEntity order = this.orderService.getOrder(event.refOrderId);
         if (order == null || order.userId.longValue() != event.userId.longValue()) {
             // 发送失败消息
-            this.apiResultQueue.add(ApiResultMessage.cancelOrderFailed(event.refId, event.createTime));
+            publishApiResult(ApiResultMessage.cancelOrderFailed(event.refId, event.createTime));
             return;
         }
-        this.matchEngine.cancel(event.createTime, order);
-        this.clearingService.clearCancelOrder(order);
+        MatchEngine matchEngine = this.matchEngineGroup.getEngine(order.symbolId);
+        matchEngine.cancel(event.sequenceId, event.createTime, order);
+        this.clearingService.clearCancelOrder(matchEngine.symbol, order);
+        this.userSnapshotService.markChanged(order.userId);
         this.orderBookChanged = true;
         // 发送成功消息
-        this.apiResultQueue.add(ApiResultMessage.orderSuccess(event.refId, order, event.createTime));
-        this.notificationQueue.add(createNotification(event.createTime, "order_canceled", order.userId, order));
+        publishApiResult(ApiResultMessage.orderSuccess(event.refId, order, event.createTime));
+        publishNotification(createNotification(event.createTime, "order_canceled", order.userId, order));
+        // 已取消的订单同样写入历史订单
+        publishEntities(new ClearedEntities(List.of(order), List.of()));
     }
 
     private boolean transfer(TransferEvent event) {
-        return this.assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, event.fromUserId, event.toUserId,
+        flushPendingOrders();
+        // 账本无法表示的金额直接拒绝
+        if (event.amount.signum() < 0 || event.amount.stripTrailingZeros().scale() > AssetService.SCALE) {
+            logger.warn("reject transfer with invalid amount {}: {}", event.amount, event);
+            return false;
+        }
+        boolean ok = this.assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, event.fromUserId, event.toUserId,
                 event.asset, event.amount, event.sufficient);
+        if (ok) {
+            this.userSnapshotService.markChanged(event.fromUserId);
+            this.userSnapshotService.markChanged(event.toUserId);
+        }
+        return ok;
     }
 
-    private void saveToDb() throws InterruptedException {
-        if (!matchQueue.isEmpty()) {
-            List<MatchDetailEntity> batch = new ArrayList<>(1000);
-            for (;;) {
-                List<MatchDetailEntity> matches = matchQueue.poll();
-                if (matches != null) {
-                    batch.addAll(matches);
-                    if (batch.size() >= 1000) {
-                        break;
-                    }
-                } else {
-                    break;
-                }
-            }
-            batch.sort(MatchDetailEntity::compareTo);
+    private void publishTick(TickMessage message) {
+        if (this.tickSink != null) {
+            this.tickSink.publish(message);
+        }
+    }
+
+    private void publishNotification(NotificationMessage message) {
+        if (this.notifySink != null) {
+            this.notifySink.publish(message);
+        }
+    }
+
+    private void publishApiResult(ApiResultMessage result) {
+        if (this.apiResultSink != null) {
+            this.apiResultSink.publish(result);
+        }
+    }
+
+    private void publishOrderBook(OrderBookBean orderBook) {
+        if (this.orderBookSink != null) {
+            this.orderBookSink.publish(orderBook);
+        }
+    }
+
+    private void publishEntities(ClearedEntities entities) {
+        if (this.dbSink != null) {
+            this.dbSink.publish(entities);
+        }
+    }
+
+    private void saveToDb(List<ClearedEntities> batch) {
+        List<MatchDetailEntity> matches = new ArrayList<>();
+        List<OrderEntity> orders = new ArrayList<>();
+        for (ClearedEntities entities : batch) {
+            matches.addAll(entities.matchDetails());
+            orders.addAll(entities.closedOrders());
+        }
+        if (!matches.isEmpty()) {
+            matches.sort(MatchDetailEntity::compareTo);
             if (logger.isDebugEnabled()) {
-                logger.debug("batch insert {} match details...", batch.size());
+                logger.debug("batch insert {} match details...", matches.size());
             }
-            this.storeService.insertIgnore(batch);
-        }
-        if (!orderQueue.isEmpty()) {
-            List<OrderEntity> batch = new ArrayList<>(1000);
-            for (;;) {
-                List<OrderEntity> orders = orderQueue.poll();
-                if (orders != null) {
-                    batch.addAll(orders);
-                    if (batch.size() >= 1000) {
-                        break;
-                    }
-                } else {
-                    break;
-                }
-            }
-            batch.sort(OrderEntity::compareTo);
+            this.storeService.insertIgnore(matches);
+        }
+        if (!orders.isEmpty()) {
+            orders.sort(OrderEntity::compareTo);
             if (logger.isDebugEnabled()) {
-                logger.debug("batch insert {} orders...", batch.size());
+                logger.debug("batch insert {} orders...", orders.size());
             }
-            this.storeService.insertIgnore(batch);
-        }
-        if (matchQueue.isEmpty()) {
-            Thread.sleep(1);
+            this.storeService.insertIgnore(orders);
         }
     }
 
-    private MatchDetailEntity generateMatchDetailEntity(long sequenceId, long timeStamp, MatchDetailRecord detail, boolean forTaker) {
+    /**
+     * Generate match detail of order, against its counter order.
+     */
+    private MatchDetailEntity generateMatchDetailEntity(long sequenceId, long timeStamp, OrderEntity order,
+            OrderEntity counterOrder, MatchType type, BigDecimal price, BigDecimal quantity) {
         MatchDetailEntity entity = new MatchDetailEntity();
         entity.sequenceId = sequenceId;
-        entity.orderId = forTaker ? detail.takerOrder().id : detail.makerOrder().id;
-        entity.counterOrderId = forTaker ? detail.makerOrder().id : detail.takerOrder().id;
-        entity.direction = forTaker ? detail.takerOrder().direction : detail.makerOrder().direction;
-        entity.price = detail.price();
-        entity.quantity = detail.quantity();
-        entity.type = forTaker ? MatchType.TAKER : MatchType.MAKER;
-        entity.userId = forTaker ? detail.takerOrder().userId : detail.makerOrder().userId;
-        entity.counterUserId = forTaker ? detail.makerOrder().userId : detail.takerOrder().userId;
+        entity.orderId = order.id;
+        entity.counterOrderId = counterOrder.id;
+        entity.direction = order.direction;
+        entity.price = price;
+        entity.quantity = quantity;
+        entity.type = type;
+        entity.userId = order.userId;
+        entity.counterUserId = counterOrder.userId;
         entity.createTime = timeStamp;
         return entity;
     }
@@ -473,9 +609,9 @@ public class TradingEngineService extends LoggerSupport {
         // 验证系统资产完整性
         BigDecimal totalUSD = BigDecimal.ZERO;
         BigDecimal totalBTC = BigDecimal.ZERO;
-        for (Map.Entry<Long, ConcurrentMap<AssetEnum, Asset>> userEntry : this.assetService.getUserAssets().entrySet()) {
+        for (Map.Entry<Long, Map<AssetEnum, Asset>> userEntry : this.assetService.getUserAssets().entrySet()) {
             Long userId = userEntry.getKey();
-            ConcurrentMap<AssetEnum, Asset> assets = userEntry.getValue();
+            Map<AssetEnum, Asset> assets = userEntry.getValue();
             for (Map.Entry<AssetEnum, Asset> entry : assets.entrySet()) {
                 AssetEnum assetId = entry.getKey();
                 Asset asset = entry.getValue();
@@ -507,27 +643,27 @@ public class TradingEngineService extends LoggerSupport {
     private void validateOrders() {
         // 验证订单
         Map<Long, Map<AssetEnum, BigDecimal>> userOrderFrozen = new HashMap<>();
-        for (Map.Entry<Long, OrderEntity> entry : this.orderService.getActiveOrders().entrySet()) {
-            OrderEntity order = entry.getValue();
+        for (OrderEntity order : this.orderService.getActiveOrders()) {
             require(order.unfilledQuantity.signum() > 0, "Active order must have positive unfilled amount: " + order);
+            MatchEngine matchEngine = this.matchEngineGroup.getEngine(order.symbolId);
+            require(matchEngine != null, "Symbol of order not found: " + order);
+            MarketSymbol symbol = matchEngine.symbol;
             switch (order.direction) {
                 case BUY -> {
                     // 订单必须在MatchEngine中
-                    require(this.matchEngine.buyBook.exist(order), "order not found in buy book: " + order);
-                    // 累计冻结的USD
+                    require(matchEngine.buyBook.exist(order), "order not found in buy book: " + order);
+                    // 累计冻结的报价资产
                     userOrderFrozen.putIfAbsent(order.userId, new HashMap<>());
                     Map<AssetEnum, BigDecimal> frozenAssets = userOrderFrozen.get(order.userId);
-                    frozenAssets.putIfAbsent(AssetEnum.USD, BigDecimal.ZERO);
-                    frozenAssets.computeIfPresent(AssetEnum.USD, (k, frozen) -> frozen.add(order.price.multiply(order.unfilledQuantity)));
+                    frozenAssets.merge(symbol.quoteAsset(), order.price.multiply(order.unfilledQuantity), BigDecimal::add);
                 }
                 case SELL -> {
                     // 订单必须在MatchEngine中
-                    require(this.matchEngine.sellBook.exist(order), "order not found in sell book: " + order);
-                    // 累计冻结的BTC
+                    require(matchEngine.sellBook.exist(order), "order not found in sell book: " + order);
+                    // 累计冻结的基础资产
                     userOrderFrozen.putIfAbsent(order.userId, new HashMap<>());
                     Map<AssetEnum, BigDecimal> frozenAssets = userOrderFrozen.get(order.userId);
-                    frozenAssets.putIfAbsent(AssetEnum.BTC, BigDecimal.ZERO);
-                    frozenAssets.computeIfPresent(AssetEnum.BTC, (k, frozen) -> frozen.add(order.unfilledQuantity));
+                    frozenAssets.merge(symbol.baseAsset(), order.unfilledQuantity, BigDecimal::add);
                 }
                 default -> {
                     require(false, "Unexpected order direction: " + order.direction);
@@ -535,9 +671,9 @@ public class TradingEngineService extends LoggerSupport {
             }
         }
         // 订单冻结的累计金额必须和Asset冻结一致
-        for (Entry<Long, ConcurrentMap<AssetEnum, Asset>> userEntry : this.assetService.getUserAssets().entrySet()) {
+        for (Entry<Long, Map<AssetEnum, Asset>> userEntry : this.assetService.getUserAssets().entrySet()) {
             Long userId = userEntry.getKey();
-            ConcurrentMap<AssetEnum, Asset> assets = userEntry.getValue();
+            Map<AssetEnum, Asset> assets = userEntry.getValue();
             for (Entry<AssetEnum, Asset> entry : assets.entrySet()) {
                 AssetEnum assetId = entry.getKey();
                 Asset asset = entry.getValue();
@@ -563,14 +699,19 @@ public class TradingEngineService extends LoggerSupport {
 
     private void validateMatchEngine() {
         // OrderBook的Order必须在ActiveOrders中
-        Map<Long, OrderEntity> copyOfActiveOrders = new HashMap<>(this.orderService.getActiveOrders());
-        for (OrderEntity order : this.matchEngine.buyBook.book.values()) {
-            require(copyOfActiveOrders.remove(order.id) == order,
-                    "Order in buy book is not in active orders: " + order);
+        Map<Long, OrderEntity> copyOfActiveOrders = new HashMap<>();
+        for (OrderEntity order : this.orderService.getActiveOrders()) {
+            copyOfActiveOrders.put(order.id, order);
         }
-        for (OrderEntity order : this.matchEngine.sellBook.book.values()) {
-            require(copyOfActiveOrders.remove(order.id) == order,
-                    "Order in sell book is not in active orders: " + order);
+        for (MatchEngine matchEngine : this.matchEngineGroup.getEngines()) {
+            for (OrderEntity order : matchEngine.buyBook.getOrders()) {
+                require(copyOfActiveOrders.remove(order.id) == order,
+                        "Order in buy book is not in active orders: " + order);
+            }
+            for (OrderEntity order : matchEngine.sellBook.getOrders()) {
+                require(copyOfActiveOrders.remove(order.id) == order,
+                        "Order in sell book is not in active orders: " + order);
+            }
         }
         // activeOrders的所有Order必须在Order Book中
         require(copyOfActiveOrders.isEmpty(), "Not all active orders are in order book.");
@@ -580,7 +721,9 @@ public class TradingEngineService extends LoggerSupport {
         System.out.println("========== trading engine ==========");
         this.assetService.debug();
         this.orderService.debug();
-        this.matchEngine.debug();
+        for (MatchEngine matchEngine : this.matchEngineGroup.getEngines()) {
+            matchEngine.debug();
+        }
         System.out.println("========== // trading engine ==========");
     }
 
@@ -2,37 +2,121 @@ package com.helltractor.exchange.assets;
 
 import com.helltractor.exchange.enums.AssetEnum;
 import com.helltractor.exchange.support.LoggerSupport;
+import com.helltractor.exchange.util.LongIntHashMap;
 import org.springframework.stereotype.Component;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
 
 /**
- * Asset service. Need multi-thread safe.
+ * Asset service backed by a dense ledger.
+ * <p>
+ * Each user gets an internal index on first use. Available and frozen balances are fixed-point longs (scale
+ * {@link #SCALE}) stored in primitive arrays at {@code index * ASSET_COUNT + AssetEnum.ordinal()}. The arrays are
+ * split into chunks of {@link #CHUNK_USERS} users, so growing never copies existing balances. Indexes of evicted users
+ * are reused.
+ * <p>
+ * Single writer: transfers and eviction must be called by the trading engine thread only, and take no lock. Readers of
+ * any thread get a consistent copy of balances through a seqlock: the writer makes {@code version} odd while it
+ * changes the ledger, and a reader retries until it has read everything between two equal even versions.
  */
 @Component
 public class AssetService extends LoggerSupport {
 
-    // UserId -> Map(AssetEnum -> Assets[available/frozen])
-    public final ConcurrentMap<Long, ConcurrentMap<AssetEnum, Asset>> userAssets = new ConcurrentHashMap<>();
+    /**
+     * Scale of ledger balances, must cover amount scale of all markets.
+     */
+    public static final int SCALE = 8;
+
+    static final int ASSET_COUNT = AssetEnum.values().length;
+
+    static final AssetEnum[] ASSETS = AssetEnum.values();
+
+    static final int CHUNK_BITS = 10;
+
+    static final int CHUNK_USERS = 1 << CHUNK_BITS;
+
+    static final int CHUNK_MASK = CHUNK_USERS - 1;
+
+    private static final VarHandle VERSION;
+
+    static {
+        try {
+            VERSION = MethodHandles.lookup().findVarHandle(AssetService.class, "version", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // seqlock version, odd while writing
+    private long version = 0;
+
+    // userId -> index
+    private final LongIntHashMap userIndexes = new LongIntHashMap(CHUNK_USERS);
+
+    // index -> available / frozen of each asset
+    private long[][] availableChunks = new long[0][];
+
+    private long[][] frozenChunks = new long[0][];
+
+    // index -> userId
+    private long[][] userIdChunks = new long[0][];
+
+    // index -> bit mask of opened assets, 0 if index is free
+    private int[][] openedChunks = new int[0][];
+
+    // next never used index
+    private int nextIndex = 0;
+
+    // indexes of evicted users
+    private int[] freeIndexes = new int[16];
+
+    private int freeCount = 0;
 
     public Asset getAsset(Long userId, AssetEnum assetId) {
-        ConcurrentMap<AssetEnum, Asset> assets = userAssets.get(userId);
-        return assets == null ? null : assets.get(assetId);
+        return read(() -> {
+            int index = this.userIndexes.get(userId);
+            if (index < 0 || (opened(index) & (1 << assetId.ordinal())) == 0) {
+                return null;
+            }
+            int slot = slot(index, assetId);
+            return new Asset(toAmount(this.availableChunks[index >>> CHUNK_BITS][slot]),
+                    toAmount(this.frozenChunks[index >>> CHUNK_BITS][slot]));
+        });
     }
 
+    /**
+     * Copy of all opened assets of user.
+     */
     public Map<AssetEnum, Asset> getAssets(Long userId) {
-        Map<AssetEnum, Asset> assets = userAssets.get(userId);
-        return assets == null ? Map.of() : assets;
+        return read(() -> {
+            int index = this.userIndexes.get(userId);
+            return index < 0 ? Map.of() : copyAssets(index);
+        });
     }
 
-    public ConcurrentMap<Long, ConcurrentMap<AssetEnum, Asset>> getUserAssets() {
-        return this.userAssets;
+    /**
+     * Copy of all assets of all users.
+     */
+    public Map<Long, Map<AssetEnum, Asset>> getUserAssets() {
+        return read(() -> {
+            Map<Long, Map<AssetEnum, Asset>> userAssets = new HashMap<>();
+            this.userIndexes.forEachKey(userId -> userAssets.put(userId, copyAssets(this.userIndexes.get(userId))));
+            return userAssets;
+        });
     }
 
     public boolean tryTransfer(Transfer type, Long fromUserId, Long toUserId, AssetEnum assetId,
@@ -43,57 +127,73 @@ public class AssetService extends LoggerSupport {
         if (amount.signum() < 0) {
             throw new IllegalArgumentException("Amount must be positive");
         }
-        Asset fromAsset = getAsset(fromUserId, assetId);
-        if (fromAsset == null) {
-            fromAsset = initAssets(fromUserId, assetId);
+        long units;
+        try {
+            units = toUnits(amount);
+        } catch (ArithmeticException e) {
+            logger.warn("invalid amount {} of assets {}", amount, assetId);
+            return false;
         }
-        Asset toAsset = getAsset(toUserId, assetId);
-        if (toAsset == null) {
-            toAsset = initAssets(toUserId, assetId);
+        beginWrite();
+        try {
+            return applyTransfer(type, fromUserId, toUserId, assetId, units, checkBalance);
+        } finally {
+            endWrite();
         }
+    }
+
+    private boolean applyTransfer(Transfer type, long fromUserId, long toUserId, AssetEnum assetId, long units,
+            boolean checkBalance) {
+        int fromIndex = openAsset(fromUserId, assetId);
+        int toIndex = openAsset(toUserId, assetId);
+        int fromChunk = fromIndex >>> CHUNK_BITS;
+        int fromSlot = slot(fromIndex, assetId);
+        int toChunk = toIndex >>> CHUNK_BITS;
+        int toSlot = slot(toIndex, assetId);
         return switch (type) {
-            case AVAILABLE_TO_AVAILABLE -> {
-                synchronized (fromAsset) {
-                    if (checkBalance && fromAsset.available.compareTo(amount) < 0) {
-                        yield false;
-                    }
-                    fromAsset.available = fromAsset.available.subtract(amount);
-                }
-                synchronized (toAsset) {
-                    toAsset.available = toAsset.available.add(amount);
-                }
-                yield true;
-            }
-            case FROZEN_TO_AVAILABLE -> {
-                synchronized (fromAsset) {
-                    if (checkBalance && fromAsset.frozen.compareTo(amount) < 0) {
-                        yield false;
-                    }
-                    fromAsset.frozen = fromAsset.frozen.subtract(amount);
-                }
-                synchronized (toAsset) {
-                    toAsset.available = toAsset.available.add(amount);
-                }
-                yield true;
-            }
-            case AVAILABLE_TO_FROZEN -> {
-                synchronized (fromAsset) {
-                    if (checkBalance && fromAsset.available.compareTo(amount) < 0) {
-                        yield false;
-                    }
-                    fromAsset.available = fromAsset.available.subtract(amount);
-                }
-                synchronized (toAsset) {
-                    toAsset.frozen = toAsset.frozen.add(amount);
-                }
-                yield true;
-            }
+            case AVAILABLE_TO_AVAILABLE -> move(this.availableChunks[fromChunk], fromSlot,
+                    this.availableChunks[toChunk], toSlot, units, checkBalance);
+            case FROZEN_TO_AVAILABLE -> move(this.frozenChunks[fromChunk], fromSlot,
+                    this.availableChunks[toChunk], toSlot, units, checkBalance);
+            case AVAILABLE_TO_FROZEN -> move(this.availableChunks[fromChunk], fromSlot,
+                    this.frozenChunks[toChunk], toSlot, units, checkBalance);
             default -> {
                 throw new IllegalArgumentException("Invalid transfer type: " + type);
             }
         };
     }
 
+    /**
+     * Move units between two slots.
+     *
+     * @return false if balance is insufficient or either balance would overflow, and nothing is changed
+     */
+    private static boolean move(long[] from, int fromSlot, long[] to, int toSlot, long units, boolean checkBalance) {
+        if (checkBalance && from[fromSlot] < units) {
+            return false;
+        }
+        if (from == to && fromSlot == toSlot) {
+            return true;
+        }
+        long debited;
+        long credited;
+        try {
+            // 先计算两边的新值，溢出时不修改任何一边
+            debited = Math.subtractExact(from[fromSlot], units);
+            credited = Math.addExact(to[toSlot], units);
+        } catch (ArithmeticException e) {
+            return false;
+        }
+        from[fromSlot] = debited;
+        to[toSlot] = credited;
+        return true;
+    }
+
+    /**
+     * Transfer assets which must be sufficient.
+     *
+     * @throws RuntimeException if balance is insufficient or amount cannot be represented by ledger
+     */
     public void transfer(Transfer type, Long fromUserId, Long toUserId, AssetEnum assetId, BigDecimal amount) {
         if (!tryTransfer(type, fromUserId, toUserId, assetId, amount, true)) {
             throw new RuntimeException("Transfer failed for " + type + ", from user " + fromUserId + " to user " + toUserId
@@ -112,6 +212,11 @@ public class AssetService extends LoggerSupport {
         return ok;
     }
 
+    /**
+     * Unfreeze assets which must be frozen.
+     *
+     * @throws RuntimeException if frozen is insufficient or amount cannot be represented by ledger
+     */
     public void unfreeze(Long userId, AssetEnum assetId, BigDecimal amount) {
         if (!tryTransfer(Transfer.FROZEN_TO_AVAILABLE, userId, userId, assetId, amount, true)) {
             throw new RuntimeException(
@@ -122,23 +227,277 @@ public class AssetService extends LoggerSupport {
         }
     }
 
-    private Asset initAssets(Long userId, AssetEnum assetId) {
-        return userAssets
-                .computeIfAbsent(userId, k -> new ConcurrentHashMap<>())
-                .computeIfAbsent(assetId, k -> new Asset());
+    /**
+     * Evict users whose available and frozen of all assets are zero, and recycle their indexes. Called by the engine
+     * after each snapshot, since it scans the whole ledger.
+     *
+     * @return number of evicted users
+     */
+    public int evictZeroAccounts() {
+        return evictZeroAccounts(userId -> {
+        });
+    }
+
+    /**
+     * Evict zero accounts and pass id of each evicted user to the listener.
+     */
+    public int evictZeroAccounts(LongConsumer evictedListener) {
+        int evicted = 0;
+        beginWrite();
+        try {
+            for (int index = 0; index < this.nextIndex; index++) {
+                if (opened(index) == 0 || !isZero(index)) {
+                    continue;
+                }
+                long userId = this.userIdChunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+                this.userIndexes.remove(userId);
+                this.openedChunks[index >>> CHUNK_BITS][index & CHUNK_MASK] = 0;
+                if (this.freeCount == this.freeIndexes.length) {
+                    this.freeIndexes = Arrays.copyOf(this.freeIndexes, this.freeCount << 1);
+                }
+                this.freeIndexes[this.freeCount++] = index;
+                evicted++;
+                evictedListener.accept(userId);
+            }
+        } finally {
+            endWrite();
+        }
+        if (evicted > 0) {
+            logger.info("evicted {} zero accounts.", evicted);
+        }
+        return evicted;
+    }
+
+    /**
+     * Number of users in ledger.
+     */
+    public int getUserCount() {
+        return read(this.userIndexes::size);
+    }
+
+    /**
+     * Copy all accounts for engine snapshot. Must be called by the writer thread. Only used chunks are copied, so the
+     * copy costs a few array copies, and can be written on another thread while the ledger keeps changing.
+     */
+    public LedgerCopy copyLedger() {
+        int users = this.nextIndex;
+        int chunks = (users + CHUNK_MASK) >>> CHUNK_BITS;
+        long[][] available = new long[chunks][];
+        long[][] frozen = new long[chunks][];
+        long[][] userIds = new long[chunks][];
+        int[][] opened = new int[chunks][];
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int length = Math.min(CHUNK_USERS, users - (chunk << CHUNK_BITS));
+            available[chunk] = Arrays.copyOf(this.availableChunks[chunk], length * ASSET_COUNT);
+            frozen[chunk] = Arrays.copyOf(this.frozenChunks[chunk], length * ASSET_COUNT);
+            userIds[chunk] = Arrays.copyOf(this.userIdChunks[chunk], length);
+            opened[chunk] = Arrays.copyOf(this.openedChunks[chunk], length);
+        }
+        return new LedgerCopy(this.userIndexes.size(), users, available, frozen, userIds, opened);
+    }
+
+    /**
+     * Immutable copy of ledger taken by {@link #copyLedger()}.
+     */
+    public static final class LedgerCopy {
+
+        private final int userCount;
+
+        private final int users;
+
+        private final long[][] availableChunks;
+
+        private final long[][] frozenChunks;
+
+        private final long[][] userIdChunks;
+
+        private final int[][] openedChunks;
+
+        LedgerCopy(int userCount, int users, long[][] availableChunks, long[][] frozenChunks, long[][] userIdChunks,
+                int[][] openedChunks) {
+            this.userCount = userCount;
+            this.users = users;
+            this.availableChunks = availableChunks;
+            this.frozenChunks = frozenChunks;
+            this.userIdChunks = userIdChunks;
+            this.openedChunks = openedChunks;
+        }
+
+        /**
+         * Write all accounts to engine snapshot, in the format read by {@link AssetService#readSnapshot(ByteBuffer)}.
+         */
+        public void write(DataOutput out) throws IOException {
+            out.writeInt(ASSET_COUNT);
+            out.writeInt(this.userCount);
+            for (int index = 0; index < this.users; index++) {
+                int opened = this.openedChunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+                if (opened == 0) {
+                    continue;
+                }
+                long[] available = this.availableChunks[index >>> CHUNK_BITS];
+                long[] frozen = this.frozenChunks[index >>> CHUNK_BITS];
+                int base = (index & CHUNK_MASK) * ASSET_COUNT;
+                out.writeLong(this.userIdChunks[index >>> CHUNK_BITS][index & CHUNK_MASK]);
+                out.writeInt(opened);
+                for (int i = 0; i < ASSET_COUNT; i++) {
+                    out.writeLong(available[base + i]);
+                    out.writeLong(frozen[base + i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Load all accounts from engine snapshot into empty ledger.
+     */
+    public void readSnapshot(ByteBuffer buffer) {
+        if (!this.userIndexes.isEmpty()) {
+            throw new IllegalStateException("Cannot load snapshot into non-empty ledger.");
+        }
+        int assetCount = buffer.getInt();
+        if (assetCount != ASSET_COUNT) {
+            throw new IllegalArgumentException("Snapshot has " + assetCount + " assets but expected " + ASSET_COUNT);
+        }
+        int users = buffer.getInt();
+        beginWrite();
+        try {
+            for (int n = 0; n < users; n++) {
+                long userId = buffer.getLong();
+                int index = allocateIndex();
+                this.userIndexes.put(userId, index);
+                this.userIdChunks[index >>> CHUNK_BITS][index & CHUNK_MASK] = userId;
+                this.openedChunks[index >>> CHUNK_BITS][index & CHUNK_MASK] = buffer.getInt();
+                long[] available = this.availableChunks[index >>> CHUNK_BITS];
+                long[] frozen = this.frozenChunks[index >>> CHUNK_BITS];
+                int base = (index & CHUNK_MASK) * ASSET_COUNT;
+                for (int i = 0; i < ASSET_COUNT; i++) {
+                    available[base + i] = buffer.getLong();
+                    frozen[base + i] = buffer.getLong();
+                }
+            }
+        } finally {
+            endWrite();
+        }
+    }
+
+    private void beginWrite() {
+        VERSION.setOpaque(this, this.version + 1);
+        // 版本号必须先于账本数据写入
+        VarHandle.storeStoreFence();
+    }
+
+    private void endWrite() {
+        VERSION.setRelease(this, this.version + 1);
+    }
+
+    /**
+     * Run reader until it sees no concurrent write. A reader may observe a ledger in the middle of change, which is
+     * discarded, including any exception it throws.
+     */
+    private <T> T read(Supplier<T> reader) {
+        for (;;) {
+            long v1 = (long) VERSION.getAcquire(this);
+            if ((v1 & 1) == 0) {
+                try {
+                    T result = reader.get();
+                    VarHandle.loadLoadFence();
+                    if ((long) VERSION.getAcquire(this) == v1) {
+                        return result;
+                    }
+                } catch (RuntimeException e) {
+                    if ((long) VERSION.getAcquire(this) == v1) {
+                        throw e;
+                    }
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private int openAsset(long userId, AssetEnum assetId) {
+        int index = this.userIndexes.get(userId);
+        if (index < 0) {
+            index = this.freeCount > 0 ? this.freeIndexes[--this.freeCount] : allocateIndex();
+            this.userIndexes.put(userId, index);
+            this.userIdChunks[index >>> CHUNK_BITS][index & CHUNK_MASK] = userId;
+        }
+        this.openedChunks[index >>> CHUNK_BITS][index & CHUNK_MASK] |= 1 << assetId.ordinal();
+        return index;
+    }
+
+    private int allocateIndex() {
+        int index = this.nextIndex++;
+        int chunk = index >>> CHUNK_BITS;
+        if (chunk == this.availableChunks.length) {
+            // 按块扩容，已有余额不复制
+            this.availableChunks = Arrays.copyOf(this.availableChunks, chunk + 1);
+            this.frozenChunks = Arrays.copyOf(this.frozenChunks, chunk + 1);
+            this.userIdChunks = Arrays.copyOf(this.userIdChunks, chunk + 1);
+            this.openedChunks = Arrays.copyOf(this.openedChunks, chunk + 1);
+            this.availableChunks[chunk] = new long[CHUNK_USERS * ASSET_COUNT];
+            this.frozenChunks[chunk] = new long[CHUNK_USERS * ASSET_COUNT];
+            this.userIdChunks[chunk] = new long[CHUNK_USERS];
+            this.openedChunks[chunk] = new int[CHUNK_USERS];
+        }
+        return index;
+    }
+
+    private int opened(int index) {
+        return this.openedChunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+    }
+
+    private boolean isZero(int index) {
+        long[] available = this.availableChunks[index >>> CHUNK_BITS];
+        long[] frozen = this.frozenChunks[index >>> CHUNK_BITS];
+        int base = (index & CHUNK_MASK) * ASSET_COUNT;
+        for (int i = 0; i < ASSET_COUNT; i++) {
+            if (available[base + i] != 0 || frozen[base + i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Map<AssetEnum, Asset> copyAssets(int index) {
+        Map<AssetEnum, Asset> assets = new EnumMap<>(AssetEnum.class);
+        int opened = opened(index);
+        long[] available = this.availableChunks[index >>> CHUNK_BITS];
+        long[] frozen = this.frozenChunks[index >>> CHUNK_BITS];
+        for (AssetEnum assetId : ASSETS) {
+            if ((opened & (1 << assetId.ordinal())) != 0) {
+                int slot = slot(index, assetId);
+                assets.put(assetId, new Asset(toAmount(available[slot]), toAmount(frozen[slot])));
+            }
+        }
+        return assets;
+    }
+
+    private static int slot(int index, AssetEnum assetId) {
+        return (index & CHUNK_MASK) * ASSET_COUNT + assetId.ordinal();
+    }
+
+    /**
+     * Convert amount to ledger units. Throws ArithmeticException if amount has more than SCALE digits or overflow.
+     */
+    static long toUnits(BigDecimal amount) {
+        return amount.movePointRight(SCALE).longValueExact();
+    }
+
+    static BigDecimal toAmount(long units) {
+        BigDecimal amount = BigDecimal.valueOf(units, SCALE).stripTrailingZeros();
+        return amount.scale() < AssetEnum.SCALE ? amount.setScale(AssetEnum.SCALE) : amount;
     }
 
     public void debug() {
         System.out.println("---------- assets ----------");
+        Map<Long, Map<AssetEnum, Asset>> userAssets = getUserAssets();
         List<Long> userIds = new ArrayList<>(userAssets.keySet());
         Collections.sort(userIds);
         for (Long userId : userIds) {
             System.out.println("  user " + userId + " ----------");
             Map<AssetEnum, Asset> assets = userAssets.get(userId);
-            List<AssetEnum> assetIds = new ArrayList<>(assets.keySet());
-            Collections.sort(assetIds);
-            for (AssetEnum assetId : assetIds) {
-                System.out.println("    " + assetId + ": " + assets.get(assetId));
+            for (Map.Entry<AssetEnum, Asset> entry : assets.entrySet()) {
+                System.out.println("    " + entry.getKey() + ": " + entry.getValue());
             }
         }
         System.out.println("---------- // assets ----------");
@@ -8,8 +8,8 @@ import org.springframework.stereotype.Component;
 
 import com.helltractor.exchange.assets.AssetService;
 import com.helltractor.exchange.assets.Transfer;
-import com.helltractor.exchange.enums.AssetEnum;
-import com.helltractor.exchange.match.MatchDetailRecord;
+import com.helltractor.exchange.match.FixedPoint;
+import com.helltractor.exchange.match.MarketSymbol;
 import com.helltractor.exchange.match.MatchResult;
 import com.helltractor.exchange.model.trade.OrderEntity;
 import com.helltractor.exchange.order.OrderService;
@@ -30,59 +30,64 @@ public class ClearingService extends LoggerSupport {
         this.orderService = orderService;
     }
 
-    public void clearMatchResult(MatchResult result) {
+    public void clearMatchResult(MarketSymbol symbol, MatchResult result) {
+        final FixedPoint fixedPoint = symbol.fixedPoint();
         OrderEntity taker = result.takerOrder;
         switch (taker.direction) {
             case BUY -> {
                 // 买入时，按Maker的价格成交
-                for (MatchDetailRecord detail : result.matchDetails) {
+                for (int i = 0; i < result.size(); i++) {
+                    OrderEntity maker = result.makerOrder(i);
+                    long matched = result.quantity(i);
                     if (logger.isDebugEnabled()) {
                         logger.debug(
                                 "clear buy matched detail: price = {}, quantity = {}, takerOrderId = {}, makerOrderId = {}, takerUserId = {}, makerUserId = {}",
-                                detail.price(), detail.quantity(), detail.takerOrder().id, detail.makerOrder().id,
-                                detail.takerOrder().userId, detail.makerOrder().userId);
+                                fixedPoint.toPrice(result.price(i)), fixedPoint.toQuantity(matched), taker.id, maker.id,
+                                taker.userId, maker.userId);
                     }
-                    OrderEntity maker = detail.makerOrder();
-                    BigDecimal matched = detail.quantity();
-                    if (taker.price.compareTo(maker.price) > 0) {
-                        // 实际买入价比报价低，部分USD退回账户
-                        BigDecimal unfreezeQuote = taker.price.subtract(maker.price).multiply(matched);
+                    if (taker.priceUnits > maker.priceUnits) {
+                        // 实际买入价比报价低，部分quote资产退回账户
+                        BigDecimal unfreezeQuote = fixedPoint.toAmount(fixedPoint.amountUnits(taker.priceUnits - maker.priceUnits, matched));
                         if (logger.isDebugEnabled()) {
                             logger.debug("unfree extra unused quote {} back to taker user {}", unfreezeQuote, taker.userId);
                         }
-                        assetService.unfreeze(taker.userId, AssetEnum.USD, unfreezeQuote);
+                        assetService.unfreeze(taker.userId, symbol.quoteAsset(), unfreezeQuote);
                     }
-                    assetService.transfer(Transfer.FROZEN_TO_AVAILABLE, taker.userId, maker.userId, AssetEnum.USD, maker.price.multiply(matched));
-                    assetService.transfer(Transfer.FROZEN_TO_AVAILABLE, maker.userId, taker.userId, AssetEnum.BTC, matched);
+                    assetService.transfer(Transfer.FROZEN_TO_AVAILABLE, taker.userId, maker.userId, symbol.quoteAsset(),
+                            fixedPoint.toAmount(fixedPoint.amountUnits(maker.priceUnits, matched)));
+                    assetService.transfer(Transfer.FROZEN_TO_AVAILABLE, maker.userId, taker.userId, symbol.baseAsset(),
+                            fixedPoint.toQuantity(matched));
                     // 删除完全成交的Maker
-                    if (maker.unfilledQuantity.signum() == 0) {
+                    if (maker.unfilledUnits == 0) {
                         orderService.removeOrder(maker.id);
                     }
                 }
                 // 删除完全成交的Taker
-                if (taker.unfilledQuantity.signum() == 0) {
+                if (taker.unfilledUnits == 0) {
                     orderService.removeOrder(taker.id);
                 }
             }
             case SELL -> {
-                for (MatchDetailRecord detail : result.matchDetails) {
+                for (int i = 0; i < result.size(); i++) {
+                    OrderEntity maker = result.makerOrder(i);
+                    long matched = result.quantity(i);
                     if (logger.isDebugEnabled()) {
                         logger.debug(
                                 "clear sell matched detail: price = {}, quantity = {}, takerOrderId = {}, makerOrderId = {}, takerUserId = {}, makerUserId = {}",
-                                detail.price(), detail.quantity(), detail.takerOrder().id, detail.makerOrder().id,
-                                detail.takerOrder().userId, detail.makerOrder().userId);
+                                fixedPoint.toPrice(result.price(i)), fixedPoint.toQuantity(matched), taker.id, maker.id,
+                                taker.userId, maker.userId);
                     }
-                    OrderEntity maker = detail.makerOrder();
-                    BigDecimal matched = detail.quantity();
-                    assetService.transfer(Transfer.FROZEN_TO_AVAILABLE, taker.userId, maker.userId, AssetEnum.BTC, matched);
-                    assetService.transfer(Transfer.FROZEN_TO_AVAILABLE, maker.userId, taker.userId, AssetEnum.USD, maker.price.multiply(matched));
+                    assetService.transfer(Transfer.FROZEN_TO_AVAILABLE, taker.userId, maker.userId, symbol.baseAsset(),
+                            fixedPoint.toQuantity(matched));
+                    assetService.transfer(Transfer.FROZEN_TO_AVAILABLE, maker.userId, taker.userId, symbol.quoteAsset(),
+                            fixedPoint.toAmount(fixedPoint.amountUnits(maker.priceUnits, matched)));
                     // 删除完全成交的Maker
-                    if (maker.unfilledQuantity.signum() == 0) {
+                    if (maker.unfilledUnits == 0) {
                         orderService.removeOrder(maker.id);
                     }
                 }
                 // 删除完全成交的Taker
-                if (taker.unfilledQuantity.signum() == 0) {
+                if (taker.unfilledUnits == 0) {
                     orderService.removeOrder(taker.id);
                 }
             }
@@ -92,15 +97,17 @@ public class ClearingService extends LoggerSupport {
         }
     }
 
-    public void clearCancelOrder(OrderEntity order) {
+    public void clearCancelOrder(MarketSymbol symbol, OrderEntity order) {
+        final FixedPoint fixedPoint = symbol.fixedPoint();
         switch (order.direction) {
             case BUY -> {
-                // 解冻USD = 价格 * 未成交数量
-                assetService.unfreeze(order.userId, AssetEnum.USD, order.price.multiply(order.unfilledQuantity));
+                // 解冻quote资产 = 价格 * 未成交数量
+                assetService.unfreeze(order.userId, symbol.quoteAsset(),
+                        fixedPoint.toAmount(fixedPoint.amountUnits(order.priceUnits, order.unfilledUnits)));
             }
             case SELL -> {
-                // 解冻BTC = 未成交数量
-                assetService.unfreeze(order.userId, AssetEnum.BTC, order.unfilledQuantity);
+                // 解冻base资产 = 未成交数量
+                assetService.unfreeze(order.userId, symbol.baseAsset(), order.unfilledQuantity);
             }
             default -> {
                 throw new IllegalArgumentException("Invalid direction: " + order.direction);
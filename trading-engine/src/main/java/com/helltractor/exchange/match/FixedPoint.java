@@ -0,0 +1,77 @@
+package com.helltractor.exchange.match;
+
+import java.math.BigDecimal;
+
+import com.helltractor.exchange.enums.AssetEnum;
+import com.helltractor.exchange.model.trade.OrderEntity;
+
+/**
+ * Fixed-point scales of a market. Prices are stored as long number of ticks (10^-priceScale), quantities as long
+ * number of lots (10^-quantityScale), and amounts (price * quantity) as long with scale priceScale + quantityScale.
+ */
+public final class FixedPoint {
+
+    /**
+     * Scales of the default market, same as the scale of order request.
+     */
+    public static final FixedPoint DEFAULT = new FixedPoint(AssetEnum.SCALE, AssetEnum.SCALE);
+
+    public final int priceScale;
+
+    public final int quantityScale;
+
+    public final int amountScale;
+
+    public FixedPoint(int priceScale, int quantityScale) {
+        this.priceScale = priceScale;
+        this.quantityScale = quantityScale;
+        this.amountScale = priceScale + quantityScale;
+    }
+
+    /**
+     * Convert price to ticks. Throws ArithmeticException if price is not a multiple of tick.
+     */
+    public long toPriceUnits(BigDecimal price) {
+        return price.movePointRight(this.priceScale).longValueExact();
+    }
+
+    /**
+     * Convert quantity to lots. Throws ArithmeticException if quantity is not a multiple of lot.
+     */
+    public long toQuantityUnits(BigDecimal quantity) {
+        return quantity.movePointRight(this.quantityScale).longValueExact();
+    }
+
+    public BigDecimal toPrice(long priceUnits) {
+        return BigDecimal.valueOf(priceUnits, this.priceScale);
+    }
+
+    public BigDecimal toQuantity(long quantityUnits) {
+        return BigDecimal.valueOf(quantityUnits, this.quantityScale);
+    }
+
+    public BigDecimal toAmount(long amountUnits) {
+        return BigDecimal.valueOf(amountUnits, this.amountScale);
+    }
+
+    /**
+     * Amount = price * quantity. Throws ArithmeticException if overflow.
+     */
+    public long amountUnits(long priceUnits, long quantityUnits) {
+        return Math.multiplyExact(priceUnits, quantityUnits);
+    }
+
+    /**
+     * Set fixed-point fields of order from its price, quantity and unfilled quantity.
+     */
+    public void normalize(OrderEntity order) {
+        order.priceUnits = toPriceUnits(order.price);
+        order.quantityUnits = toQuantityUnits(order.quantity);
+        order.unfilledUnits = toQuantityUnits(order.unfilledQuantity);
+    }
+
+    @Override
+    public String toString() {
+        return "FixedPoint [priceScale=" + priceScale + ", quantityScale=" + quantityScale + "]";
+    }
+}
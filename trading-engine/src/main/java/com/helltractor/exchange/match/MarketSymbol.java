@@ -0,0 +1,37 @@
+package com.helltractor.exchange.match;
+
+import com.helltractor.exchange.assets.AssetService;
+import com.helltractor.exchange.enums.AssetEnum;
+
+/**
+ * A listed market: orders buy or sell baseAsset priced in quoteAsset, normalized by fixedPoint. Amounts of the market
+ * must fit the scale of ledger, so that clearing never fails on an amount the ledger cannot hold.
+ */
+public record MarketSymbol(long id, String name, AssetEnum baseAsset, AssetEnum quoteAsset, FixedPoint fixedPoint) {
+
+    public MarketSymbol {
+        if (fixedPoint.amountScale > AssetService.SCALE) {
+            throw new IllegalArgumentException("Amount scale of symbol " + name + " is greater than ledger scale "
+                    + AssetService.SCALE + ": " + fixedPoint);
+        }
+    }
+
+    /**
+     * The default BTC/USD market. Order request without symbol is routed to this market.
+     */
+    public static final MarketSymbol DEFAULT = new MarketSymbol(0, "BTC/USD", AssetEnum.BTC, AssetEnum.USD,
+            FixedPoint.DEFAULT);
+
+    /**
+     * Parse symbol from configuration in format of id:name:baseAsset:quoteAsset:priceScale:quantityScale, e.g.
+     * "1:BTC/USD-LOT:BTC:USD:2:4".
+     */
+    public static MarketSymbol parse(String s) {
+        String[] ss = s.split(":");
+        if (ss.length != 6) {
+            throw new IllegalArgumentException("Invalid symbol: " + s);
+        }
+        return new MarketSymbol(Long.parseLong(ss[0]), ss[1], AssetEnum.valueOf(ss[2]), AssetEnum.valueOf(ss[3]),
+                new FixedPoint(Integer.parseInt(ss[4]), Integer.parseInt(ss[5])));
+    }
+}
@@ -1,9 +1,10 @@
 package com.helltractor.exchange.match;
 
-import java.math.BigDecimal;
-
 import com.helltractor.exchange.model.trade.OrderEntity;
 
-public record MatchDetailRecord(BigDecimal price, BigDecimal quantity, OrderEntity takerOrder, OrderEntity makerOrder) {
+/**
+ * Match detail with fixed-point price and quantity, see {@link FixedPoint}.
+ */
+public record MatchDetailRecord(long price, long quantity, OrderEntity takerOrder, OrderEntity makerOrder) {
 
 }
@@ -1,25 +1,50 @@
 package com.helltractor.exchange.match;
 
 import java.math.BigDecimal;
-
-import org.springframework.stereotype.Component;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.helltractor.exchange.bean.OrderBookBean;
+import com.helltractor.exchange.bean.OrderBookDeltaBean;
+import com.helltractor.exchange.bean.OrderBookItemBean;
 import com.helltractor.exchange.enums.Direction;
 import com.helltractor.exchange.enums.OrderStatus;
 import com.helltractor.exchange.model.trade.OrderEntity;
 
-@Component
+/**
+ * Match engine of one symbol.
+ */
 public class MatchEngine {
 
-    public final OrderBook buyBook = new OrderBook(Direction.BUY);
+    public final OrderBook buyBook;
+
+    public final OrderBook sellBook;
 
-    public final OrderBook sellBook = new OrderBook(Direction.SELL);
+    public final MarketSymbol symbol;
+
+    public final FixedPoint fixedPoint;
 
     public BigDecimal marketPrice = BigDecimal.ZERO;
 
     private long sequenceId;
 
+    // 复用的撮合结果，避免每次撮合分配
+    private final MatchResult matchResult = new MatchResult();
+
+    // sequenceId of last order book delta
+    private long deltaSequenceId;
+
+    public MatchEngine() {
+        this(MarketSymbol.DEFAULT);
+    }
+
+    public MatchEngine(MarketSymbol symbol) {
+        this.symbol = symbol;
+        this.fixedPoint = symbol.fixedPoint();
+        this.buyBook = new OrderBook(Direction.BUY, this.fixedPoint);
+        this.sellBook = new OrderBook(Direction.SELL, this.fixedPoint);
+    }
+
     public MatchResult processOrder(long sequenceId, OrderEntity order) {
         switch (order.direction) {
             case BUY -> {
@@ -35,86 +60,133 @@ public class MatchEngine {
     }
 
     /**
-     * Process order.
+     * Process order. Prices and quantities are compared and subtracted as fixed-point longs, and only converted to
+     * BigDecimal when the unfilled quantity of an order changes.
      *
      * @param sequenceId
      * @param takerOrder need to match OrderEntity
      * @param makerBook match success OrderBook
      * @param anotherBook match fail OrderBook
-     * @return match result
+     * @return match result, reused by next call
      */
     private MatchResult processOrder(long sequenceId, OrderEntity takerOrder, OrderBook makerBook, OrderBook anotherBook) {
         this.sequenceId = sequenceId;
         long timeStamp = takerOrder.createTime;
-        MatchResult matchResult = new MatchResult(takerOrder);
-        BigDecimal takerUnfilledQuantity = takerOrder.quantity;
+        MatchResult matchResult = this.matchResult;
+        matchResult.reset(takerOrder);
+        long takerUnfilledUnits = takerOrder.unfilledUnits;
         for (;;) {
             OrderEntity makerOrder = makerBook.getFirst();
             if (makerOrder == null) {
                 // 对手盘不存在
                 break;
             }
-            if (takerOrder.direction == Direction.BUY && makerOrder.price.compareTo(takerOrder.price) > 0) {
+            if (takerOrder.direction == Direction.BUY && makerOrder.priceUnits > takerOrder.priceUnits) {
                 // 买单价格低于卖单第一档价格，不再匹配
                 break;
-            } else if (takerOrder.direction == Direction.SELL && makerOrder.price.compareTo(takerOrder.price) < 0) {
+            } else if (takerOrder.direction == Direction.SELL && makerOrder.priceUnits < takerOrder.priceUnits) {
                 // 卖单价格高于买单第一档价格，不再匹配
                 break;
             }
             // 成交价格
             this.marketPrice = makerOrder.price;
             // 成交数量
-            BigDecimal matchQuantity = takerUnfilledQuantity.min(makerOrder.unfilledQuantity);
+            long matchUnits = Math.min(takerUnfilledUnits, makerOrder.unfilledUnits);
             // 更新成交记录
-            matchResult.add(makerOrder.price, matchQuantity, makerOrder);
+            matchResult.add(makerOrder.priceUnits, matchUnits, makerOrder);
             // 更新订单状态
-            takerUnfilledQuantity = takerUnfilledQuantity.subtract(matchQuantity);
-            BigDecimal makeUnfilledQuantity = makerOrder.unfilledQuantity.subtract(matchQuantity);
+            takerUnfilledUnits -= matchUnits;
+            long makerUnfilledUnits = makerOrder.unfilledUnits - matchUnits;
 
+            makerBook.fill(makerOrder, matchUnits);
             // 对手盘完全成交后，从订单簿中删除
-            if (makeUnfilledQuantity.signum() == 0) {
-                makerOrder.updateOrder(makeUnfilledQuantity, OrderStatus.FULLY_FILLED, timeStamp);
+            if (makerUnfilledUnits == 0) {
+                updateOrder(makerOrder, makerUnfilledUnits, OrderStatus.FULLY_FILLED, timeStamp);
                 makerBook.remove(makerOrder);
             } else {
                 // 对手盘部分成交后，更新订单状态
-                makerOrder.updateOrder(makeUnfilledQuantity, OrderStatus.PARTIAL_FILLED, timeStamp);
+                updateOrder(makerOrder, makerUnfilledUnits, OrderStatus.PARTIAL_FILLED, timeStamp);
             }
 
             // Taker完全成交后，退出循环
-            if (takerUnfilledQuantity.signum() == 0) {
-                takerOrder.updateOrder(takerUnfilledQuantity, OrderStatus.FULLY_FILLED, timeStamp);
+            if (takerUnfilledUnits == 0) {
+                updateOrder(takerOrder, takerUnfilledUnits, OrderStatus.FULLY_FILLED, timeStamp);
                 break;
             }
         }
         // Taker未完全成交，放入对应的订单簿
-        if (takerUnfilledQuantity.signum() > 0) {
-            takerOrder.updateOrder(takerUnfilledQuantity,
-                    takerUnfilledQuantity.compareTo(takerOrder.quantity) == 0
-                    ? OrderStatus.PENDING : OrderStatus.PARTIAL_FILLED,
+        if (takerUnfilledUnits > 0) {
+            updateOrder(takerOrder, takerUnfilledUnits,
+                    takerUnfilledUnits == takerOrder.quantityUnits ? OrderStatus.PENDING : OrderStatus.PARTIAL_FILLED,
                     timeStamp);
             anotherBook.add(takerOrder);
         }
         return matchResult;
     }
 
+    private void updateOrder(OrderEntity order, long unfilledUnits, OrderStatus status, long timeStamp) {
+        BigDecimal unfilledQuantity = unfilledUnits == order.unfilledUnits ? order.unfilledQuantity
+                : this.fixedPoint.toQuantity(unfilledUnits);
+        order.unfilledUnits = unfilledUnits;
+        order.updateOrder(unfilledQuantity, status, timeStamp);
+    }
+
     /**
      * Cancel order. Judge order status and update order status.
      */
-    public void cancel(long timeStamp, OrderEntity order) {
+    public void cancel(long sequenceId, long timeStamp, OrderEntity order) {
+        this.sequenceId = sequenceId;
         OrderBook book = order.direction == Direction.BUY ? this.buyBook : this.sellBook;
         if (!book.remove(order)) {
             throw new IllegalArgumentException("OrderEntity not found in order book: " + order);
         }
-        OrderStatus status = order.unfilledQuantity.compareTo(order.quantity) == 0 ? OrderStatus.FULLY_CANCELLED : OrderStatus.PARTIAL_CANCELLED;
+        OrderStatus status = order.unfilledUnits == order.quantityUnits ? OrderStatus.FULLY_CANCELLED : OrderStatus.PARTIAL_CANCELLED;
         order.updateOrder(order.unfilledQuantity, status, timeStamp);
     }
 
+    /**
+     * Restore state loaded from engine snapshot. Orders must be restored in sequence order to keep time priority.
+     */
+    public void restore(long sequenceId, BigDecimal marketPrice) {
+        this.sequenceId = sequenceId;
+        this.marketPrice = marketPrice;
+    }
+
+    public void restoreOrder(OrderEntity order) {
+        OrderBook book = order.direction == Direction.BUY ? this.buyBook : this.sellBook;
+        if (!book.add(order)) {
+            throw new IllegalArgumentException("Duplicate order in order book: " + order);
+        }
+    }
+
     public OrderBookBean getOrderBook(int maxDepth) {
-        return new OrderBookBean(this.sequenceId, this.marketPrice, this.buyBook.getOrderBook(maxDepth), this.sellBook.getOrderBook(maxDepth));
+        OrderBookBean orderBook = new OrderBookBean(this.sequenceId, this.marketPrice,
+                this.buyBook.getOrderBook(maxDepth), this.sellBook.getOrderBook(maxDepth));
+        orderBook.symbolId = this.symbol.id();
+        return orderBook;
+    }
+
+    /**
+     * Get changed price levels since last call.
+     *
+     * @return order book delta, or null if nothing changed
+     */
+    public OrderBookDeltaBean getOrderBookDelta() {
+        List<OrderBookItemBean> buy = new ArrayList<>();
+        List<OrderBookItemBean> sell = new ArrayList<>();
+        boolean buyChanged = this.buyBook.drainChanges(buy);
+        boolean sellChanged = this.sellBook.drainChanges(sell);
+        if (!buyChanged && !sellChanged) {
+            return null;
+        }
+        OrderBookDeltaBean delta = new OrderBookDeltaBean(this.sequenceId, this.deltaSequenceId, this.marketPrice, buy, sell);
+        delta.symbolId = this.symbol.id();
+        this.deltaSequenceId = this.sequenceId;
+        return delta;
     }
 
     public void debug() {
-        System.out.println("---------- match engine ----------");
+        System.out.println("---------- match engine " + this.symbol.name() + " ----------");
         System.out.println(this.sellBook);
         System.out.println("  ----------");
         System.out.println("  " + this.marketPrice);
@@ -1,23 +1,209 @@
 package com.helltractor.exchange.match;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
 
 import com.helltractor.exchange.model.trade.OrderEntity;
+import com.helltractor.exchange.support.LoggerSupport;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
-public class MatchEngineGroup {
+/**
+ * Owns one MatchEngine per listed symbol.
+ * <p>
+ * The default symbol is always listed, other symbols are listed by configuration. Each symbol has its own worker
+ * thread, created on first concurrent match. Orders of different symbols can be matched concurrently by
+ * {@link #processOrders(List)}, and results are returned in the order of input so that clearing still runs in
+ * sequence order. The caller hands an order to the parked worker and parks until all workers are done, so that an
+ * engine is only touched by one thread at a time and nothing is allocated per order.
+ */
+@Component
+public class MatchEngineGroup extends LoggerSupport {
 
+    // symbolId -> engine
     final Map<Long, MatchEngine> engines = new HashMap<>();
 
-    // TODO: use symbolId to select engine
+    // symbolId -> worker thread, created on first concurrent match
+    final Map<Long, MatchWorker> workers = new HashMap<>();
+
+    // 等待中的并发撮合数，归零时唤醒调用线程
+    private final AtomicInteger remaining = new AtomicInteger();
+
+    // 复用的撮合结果列表
+    private final List<MatchResult> results = new ArrayList<>();
+
+    private volatile Thread caller;
+
+    // additional symbols, each as id:name:baseAsset:quoteAsset:priceScale:quantityScale
+    @Value("${exchange.engine.symbols:}")
+    private String[] symbols = {};
+
+    public MatchEngineGroup() {
+        addSymbol(MarketSymbol.DEFAULT);
+    }
+
+    @PostConstruct
+    public void init() {
+        for (String symbol : this.symbols) {
+            if (!symbol.isBlank()) {
+                addSymbol(MarketSymbol.parse(symbol.strip()));
+            }
+        }
+        logger.info("listed symbols: {}", this.engines.values().stream().map(e -> e.symbol.name()).toList());
+    }
+
+    public void addSymbol(MarketSymbol symbol) {
+        if (this.engines.containsKey(symbol.id())) {
+            throw new IllegalArgumentException("Duplicate symbol: " + symbol);
+        }
+        this.engines.put(symbol.id(), new MatchEngine(symbol));
+    }
+
+    /**
+     * Get engine by symbolId, or null if symbol is not listed.
+     */
+    public MatchEngine getEngine(long symbolId) {
+        return this.engines.get(symbolId);
+    }
+
+    public Collection<MatchEngine> getEngines() {
+        return this.engines.values();
+    }
+
     public MatchResult processOrder(long sequenceId, OrderEntity order) {
-        // Long symbolId = order.symbolId;
-        // MatchEngine engine = engines.get(symbolId);
-        // if (engine == null) {
-        //     engine = new MatchEngine();
-        //     engines.put(symbolId, engine);
-        // }
-        // return engine.processOrder(sequenceId, order);
-        return null;
+        return requireEngine(order).processOrder(sequenceId, order);
+    }
+
+    /**
+     * Match orders of distinct symbols. The only order is matched on caller thread, otherwise each order is matched
+     * on the worker of its symbol.
+     *
+     * @param orders orders with distinct symbolId, sorted by sequenceId
+     * @return match results in the same order of orders, valid until next call
+     */
+    public List<MatchResult> processOrders(List<OrderEntity> orders) {
+        List<MatchResult> results = this.results;
+        results.clear();
+        if (orders.size() == 1) {
+            OrderEntity order = orders.get(0);
+            results.add(processOrder(order.sequenceId, order));
+            return results;
+        }
+        int n = orders.size();
+        for (int i = 0; i < n; i++) {
+            requireEngine(orders.get(i));
+        }
+        this.caller = Thread.currentThread();
+        this.remaining.set(n);
+        for (int i = 0; i < n; i++) {
+            OrderEntity order = orders.get(i);
+            getWorker(this.engines.get(order.symbolId)).submit(order);
+        }
+        boolean interrupted = false;
+        while (this.remaining.get() > 0) {
+            LockSupport.park(this);
+            // 必须等待所有Worker完成，避免引擎被两个线程同时访问
+            interrupted |= Thread.interrupted();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        RuntimeException error = null;
+        for (int i = 0; i < n; i++) {
+            MatchWorker worker = this.workers.get(orders.get(i).symbolId);
+            if (worker.error != null && error == null) {
+                error = new RuntimeException("Match failed.", worker.error);
+            }
+            results.add(worker.result);
+            worker.result = null;
+            worker.error = null;
+        }
+        if (error != null) {
+            throw error;
+        }
+        return results;
+    }
+
+    private MatchEngine requireEngine(OrderEntity order) {
+        MatchEngine engine = this.engines.get(order.symbolId);
+        if (engine == null) {
+            throw new IllegalArgumentException("Symbol not found: " + order.symbolId);
+        }
+        return engine;
+    }
+
+    private MatchWorker getWorker(MatchEngine engine) {
+        return this.workers.computeIfAbsent(engine.symbol.id(), id -> {
+            logger.info("start match thread for symbol {}...", engine.symbol.name());
+            MatchWorker worker = new MatchWorker(engine);
+            worker.start();
+            return worker;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (MatchWorker worker : this.workers.values()) {
+            worker.running = false;
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /**
+     * Worker thread of one symbol, parked while idle.
+     */
+    final class MatchWorker extends Thread {
+
+        final MatchEngine engine;
+
+        volatile boolean running = true;
+
+        // 待撮合订单，由调用线程写入，撮合完成后由Worker清空
+        volatile OrderEntity order;
+
+        // 撮合结果，在remaining递减前写入，归零后由调用线程读取
+        MatchResult result;
+
+        Throwable error;
+
+        MatchWorker(MatchEngine engine) {
+            super("match-" + engine.symbol.id());
+            this.engine = engine;
+            setDaemon(true);
+        }
+
+        void submit(OrderEntity order) {
+            this.order = order;
+            LockSupport.unpark(this);
+        }
+
+        @Override
+        public void run() {
+            while (this.running) {
+                OrderEntity order = this.order;
+                if (order == null) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                try {
+                    this.result = this.engine.processOrder(order.sequenceId, order);
+                } catch (Throwable t) {
+                    this.error = t;
+                }
+                this.order = null;
+                if (remaining.decrementAndGet() == 0) {
+                    LockSupport.unpark(caller);
+                }
+            }
+        }
     }
 }
@@ -1,30 +1,107 @@
 package com.helltractor.exchange.match;
 
-import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 import com.helltractor.exchange.model.trade.OrderEntity;
 
+/**
+ * Reusable match result owned by a MatchEngine. Match details are kept in parallel arrays of fixed-point price,
+ * quantity and maker order, which only grow when a taker produces more fills than ever before, so that the steady-state
+ * match loop does not allocate.
+ * <p>
+ * The content is valid until the next {@code processOrder} of the same engine.
+ */
 public class MatchResult {
 
-    public final OrderEntity takerOrder;
+    private static final int INITIAL_CAPACITY = 16;
 
-    public final List<MatchDetailRecord> matchDetails = new ArrayList<>();
+    public OrderEntity takerOrder;
+
+    private long[] prices;
+
+    private long[] quantities;
+
+    private OrderEntity[] makerOrders;
+
+    private int size;
+
+    public MatchResult() {
+        this.prices = new long[INITIAL_CAPACITY];
+        this.quantities = new long[INITIAL_CAPACITY];
+        this.makerOrders = new OrderEntity[INITIAL_CAPACITY];
+    }
 
     public MatchResult(OrderEntity takerOrder) {
+        this();
         this.takerOrder = takerOrder;
     }
 
-    public void add(BigDecimal price, BigDecimal quantity, OrderEntity makerOrder) {
-        matchDetails.add(new MatchDetailRecord(price, quantity, this.takerOrder, makerOrder));
+    /**
+     * Clear details and start a new result of taker order.
+     */
+    public void reset(OrderEntity takerOrder) {
+        // 释放上次的Maker引用
+        Arrays.fill(this.makerOrders, 0, this.size, null);
+        this.size = 0;
+        this.takerOrder = takerOrder;
+    }
+
+    public void add(long price, long quantity, OrderEntity makerOrder) {
+        if (this.size == this.prices.length) {
+            int capacity = this.size << 1;
+            this.prices = Arrays.copyOf(this.prices, capacity);
+            this.quantities = Arrays.copyOf(this.quantities, capacity);
+            this.makerOrders = Arrays.copyOf(this.makerOrders, capacity);
+        }
+        this.prices[this.size] = price;
+        this.quantities[this.size] = quantity;
+        this.makerOrders[this.size] = makerOrder;
+        this.size++;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Fixed-point match price of detail i.
+     */
+    public long price(int i) {
+        return this.prices[i];
+    }
+
+    /**
+     * Fixed-point match quantity of detail i.
+     */
+    public long quantity(int i) {
+        return this.quantities[i];
+    }
+
+    public OrderEntity makerOrder(int i) {
+        return this.makerOrders[i];
+    }
+
+    /**
+     * Copy detail i as an immutable record.
+     */
+    public MatchDetailRecord getMatchDetail(int i) {
+        return new MatchDetailRecord(this.prices[i], this.quantities[i], this.takerOrder, this.makerOrders[i]);
     }
 
     @Override
     public String toString() {
-        if (matchDetails.isEmpty()) {
+        if (this.size == 0) {
             return "no matched.";
         }
-        return matchDetails.size() + " matched:" + String.join(", ", matchDetails.stream().map(MatchDetailRecord::toString).toArray(String[]::new));
+        StringBuilder sb = new StringBuilder();
+        sb.append(this.size).append(" matched:");
+        for (int i = 0; i < this.size; i++) {
+            sb.append(i == 0 ? "" : ", ").append(getMatchDetail(i));
+        }
+        return sb.toString();
     }
 }
@@ -6,94 +6,177 @@ import com.helltractor.exchange.model.trade.OrderEntity;
 
 import java.util.*;
 
+/**
+ * Order book organized by price level. Each level holds its orders in FIFO (sequenceId) order, and every resting
+ * order is indexed by id so that remove is O(1) plus an O(log levels) update when a level becomes empty.
+ * <p>
+ * The aggregated quantity of each level is updated on add, fill and remove, and changed levels are collected until
+ * drained by {@link #drainChanges(List)}.
+ */
 public class OrderBook {
 
     /**
-     * sell order sorting price low to high, same price sequenceId low to high
+     * sell order sorting price low to high
      */
-    private static final Comparator<OrderKey> SORT_SELL = new Comparator<>() {
-        @Override
-        public int compare(OrderKey o1, OrderKey o2) {
-            int cmp = o1.price().compareTo(o2.price());
-            return cmp == 0 ? Long.compare(o1.sequenceId(), o2.sequenceId()) : cmp;
-        }
-    };
+    private static final Comparator<Long> SORT_SELL = Comparator.naturalOrder();
+
     /**
-     * buy order sorting price high to low, same price sequenceId low to high
+     * buy order sorting price high to low
      */
-    private static final Comparator<OrderKey> SORT_BUY = new Comparator<>() {
-        @Override
-        public int compare(OrderKey o1, OrderKey o2) {
-            int cmp = o2.price().compareTo(o1.price());
-            return cmp == 0 ? Long.compare(o1.sequenceId(), o2.sequenceId()) : cmp;
-        }
-    };
+    private static final Comparator<Long> SORT_BUY = Comparator.reverseOrder();
 
     public final Direction direction;
 
-    public final TreeMap<OrderKey, OrderEntity> book;
+    private final FixedPoint fixedPoint;
+
+    // fixed-point price -> level, best price first
+    private final TreeMap<Long, PriceLevel> levels;
+
+    // orderId -> node in level
+    private final Map<Long, PriceLevel.Node> index = new HashMap<>();
+
+    // cached first level of levels, or null if empty
+    private PriceLevel best;
+
+    // levels changed since last drain, in order of first change
+    private final List<PriceLevel> changedLevels = new ArrayList<>();
 
     public OrderBook(Direction direction) {
-        this.direction = direction;
-        this.book = new TreeMap<>(direction == Direction.BUY ? SORT_BUY : SORT_SELL);
+        this(direction, FixedPoint.DEFAULT);
     }
 
-    public OrderBook(Direction direction, TreeMap<OrderKey, OrderEntity> book) {
+    public OrderBook(Direction direction, FixedPoint fixedPoint) {
         this.direction = direction;
-        this.book = book;
+        this.fixedPoint = fixedPoint;
+        this.levels = new TreeMap<>(direction == Direction.BUY ? SORT_BUY : SORT_SELL);
     }
 
     public OrderEntity getFirst() {
-        return this.book.isEmpty() ? null : this.book.firstEntry().getValue();
+        return this.best == null ? null : this.best.head.order;
     }
 
     public boolean remove(OrderEntity order) {
-        return this.book.remove(new OrderKey(order.sequenceId, order.price)) != null;
+        PriceLevel.Node node = this.index.remove(order.id);
+        if (node == null) {
+            return false;
+        }
+        PriceLevel level = node.level;
+        level.unlink(node);
+        markChanged(level);
+        if (level.isEmpty()) {
+            this.levels.remove(level.key);
+            if (level == this.best) {
+                // firstEntry() allocates an exported entry, use firstKey() instead
+                this.best = this.levels.isEmpty() ? null : this.levels.get(this.levels.firstKey());
+            }
+        }
+        return true;
     }
 
     public boolean add(OrderEntity order) {
-        return this.book.put(new OrderKey(order.sequenceId, order.price), order) == null;
+        if (this.index.containsKey(order.id)) {
+            return false;
+        }
+        PriceLevel level = this.levels.get(order.priceUnits);
+        if (level == null) {
+            level = new PriceLevel(order.priceUnits, order.price);
+            this.levels.put(level.key, level);
+            if (this.best == null || isBetter(order.priceUnits, this.best.priceUnits)) {
+                this.best = level;
+            }
+        }
+        this.index.put(order.id, level.append(order));
+        markChanged(level);
+        return true;
+    }
+
+    /**
+     * Reduce the level quantity of a resting order which is partially or fully filled. Must be called before the
+     * unfilledUnits of order is updated.
+     */
+    public void fill(OrderEntity order, long quantityUnits) {
+        PriceLevel.Node node = this.index.get(order.id);
+        if (node == null) {
+            throw new IllegalArgumentException("OrderEntity not found in order book: " + order);
+        }
+        node.level.quantityUnits -= quantityUnits;
+        markChanged(node.level);
+    }
+
+    private void markChanged(PriceLevel level) {
+        if (!level.changed) {
+            level.changed = true;
+            this.changedLevels.add(level);
+        }
+    }
+
+    /**
+     * Append the new quantity of every changed level since last drain to items. Quantity is zero if level was removed.
+     *
+     * @return true if any level changed
+     */
+    public boolean drainChanges(List<OrderBookItemBean> items) {
+        if (this.changedLevels.isEmpty()) {
+            return false;
+        }
+        for (PriceLevel level : this.changedLevels) {
+            items.add(new OrderBookItemBean(level.price, this.fixedPoint.toQuantity(level.quantityUnits)));
+            level.changed = false;
+        }
+        this.changedLevels.clear();
+        return true;
+    }
+
+    private boolean isBetter(long priceUnits, long thanPriceUnits) {
+        return this.direction == Direction.BUY ? priceUnits > thanPriceUnits : priceUnits < thanPriceUnits;
     }
 
     public boolean exist(OrderEntity order) {
-        return this.book.containsKey(new OrderKey(order.sequenceId, order.price));
+        return this.index.containsKey(order.id);
     }
 
     public int size() {
-        return this.book.size();
+        return this.index.size();
+    }
+
+    /**
+     * Number of price levels.
+     */
+    public int depth() {
+        return this.levels.size();
+    }
+
+    /**
+     * All orders by match priority.
+     */
+    public List<OrderEntity> getOrders() {
+        List<OrderEntity> orders = new ArrayList<>(this.index.size());
+        for (PriceLevel level : this.levels.values()) {
+            for (PriceLevel.Node node = level.head; node != null; node = node.next) {
+                orders.add(node.order);
+            }
+        }
+        return orders;
     }
 
     public List<OrderBookItemBean> getOrderBook(int maxDepth) {
-        List<OrderBookItemBean> items = new ArrayList<>();
-        OrderBookItemBean preItem = null;
-        for (OrderKey key : this.book.keySet()) {
-            OrderEntity order = this.book.get(key);
-            if (preItem == null) {
-                preItem = new OrderBookItemBean(order.price, order.unfilledQuantity);
-                items.add(preItem);
-            } else {
-                if (order.price.compareTo(preItem.price) == 0) {
-                    preItem.addQuantity(order.unfilledQuantity);
-                } else {
-                    if (items.size() >= maxDepth) {
-                        break;
-                    }
-                    preItem = new OrderBookItemBean(order.price, order.unfilledQuantity);
-                    items.add(preItem);
-                }
+        List<OrderBookItemBean> items = new ArrayList<>(Math.min(maxDepth, this.levels.size()));
+        for (PriceLevel level : this.levels.values()) {
+            if (items.size() >= maxDepth) {
+                break;
             }
+            items.add(new OrderBookItemBean(level.price, this.fixedPoint.toQuantity(level.quantityUnits)));
         }
         return items;
     }
 
     @Override
     public String toString() {
-        if (this.book.isEmpty()) {
+        if (this.levels.isEmpty()) {
             return "(empty)";
         }
         List<String> orders = new ArrayList<>(10);
-        for (Map.Entry<OrderKey, OrderEntity> entry : this.book.entrySet()) {
-            OrderEntity order = entry.getValue();
+        for (OrderEntity order : getOrders()) {
             orders.add("  " + order.price + " " + order.unfilledQuantity + " " + order);
         }
         if (direction == Direction.SELL) {
@@ -0,0 +1,93 @@
+package com.helltractor.exchange.match;
+
+import java.math.BigDecimal;
+
+import com.helltractor.exchange.model.trade.OrderEntity;
+
+/**
+ * All resting orders at the same price, kept as a FIFO doubly linked list so that any order can be unlinked in O(1).
+ * The total unfilled quantity of the level is maintained on every change.
+ */
+class PriceLevel {
+
+    final long priceUnits;
+
+    // boxed priceUnits as key of levels, avoid boxing when level is removed
+    final Long key;
+
+    final BigDecimal price;
+
+    Node head;
+
+    Node tail;
+
+    int size;
+
+    // sum of unfilledUnits of all orders in this level
+    long quantityUnits;
+
+    // changed since last drained by OrderBook
+    boolean changed;
+
+    PriceLevel(long priceUnits, BigDecimal price) {
+        this.priceUnits = priceUnits;
+        this.key = priceUnits;
+        this.price = price;
+    }
+
+    boolean isEmpty() {
+        return this.head == null;
+    }
+
+    /**
+     * Append order to the tail (lowest time priority).
+     */
+    Node append(OrderEntity order) {
+        Node node = new Node(this, order);
+        if (this.tail == null) {
+            this.head = this.tail = node;
+        } else {
+            node.prev = this.tail;
+            this.tail.next = node;
+            this.tail = node;
+        }
+        this.size++;
+        this.quantityUnits += order.unfilledUnits;
+        return node;
+    }
+
+    /**
+     * Unlink node from this level.
+     */
+    void unlink(Node node) {
+        if (node.prev == null) {
+            this.head = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            this.tail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+        node.prev = node.next = null;
+        this.size--;
+        this.quantityUnits -= node.order.unfilledUnits;
+    }
+
+    static final class Node {
+
+        final PriceLevel level;
+
+        final OrderEntity order;
+
+        Node prev;
+
+        Node next;
+
+        Node(PriceLevel level, OrderEntity order) {
+            this.level = level;
+            this.order = order;
+        }
+    }
+}
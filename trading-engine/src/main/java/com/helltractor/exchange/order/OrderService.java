@@ -1,58 +1,93 @@
 package com.helltractor.exchange.order;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.helltractor.exchange.assets.AssetService;
-import com.helltractor.exchange.enums.AssetEnum;
 import com.helltractor.exchange.enums.Direction;
+import com.helltractor.exchange.match.FixedPoint;
+import com.helltractor.exchange.match.MarketSymbol;
 import com.helltractor.exchange.model.trade.OrderEntity;
+import com.helltractor.exchange.support.LoggerSupport;
+import com.helltractor.exchange.util.LongObjectHashMap;
 
+/**
+ * Active orders indexed by orderId and by userId, kept in primitive long-keyed maps. The per-user index starts small
+ * and is freed when the last active order of the user is removed.
+ * <p>
+ * Not thread-safe: only accessed by the trading engine thread. Other threads read published user snapshots.
+ */
 @Component
-public class OrderService {
+public class OrderService extends LoggerSupport {
+
+    // initial capacity of per-user index, most users have a few active orders
+    static final int USER_ORDERS_CAPACITY = 4;
 
     private final AssetService assetService;
 
     // active orders, orderId -> order
-    private final ConcurrentMap<Long, OrderEntity> activeOrders = new ConcurrentHashMap<>();
+    private final LongObjectHashMap<OrderEntity> activeOrders = new LongObjectHashMap<>(1024);
 
-    // all user orders, userId -> orderId -> order
-    private final ConcurrentMap<Long, ConcurrentHashMap<Long, OrderEntity>> userOrders = new ConcurrentHashMap<>();
+    // active orders of user, userId -> orderId -> order
+    private final LongObjectHashMap<LongObjectHashMap<OrderEntity>> userOrders = new LongObjectHashMap<>(1024);
 
     public OrderService(@Autowired AssetService assetService) {
         this.assetService = assetService;
     }
 
-    public OrderEntity getOrder(Long orderId) {
+    public OrderEntity getOrder(long orderId) {
         return this.activeOrders.get(orderId);
     }
 
-    public ConcurrentMap<Long, OrderEntity> getActiveOrders() {
-        return this.activeOrders;
+    /**
+     * Copy of all active orders.
+     */
+    public List<OrderEntity> getActiveOrders() {
+        return this.activeOrders.values();
+    }
+
+    /**
+     * Copy of active orders of user, or empty list if user has no active order.
+     */
+    public List<OrderEntity> getUserOrders(long userId) {
+        LongObjectHashMap<OrderEntity> orders = this.userOrders.get(userId);
+        return orders == null ? List.of() : orders.values();
     }
 
-    public ConcurrentMap<Long, OrderEntity> getUserOrders(Long userId) {
-        return this.userOrders.get(userId);
+    /**
+     * Number of users who have active orders.
+     */
+    public int getUserCount() {
+        return this.userOrders.size();
     }
 
-    public OrderEntity createOrder(long sequenceId, long timeStamp, Long orderId, Long userId, Direction direction, BigDecimal price, BigDecimal quantity) {
+    public OrderEntity createOrder(MarketSymbol symbol, long sequenceId, long timeStamp, Long orderId, Long userId, Direction direction, BigDecimal price, BigDecimal quantity) {
+        final FixedPoint fixedPoint = symbol.fixedPoint();
+        // normalize price and quantity to fixed-point
+        long priceUnits;
+        long quantityUnits;
+        try {
+            priceUnits = fixedPoint.toPriceUnits(price);
+            quantityUnits = fixedPoint.toQuantityUnits(quantity);
+        } catch (ArithmeticException e) {
+            logger.warn("invalid price {} or quantity {} for {}", price, quantity, symbol);
+            return null;
+        }
         switch (direction) {
             case BUY -> {
-                // buy, need freeze USD
-                if (!assetService.tryFreeze(userId, AssetEnum.USD, price.multiply(quantity))) {
+                // buy, need freeze quote asset
+                if (!assetService.tryFreeze(userId, symbol.quoteAsset(),
+                        fixedPoint.toAmount(fixedPoint.amountUnits(priceUnits, quantityUnits)))) {
                     return null;
                 }
             }
             case SELL -> {
-                // sell, need freeze BTC
-                if (!assetService.tryFreeze(userId, AssetEnum.BTC, quantity)) {
+                // sell, need freeze base asset
+                if (!assetService.tryFreeze(userId, symbol.baseAsset(), quantity)) {
                     return null;
                 }
             }
@@ -62,18 +97,40 @@ public class OrderService {
         }
         OrderEntity order = new OrderEntity();
         order.id = orderId;
+        order.symbolId = symbol.id();
         order.userId = userId;
         order.sequenceId = sequenceId;
         order.price = price;
         order.direction = direction;
         order.quantity = quantity;
         order.unfilledQuantity = quantity;
+        order.priceUnits = priceUnits;
+        order.quantityUnits = order.unfilledUnits = quantityUnits;
         order.createTime = order.updateTime = timeStamp;
+        addOrder(order);
+        return order;
+    }
+
+    /**
+     * Add order loaded from engine snapshot, whose assets are already frozen.
+     */
+    public void restoreOrder(OrderEntity order) {
+        if (this.activeOrders.containsKey(order.id)) {
+            throw new IllegalArgumentException("Duplicate order: " + order.id);
+        }
+        addOrder(order);
+    }
+
+    private void addOrder(OrderEntity order) {
         // add to active orders
         this.activeOrders.put(order.id, order);
         // add to user orders
-        this.userOrders.computeIfAbsent(userId, k -> new ConcurrentHashMap<>()).put(order.id, order);
-        return order;
+        LongObjectHashMap<OrderEntity> orders = this.userOrders.get(order.userId);
+        if (orders == null) {
+            orders = new LongObjectHashMap<>(USER_ORDERS_CAPACITY);
+            this.userOrders.put(order.userId, orders);
+        }
+        orders.put(order.id, order);
     }
 
     public void removeOrder(long orderId) {
@@ -83,18 +140,22 @@ public class OrderService {
             throw new IllegalArgumentException("OrderEntity not found by orderId in active orders: " + orderId);
         }
         // remove from user orders
-        ConcurrentHashMap<Long, OrderEntity> tmpUserOrders = this.userOrders.get(removed.userId);
+        LongObjectHashMap<OrderEntity> tmpUserOrders = this.userOrders.get(removed.userId);
         if (tmpUserOrders == null) {
             throw new IllegalArgumentException("User orders not found by userId: " + removed.userId);
         }
         if (tmpUserOrders.remove(orderId) == null) {
             throw new IllegalArgumentException("Order not found by orderId in user orders: " + orderId);
         }
+        // free index of user without active order
+        if (tmpUserOrders.isEmpty()) {
+            this.userOrders.remove(removed.userId);
+        }
     }
 
     public void debug() {
         System.out.println("---------- orders ----------");
-        List<OrderEntity> orders = new ArrayList<>(this.activeOrders.values());
+        List<OrderEntity> orders = getActiveOrders();
         Collections.sort(orders);
         for (OrderEntity order : orders) {
             System.out.println("  " + order.id + " " + order.direction + " price: " + order.price + " unfilled: "
@@ -0,0 +1,51 @@
+package com.helltractor.exchange.sink;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Park consumer on a condition. Lowest CPU usage, and producer only takes the lock when consumer is waiting.
+ */
+public class BlockingWaitStrategy implements WaitStrategy {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition published = lock.newCondition();
+
+    private final AtomicBoolean signalNeeded = new AtomicBoolean(false);
+
+    @Override
+    public long waitFor(long sequence, Sequence cursor) throws InterruptedException {
+        long available = cursor.get();
+        if (available < sequence) {
+            this.lock.lock();
+            try {
+                for (;;) {
+                    // 先声明需要唤醒再检查，避免丢失生产者的通知
+                    this.signalNeeded.set(true);
+                    available = cursor.get();
+                    if (available >= sequence) {
+                        break;
+                    }
+                    this.published.await();
+                }
+            } finally {
+                this.lock.unlock();
+            }
+        }
+        return available;
+    }
+
+    @Override
+    public void signalAllWhenBlocking() {
+        if (this.signalNeeded.getAndSet(false)) {
+            this.lock.lock();
+            try {
+                this.published.signalAll();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+    }
+}
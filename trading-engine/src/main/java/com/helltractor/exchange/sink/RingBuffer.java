@@ -0,0 +1,81 @@
+package com.helltractor.exchange.sink;
+
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated single-producer single-consumer ring buffer.
+ * <p>
+ * Publishing only stores a reference into a slot and advances the cursor, so no queue node is allocated. The producer
+ * waits when the buffer is full, and the consumer waits by {@link WaitStrategy} when it is empty.
+ *
+ * @param <E> Element type.
+ */
+public class RingBuffer<E> {
+
+    private final Object[] entries;
+
+    private final int mask;
+
+    private final WaitStrategy waitStrategy;
+
+    // last published sequence
+    private final Sequence cursor = new Sequence(-1);
+
+    // last consumed sequence
+    private final Sequence consumed = new Sequence(-1);
+
+    // producer only:
+    private long nextSequence = 0;
+    private long cachedConsumed = -1;
+
+    public RingBuffer(int bufferSize, WaitStrategy waitStrategy) {
+        if (bufferSize <= 0 || Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("Buffer size must be power of 2.");
+        }
+        this.entries = new Object[bufferSize];
+        this.mask = bufferSize - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    public int getBufferSize() {
+        return this.entries.length;
+    }
+
+    /**
+     * Publish element. Must be called by the producer thread only.
+     */
+    public void publish(E element) {
+        long sequence = this.nextSequence++;
+        long wrapPoint = sequence - this.entries.length;
+        if (wrapPoint > this.cachedConsumed) {
+            // 缓冲区已满，等待消费者释放槽位
+            while (wrapPoint > (this.cachedConsumed = this.consumed.get())) {
+                LockSupport.parkNanos(1L);
+            }
+        }
+        this.entries[(int) sequence & this.mask] = element;
+        this.cursor.setVolatile(sequence);
+        this.waitStrategy.signalAllWhenBlocking();
+    }
+
+    /**
+     * Wait until at least one element is published, and move at most maxElements to list. Must be called by the
+     * consumer thread only.
+     *
+     * @return number of moved elements
+     */
+    @SuppressWarnings("unchecked")
+    public int drainTo(List<E> list, int maxElements) throws InterruptedException {
+        long next = this.consumed.get() + 1;
+        long available = this.waitStrategy.waitFor(next, this.cursor);
+        long last = Math.min(available, next + maxElements - 1);
+        for (long sequence = next; sequence <= last; sequence++) {
+            int index = (int) sequence & this.mask;
+            list.add((E) this.entries[index]);
+            this.entries[index] = null;
+        }
+        this.consumed.setRelease(last);
+        return (int) (last - next + 1);
+    }
+}
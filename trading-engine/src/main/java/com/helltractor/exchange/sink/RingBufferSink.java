@@ -0,0 +1,69 @@
+package com.helltractor.exchange.sink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.helltractor.exchange.support.LoggerSupport;
+
+/**
+ * Output sink of trading engine: the engine thread publishes into a ring buffer, and a dedicated thread drains it in
+ * batches and passes each batch to handler.
+ * <p>
+ * The batch list is reused, so handler must not keep reference of it.
+ *
+ * @param <E> Element type.
+ */
+public class RingBufferSink<E> extends LoggerSupport {
+
+    private final RingBuffer<E> ringBuffer;
+
+    private final int batchSize;
+
+    private final Consumer<List<E>> handler;
+
+    private final Thread thread;
+
+    public RingBufferSink(String name, int bufferSize, WaitStrategy waitStrategy, int batchSize,
+            Consumer<List<E>> handler) {
+        this.ringBuffer = new RingBuffer<>(bufferSize, waitStrategy);
+        this.batchSize = batchSize;
+        this.handler = handler;
+        this.thread = new Thread(this::run, name);
+    }
+
+    public void start() {
+        this.thread.start();
+    }
+
+    public void stop() {
+        this.thread.interrupt();
+    }
+
+    /**
+     * Publish element. Must be called by the engine thread only.
+     */
+    public void publish(E element) {
+        this.ringBuffer.publish(element);
+    }
+
+    private void run() {
+        logger.info("start {}...", this.thread.getName());
+        List<E> batch = new ArrayList<>(this.batchSize);
+        for (;;) {
+            try {
+                this.ringBuffer.drainTo(batch, this.batchSize);
+            } catch (InterruptedException e) {
+                logger.warn("{} was interrupted.", this.thread.getName());
+                break;
+            }
+            try {
+                this.handler.accept(batch);
+            } catch (Exception e) {
+                logger.error("handle batch failed in " + this.thread.getName() + ".", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+}
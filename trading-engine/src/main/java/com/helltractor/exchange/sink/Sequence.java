@@ -0,0 +1,49 @@
+package com.helltractor.exchange.sink;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Padded sequence counter, so that producer and consumer sequences never share a cache line.
+ */
+@SuppressWarnings("unused")
+public class Sequence {
+
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(Sequence.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private long p1, p2, p3, p4, p5, p6, p7;
+
+    private volatile long value;
+
+    private long p9, p10, p11, p12, p13, p14, p15;
+
+    public Sequence(long initialValue) {
+        this.value = initialValue;
+    }
+
+    public long get() {
+        return this.value;
+    }
+
+    /**
+     * Ordered store, all writes before are visible to thread which reads this value.
+     */
+    public void setRelease(long value) {
+        VALUE.setRelease(this, value);
+    }
+
+    /**
+     * Volatile store, also ordered with subsequent volatile reads.
+     */
+    public void setVolatile(long value) {
+        this.value = value;
+    }
+}
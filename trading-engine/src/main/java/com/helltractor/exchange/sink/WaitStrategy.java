@@ -0,0 +1,26 @@
+package com.helltractor.exchange.sink;
+
+/**
+ * How a consumer waits for the producer to publish.
+ */
+public interface WaitStrategy {
+
+    /**
+     * Wait until sequence is published, and return the highest published sequence.
+     */
+    long waitFor(long sequence, Sequence cursor) throws InterruptedException;
+
+    /**
+     * Called by producer after publish.
+     */
+    void signalAllWhenBlocking();
+
+    static WaitStrategy of(String name) {
+        return switch (name) {
+            case "blocking" -> new BlockingWaitStrategy();
+            case "yielding" -> new YieldingWaitStrategy();
+            case "busy-spin" -> new BusySpinWaitStrategy();
+            default -> throw new IllegalArgumentException("Invalid wait strategy: " + name);
+        };
+    }
+}
@@ -0,0 +1,410 @@
+package com.helltractor.exchange.snapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.helltractor.exchange.assets.AssetService;
+import com.helltractor.exchange.enums.Direction;
+import com.helltractor.exchange.enums.OrderStatus;
+import com.helltractor.exchange.match.FixedPoint;
+import com.helltractor.exchange.match.MatchEngine;
+import com.helltractor.exchange.match.MatchEngineGroup;
+import com.helltractor.exchange.model.trade.OrderEntity;
+import com.helltractor.exchange.order.OrderService;
+import com.helltractor.exchange.support.LoggerSupport;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Binary snapshots of trading engine state (ledger, active orders and market price of each engine) for fast restart.
+ * <p>
+ * The engine thread copies state into primitive arrays between two batches, and a background thread encodes the copy
+ * and writes it to {@code snapshot-<sequenceId>.bin} through a memory-mapped file, then renames it atomically and
+ * syncs the directory. On startup the latest
+ * valid snapshot is loaded, and only events after its sequenceId need to be replayed. Order books are rebuilt by adding
+ * active orders in sequence order.
+ * <p>
+ * Format: magic, format version, sequenceId, last sequenceId of each stream, orders, engines, ledger, then CRC32 of
+ * all preceding bytes. Version 1 has no stream ids, which means all events were in stream 0.
+ */
+@Component
+public class EngineSnapshotService extends LoggerSupport {
+
+    static final int MAGIC = 0x45585353; // "EXSS"
+
+    static final int FORMAT_VERSION = 2;
+
+    static final int MIN_FORMAT_VERSION = 1;
+
+    static final Pattern FILE_NAME = Pattern.compile("^snapshot-(\\d+)\\.bin$");
+
+    // keep latest snapshots in case the last one is damaged
+    static final int KEEP_SNAPSHOTS = 2;
+
+    // long fields of each order in copied state
+    static final int ORDER_FIELDS = 11;
+
+    private final AssetService assetService;
+
+    private final OrderService orderService;
+
+    private final MatchEngineGroup matchEngineGroup;
+
+    private final Path dir;
+
+    private final long interval;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "async-snapshot");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // a snapshot is being written
+    private final AtomicBoolean writing = new AtomicBoolean(false);
+
+    private long lastSnapshotSequenceId = 0;
+
+    public EngineSnapshotService(@Autowired AssetService assetService, @Autowired OrderService orderService,
+            @Autowired MatchEngineGroup matchEngineGroup,
+            @Value("${exchange.snapshot.dir:./snapshot}") String dir,
+            @Value("${exchange.snapshot.interval:100000}") long interval) {
+        this.assetService = assetService;
+        this.orderService = orderService;
+        this.matchEngineGroup = matchEngineGroup;
+        this.dir = Path.of(dir);
+        this.interval = interval;
+    }
+
+    /**
+     * Take snapshot if enough events are processed since last snapshot and no snapshot is being written. Must be
+     * called by the engine thread when no order is pending.
+     *
+     * @return true if snapshot is taken
+     */
+    public boolean trySnapshot(long sequenceId, long[] streamSequenceIds) {
+        if (this.interval <= 0 || sequenceId - this.lastSnapshotSequenceId < this.interval) {
+            return false;
+        }
+        if (!this.writing.compareAndSet(false, true)) {
+            return false;
+        }
+        this.lastSnapshotSequenceId = sequenceId;
+        try {
+            takeSnapshot(sequenceId, streamSequenceIds);
+        } catch (RuntimeException e) {
+            this.writing.set(false);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Copy state on caller thread, then encode and write file on background thread, so the engine thread only spends
+     * time on array copies.
+     */
+    public Future<Path> takeSnapshot(long sequenceId, long[] streamSequenceIds) {
+        long start = System.currentTimeMillis();
+        State state = copyState(sequenceId, streamSequenceIds);
+        logger.info("copied state at sequence id {} in {} ms.", sequenceId, System.currentTimeMillis() - start);
+        return this.writer.submit(() -> {
+            try {
+                long encodeStart = System.currentTimeMillis();
+                byte[] data = encode(state);
+                logger.info("encoded snapshot at sequence id {}: {} bytes in {} ms.", sequenceId, data.length,
+                        System.currentTimeMillis() - encodeStart);
+                return write(sequenceId, data);
+            } catch (Exception e) {
+                logger.error("write snapshot failed.", e);
+                throw e;
+            } finally {
+                this.writing.set(false);
+            }
+        });
+    }
+
+    /**
+     * Immutable copy of engine state, taken by the engine thread and encoded by the writer thread.
+     *
+     * @param orders  fields of active orders, ORDER_FIELDS per order
+     * @param engines symbolId and market price units of each engine
+     */
+    record State(long sequenceId, long[] streamSequenceIds, long[] orders, long[] engines,
+            AssetService.LedgerCopy ledger) {
+    }
+
+    State copyState(long sequenceId, long[] streamSequenceIds) {
+        // 仅复制到最后一个有事件的流
+        int streams = streamSequenceIds.length;
+        while (streams > 0 && streamSequenceIds[streams - 1] == 0) {
+            streams--;
+        }
+        List<OrderEntity> activeOrders = this.orderService.getActiveOrders();
+        long[] orders = new long[activeOrders.size() * ORDER_FIELDS];
+        int i = 0;
+        for (OrderEntity order : activeOrders) {
+            orders[i++] = order.id;
+            orders[i++] = order.sequenceId;
+            orders[i++] = order.symbolId;
+            orders[i++] = order.userId;
+            orders[i++] = order.direction.ordinal();
+            orders[i++] = order.status.ordinal();
+            orders[i++] = order.priceUnits;
+            orders[i++] = order.quantityUnits;
+            orders[i++] = order.unfilledUnits;
+            orders[i++] = order.createTime;
+            orders[i++] = order.updateTime;
+        }
+        long[] engines = new long[this.matchEngineGroup.getEngines().size() * 2];
+        i = 0;
+        for (MatchEngine engine : this.matchEngineGroup.getEngines()) {
+            engines[i++] = engine.symbol.id();
+            engines[i++] = engine.fixedPoint.toPriceUnits(engine.marketPrice);
+        }
+        return new State(sequenceId, Arrays.copyOf(streamSequenceIds, streams), orders, engines,
+                this.assetService.copyLedger());
+    }
+
+    byte[] encode(State state) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(1 << 20);
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(buffer, crc))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(state.sequenceId());
+            out.writeInt(state.streamSequenceIds().length);
+            for (long streamSequenceId : state.streamSequenceIds()) {
+                out.writeLong(streamSequenceId);
+            }
+            long[] orders = state.orders();
+            out.writeInt(orders.length / ORDER_FIELDS);
+            for (int i = 0; i < orders.length; i += ORDER_FIELDS) {
+                out.writeLong(orders[i]);
+                out.writeLong(orders[i + 1]);
+                out.writeLong(orders[i + 2]);
+                out.writeLong(orders[i + 3]);
+                out.writeByte((int) orders[i + 4]);
+                out.writeByte((int) orders[i + 5]);
+                for (int j = 6; j < ORDER_FIELDS; j++) {
+                    out.writeLong(orders[i + j]);
+                }
+            }
+            long[] engines = state.engines();
+            out.writeInt(engines.length / 2);
+            for (long value : engines) {
+                out.writeLong(value);
+            }
+            state.ledger().write(out);
+            out.flush();
+            out.writeLong(crc.getValue());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    Path write(long sequenceId, byte[] data) throws IOException {
+        Files.createDirectories(this.dir);
+        Path tmp = this.dir.resolve("snapshot-" + sequenceId + ".tmp");
+        Path file = this.dir.resolve("snapshot-" + sequenceId + ".bin");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, data.length);
+            mapped.put(data);
+            mapped.force();
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // 同步目录，确保重命名在掉电后仍然有效
+        forceDirectory();
+        logger.info("saved snapshot {}.", file);
+        List<Path> files = listSnapshots();
+        for (int i = KEEP_SNAPSHOTS; i < files.size(); i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+        return file;
+    }
+
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(this.dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // some platforms cannot open or sync a directory
+            logger.warn("cannot sync directory {}: {}", this.dir, e.getMessage());
+        }
+    }
+
+    /**
+     * Load latest valid snapshot into empty services, and last sequenceId of each stream into streamSequenceIds.
+     *
+     * @return sequenceId of loaded snapshot, or 0 if no snapshot
+     */
+    public long restore(long[] streamSequenceIds) {
+        if (!this.orderService.getActiveOrders().isEmpty()) {
+            throw new IllegalStateException("Cannot restore snapshot into non-empty engine.");
+        }
+        List<Path> files;
+        try {
+            files = listSnapshots();
+        } catch (IOException e) {
+            logger.warn("cannot list snapshots in {}: {}", this.dir, e.getMessage());
+            return 0;
+        }
+        for (Path file : files) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (!verify(buffer)) {
+                    logger.warn("skip damaged snapshot {}.", file);
+                    continue;
+                }
+                long sequenceId = decode(buffer, streamSequenceIds);
+                this.lastSnapshotSequenceId = sequenceId;
+                logger.info("loaded snapshot {} at sequence id {}.", file, sequenceId);
+                return sequenceId;
+            } catch (IOException e) {
+                logger.warn("skip unreadable snapshot {}: {}", file, e.getMessage());
+            }
+        }
+        return 0;
+    }
+
+    boolean verify(ByteBuffer buffer) {
+        int length = buffer.limit();
+        if (length < 24 || buffer.getInt(0) != MAGIC || buffer.getInt(4) < MIN_FORMAT_VERSION
+                || buffer.getInt(4) > FORMAT_VERSION) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().limit(length - 8));
+        return crc.getValue() == buffer.getLong(length - 8);
+    }
+
+    /**
+     * Decode snapshot. Orders and engines are checked before any state is changed.
+     */
+    long decode(ByteBuffer buffer, long[] streamSequenceIds) {
+        int version = buffer.getInt(4);
+        buffer.position(8);
+        long sequenceId = buffer.getLong();
+        long[] streams;
+        if (version >= 2) {
+            streams = new long[buffer.getInt()];
+            if (streams.length > streamSequenceIds.length) {
+                throw new IllegalStateException("Too many streams in snapshot: " + streams.length);
+            }
+            for (int i = 0; i < streams.length; i++) {
+                streams[i] = buffer.getLong();
+            }
+        } else {
+            streams = new long[]{sequenceId};
+        }
+        int size = buffer.getInt();
+        List<OrderEntity> orders = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            OrderEntity order = new OrderEntity();
+            order.id = buffer.getLong();
+            order.sequenceId = buffer.getLong();
+            order.symbolId = buffer.getLong();
+            order.userId = buffer.getLong();
+            order.direction = Direction.values()[buffer.get()];
+            order.status = OrderStatus.values()[buffer.get()];
+            order.priceUnits = buffer.getLong();
+            order.quantityUnits = buffer.getLong();
+            order.unfilledUnits = buffer.getLong();
+            order.createTime = buffer.getLong();
+            order.updateTime = buffer.getLong();
+            MatchEngine engine = getEngine(order.symbolId);
+            FixedPoint fixedPoint = engine.fixedPoint;
+            order.price = fixedPoint.toPrice(order.priceUnits);
+            order.quantity = fixedPoint.toQuantity(order.quantityUnits);
+            order.unfilledQuantity = fixedPoint.toQuantity(order.unfilledUnits);
+            orders.add(order);
+        }
+        int engines = buffer.getInt();
+        List<MatchEngine> marketEngines = new ArrayList<>(engines);
+        List<BigDecimal> marketPrices = new ArrayList<>(engines);
+        for (int i = 0; i < engines; i++) {
+            MatchEngine engine = getEngine(buffer.getLong());
+            BigDecimal marketPrice = engine.fixedPoint.toPrice(buffer.getLong());
+            marketEngines.add(engine);
+            marketPrices.add(marketPrice.signum() == 0 ? BigDecimal.ZERO : marketPrice);
+        }
+        this.assetService.readSnapshot(buffer);
+        // 按订单序号加入订单簿，保持时间优先
+        orders.sort(Comparator.comparingLong(o -> o.sequenceId));
+        for (OrderEntity order : orders) {
+            this.orderService.restoreOrder(order);
+            getEngine(order.symbolId).restoreOrder(order);
+        }
+        for (int i = 0; i < engines; i++) {
+            marketEngines.get(i).restore(sequenceId, marketPrices.get(i));
+        }
+        System.arraycopy(streams, 0, streamSequenceIds, 0, streams.length);
+        return sequenceId;
+    }
+
+    private MatchEngine getEngine(long symbolId) {
+        MatchEngine engine = this.matchEngineGroup.getEngine(symbolId);
+        if (engine == null) {
+            throw new IllegalStateException("Symbol in snapshot is not listed: " + symbolId);
+        }
+        return engine;
+    }
+
+    /**
+     * List snapshot files, latest first.
+     */
+    List<Path> listSnapshots() throws IOException {
+        if (!Files.isDirectory(this.dir)) {
+            return List.of();
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.dir, "snapshot-*.bin")) {
+            for (Path file : stream) {
+                if (FILE_NAME.matcher(file.getFileName().toString()).matches()) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort(Comparator.comparingLong(EngineSnapshotService::sequenceIdOf));
+        Collections.reverse(files);
+        return files;
+    }
+
+    static long sequenceIdOf(Path file) {
+        Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.writer.shutdown();
+    }
+}
@@ -0,0 +1,27 @@
+package com.helltractor.exchange.snapshot;
+
+import java.util.List;
+import java.util.Map;
+
+import com.helltractor.exchange.assets.Asset;
+import com.helltractor.exchange.enums.AssetEnum;
+import com.helltractor.exchange.model.trade.OrderEntity;
+
+/**
+ * Immutable view of a user published by trading engine. Orders are copies which are never changed after publish.
+ *
+ * @param sequenceId last processed sequenceId when published
+ * @param orders     open orders sorted by id
+ * @param assets     balances of opened assets
+ */
+public record UserSnapshot(long sequenceId, List<OrderEntity> orders, Map<AssetEnum, Asset> assets) {
+
+    public OrderEntity getOrder(long orderId) {
+        for (OrderEntity order : this.orders) {
+            if (order.id.longValue() == orderId) {
+                return order;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,91 @@
+package com.helltractor.exchange.snapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.helltractor.exchange.assets.Asset;
+import com.helltractor.exchange.assets.AssetService;
+import com.helltractor.exchange.enums.AssetEnum;
+import com.helltractor.exchange.model.trade.OrderEntity;
+import com.helltractor.exchange.order.OrderService;
+import com.helltractor.exchange.support.LoggerSupport;
+import com.helltractor.exchange.util.LongIntHashMap;
+
+/**
+ * Publish immutable per-user snapshots of open orders and balances.
+ * <p>
+ * The trading engine thread marks users changed by each event, and publishes new snapshots of them after a batch is
+ * processed. API threads only read published snapshots, and never touch live orders or the ledger.
+ */
+@Component
+public class UserSnapshotService extends LoggerSupport {
+
+    private final AssetService assetService;
+
+    private final OrderService orderService;
+
+    // userId -> latest snapshot
+    private final ConcurrentMap<Long, UserSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    // users changed since last publish, only accessed by engine thread
+    private final LongIntHashMap changedUsers = new LongIntHashMap();
+
+    public UserSnapshotService(@Autowired AssetService assetService, @Autowired OrderService orderService) {
+        this.assetService = assetService;
+        this.orderService = orderService;
+    }
+
+    /**
+     * Get latest snapshot of user, or null if user never changed or is evicted with no assets and orders.
+     */
+    public UserSnapshot getSnapshot(long userId) {
+        return this.snapshots.get(userId);
+    }
+
+    public void markChanged(long userId) {
+        this.changedUsers.put(userId, 0);
+    }
+
+    /**
+     * Remove snapshot of user evicted from ledger if user has no open orders, so that snapshots do not grow with every
+     * user ever seen. Called by engine thread.
+     */
+    public void evict(long userId) {
+        if (this.orderService.getUserOrders(userId).isEmpty()) {
+            this.snapshots.remove(userId);
+        }
+    }
+
+    /**
+     * Publish snapshots of all changed users.
+     */
+    public void publish(long sequenceId) {
+        if (this.changedUsers.isEmpty()) {
+            return;
+        }
+        this.changedUsers.forEachKey(userId -> this.snapshots.put(userId, createSnapshot(sequenceId, userId)));
+        if (logger.isDebugEnabled()) {
+            logger.debug("published {} user snapshots at sequence id {}.", this.changedUsers.size(), sequenceId);
+        }
+        this.changedUsers.clear();
+    }
+
+    private UserSnapshot createSnapshot(long sequenceId, long userId) {
+        List<OrderEntity> activeOrders = this.orderService.getUserOrders(userId);
+        List<OrderEntity> orders = new ArrayList<>(activeOrders.size());
+        for (OrderEntity order : activeOrders) {
+            // 引擎线程内复制，不会与订单更新并发
+            orders.add(order.copy());
+        }
+        Collections.sort(orders);
+        Map<AssetEnum, Asset> assets = this.assetService.getAssets(userId);
+        return new UserSnapshot(sequenceId, Collections.unmodifiableList(orders), Collections.unmodifiableMap(assets));
+    }
+}
@@ -0,0 +1,190 @@
+package com.helltractor.exchange.store;
+
+import java.util.ArrayDeque;
+
+import com.helltractor.exchange.message.event.AbstractEvent;
+import com.helltractor.exchange.message.event.WatermarkEvent;
+import com.helltractor.exchange.support.LoggerSupport;
+
+/**
+ * Merges events of all sequence streams into sequenceId order.
+ * <p>
+ * Events of a stream arrive in order, but streams arrive in any order relative to each other. The smallest pending
+ * event is released only when no other stream can still deliver a smaller one: the stream has a pending event, or
+ * its last received event or watermark is greater. So the engine applies events in the same order whatever the
+ * arrival order of streams, the same as another engine or a replay after snapshot.
+ * <p>
+ * Lost events of a stream, detected by previousId, are replayed from database ahead of pending events of the stream.
+ * Pending events of the stream are dropped and read from database again, since they are committed before sent.
+ */
+public class EventMerger extends LoggerSupport {
+
+    @FunctionalInterface
+    public interface ReplaySource {
+
+        /**
+         * Open stored events of stream after lastEventId.
+         */
+        EventStream open(int streamId, long lastEventId);
+    }
+
+    private final StreamQueue[] streams;
+
+    private final ReplaySource replaySource;
+
+    /**
+     * @param lastSequenceIds last applied sequenceId of each stream
+     */
+    public EventMerger(int streams, long[] lastSequenceIds, ReplaySource replaySource) {
+        this.streams = new StreamQueue[streams];
+        for (int i = 0; i < streams; i++) {
+            this.streams[i] = new StreamQueue(i, lastSequenceIds[i]);
+        }
+        this.replaySource = replaySource;
+    }
+
+    /**
+     * Receive event or watermark in the order of its stream. Duplicated events are dropped.
+     */
+    public void offer(AbstractEvent event) {
+        if (event.streamId < 0 || event.streamId >= this.streams.length) {
+            throw new IllegalArgumentException("Invalid stream id " + event.streamId + " of event: " + event);
+        }
+        StreamQueue stream = this.streams[event.streamId];
+        if (event instanceof WatermarkEvent) {
+            if (event.previousId > stream.lastReceivedId) {
+                replay(stream, event.previousId);
+            }
+            stream.knownId = Math.max(stream.knownId, event.sequenceId);
+            return;
+        }
+        // 判断是否重复消息
+        if (event.sequenceId <= stream.lastReceivedId) {
+            logger.warn("skip duplicated event: {}", event);
+            return;
+        }
+        // 判断是否丢失了消息，从数据库补齐该流
+        if (event.previousId > stream.lastReceivedId) {
+            replay(stream, event.previousId);
+        }
+        stream.pending.add(event);
+        stream.lastReceivedId = event.sequenceId;
+        stream.knownId = Math.max(stream.knownId, event.sequenceId);
+    }
+
+    /**
+     * Take next event in sequenceId order, or null if must wait for events or watermarks of other streams. May block
+     * when replaying from database, and throws if lost events cannot be loaded.
+     */
+    public AbstractEvent poll() {
+        StreamQueue min = null;
+        long minId = Long.MAX_VALUE;
+        long minKnownId = Long.MAX_VALUE;
+        for (StreamQueue stream : this.streams) {
+            AbstractEvent head = stream.peek();
+            if (head == null) {
+                minKnownId = Math.min(minKnownId, stream.knownId);
+            } else if (head.sequenceId < minId) {
+                min = stream;
+                minId = head.sequenceId;
+            }
+        }
+        // 其他流可能还有更小的消息未到达
+        if (min == null || minKnownId < minId) {
+            return null;
+        }
+        return min.take();
+    }
+
+    /**
+     * Close replays in progress.
+     */
+    public void close() {
+        for (StreamQueue stream : this.streams) {
+            stream.closeReplay();
+        }
+    }
+
+    private void replay(StreamQueue stream, long replayToId) {
+        if (stream.replay == null) {
+            logger.info("replay lost events of stream {} after sequence id {} to {} from db...", stream.streamId,
+                    stream.lastTakenId, replayToId);
+            stream.replay = this.replaySource.open(stream.streamId, stream.lastTakenId);
+        } else {
+            logger.info("extend replay of stream {} to sequence id {}...", stream.streamId, replayToId);
+        }
+        stream.pending.clear();
+        stream.replayToId = replayToId;
+        stream.lastReceivedId = replayToId;
+        stream.knownId = Math.max(stream.knownId, replayToId);
+    }
+
+    static final class StreamQueue {
+
+        final int streamId;
+
+        // received events not yet taken, after replay if any
+        final ArrayDeque<AbstractEvent> pending = new ArrayDeque<>();
+
+        // last sequenceId taken
+        long lastTakenId;
+
+        // last sequenceId received or to be replayed
+        long lastReceivedId;
+
+        // all events with sequenceId not greater than it are taken, pending or to be replayed
+        long knownId;
+
+        // replay of lost events, null if not replaying
+        EventStream replay;
+
+        long replayToId;
+
+        AbstractEvent replayHead;
+
+        StreamQueue(int streamId, long lastSequenceId) {
+            this.streamId = streamId;
+            this.lastTakenId = lastSequenceId;
+            this.lastReceivedId = lastSequenceId;
+            this.knownId = lastSequenceId;
+        }
+
+        AbstractEvent peek() {
+            if (this.replay == null) {
+                return this.pending.peek();
+            }
+            if (this.replayHead == null) {
+                AbstractEvent next = this.replay.hasNext() ? this.replay.next() : null;
+                if (next == null || next.sequenceId > this.replayToId) {
+                    closeReplay();
+                    throw new IllegalStateException("Cannot load lost events of stream " + this.streamId
+                            + " after sequence id " + this.lastTakenId + " to " + this.replayToId);
+                }
+                this.replayHead = next;
+            }
+            return this.replayHead;
+        }
+
+        AbstractEvent take() {
+            AbstractEvent event = peek();
+            if (this.replay == null) {
+                this.pending.poll();
+            } else {
+                this.replayHead = null;
+                if (event.sequenceId >= this.replayToId) {
+                    closeReplay();
+                }
+            }
+            this.lastTakenId = event.sequenceId;
+            return event;
+        }
+
+        void closeReplay() {
+            if (this.replay != null) {
+                this.replay.close();
+                this.replay = null;
+                this.replayHead = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.helltractor.exchange.store;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.helltractor.exchange.message.event.AbstractEvent;
+
+/**
+ * Stream of stored events ordered by sequenceId.
+ * <p>
+ * A prefetch thread loads pages by keyset on sequenceId and deserializes them ahead of the consumer. At most
+ * {@code prefetchPages} pages are buffered, so memory is bounded however many events are replayed. The stream ends
+ * when a page is not full. Must be closed to stop the prefetch thread.
+ */
+public class EventStream implements Iterator<AbstractEvent>, AutoCloseable {
+
+    @FunctionalInterface
+    public interface PageLoader {
+
+        /**
+         * Load at most limit events after lastEventId, ordered by sequenceId.
+         */
+        List<AbstractEvent> load(long lastEventId, int limit);
+    }
+
+    // marks end of stream
+    private static final List<AbstractEvent> END = List.of();
+
+    private final PageLoader loader;
+
+    private final int pageSize;
+
+    // List<AbstractEvent> or RuntimeException thrown by loader
+    private final BlockingQueue<Object> pages;
+
+    private final Thread prefetchThread;
+
+    private volatile boolean closed = false;
+
+    private List<AbstractEvent> page = null;
+
+    private int index = 0;
+
+    private boolean end = false;
+
+    public EventStream(PageLoader loader, long lastEventId, int pageSize, int prefetchPages) {
+        if (pageSize <= 0 || prefetchPages <= 0) {
+            throw new IllegalArgumentException("Invalid page size or prefetch pages.");
+        }
+        this.loader = loader;
+        this.pageSize = pageSize;
+        this.pages = new ArrayBlockingQueue<>(prefetchPages);
+        this.prefetchThread = new Thread(() -> prefetch(lastEventId), "async-event-prefetch");
+        this.prefetchThread.setDaemon(true);
+        this.prefetchThread.start();
+    }
+
+    private void prefetch(long lastEventId) {
+        try {
+            try {
+                while (!this.closed) {
+                    List<AbstractEvent> events = this.loader.load(lastEventId, this.pageSize);
+                    if (!events.isEmpty()) {
+                        this.pages.put(events);
+                        lastEventId = events.get(events.size() - 1).sequenceId;
+                    }
+                    if (events.size() < this.pageSize) {
+                        this.pages.put(END);
+                        return;
+                    }
+                }
+            } catch (RuntimeException e) {
+                this.pages.put(e);
+            }
+        } catch (InterruptedException e) {
+            // closed by consumer
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (this.page == null || this.index >= this.page.size()) {
+            if (this.end) {
+                return false;
+            }
+            Object next;
+            try {
+                next = this.pages.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted when waiting for events.", e);
+            }
+            if (next instanceof RuntimeException) {
+                this.end = true;
+                throw (RuntimeException) next;
+            }
+            @SuppressWarnings("unchecked")
+            List<AbstractEvent> events = (List<AbstractEvent>) next;
+            this.page = events;
+            this.index = 0;
+            if (events == END) {
+                this.end = true;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public AbstractEvent next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return this.page.get(this.index++);
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        this.end = true;
+        this.page = null;
+        this.prefetchThread.interrupt();
+        this.pages.clear();
+    }
+}
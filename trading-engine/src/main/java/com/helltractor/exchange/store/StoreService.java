@@ -1,16 +1,21 @@
 package com.helltractor.exchange.store;
 
+import com.helltractor.exchange.journal.JournalReader;
 import com.helltractor.exchange.message.event.AbstractEvent;
 import com.helltractor.exchange.messaging.MessageTypes;
 import com.helltractor.exchange.model.support.EntitySupport;
 import com.helltractor.exchange.model.trade.EventEntity;
 import com.helltractor.exchange.support.AbstractDbService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Component
 @Transactional
@@ -19,13 +24,53 @@ public class StoreService extends AbstractDbService {
     @Autowired
     private MessageTypes messageTypes;
 
-    public List<AbstractEvent> loadEventFromDb(long lastEventId) {
-        List<EventEntity> events = dataBase.from(EventEntity.class)
-                .where("sequenceId > ?", lastEventId)
-                .orderBy("sequenceId")
-                .limit(100000).list();
-        return events.stream().map(event -> (AbstractEvent) messageTypes.deserialize(event.data))
-                .collect(Collectors.toList());
+    @Value("${exchange.store.replay-page-size:1000}")
+    private int replayPageSize = 1000;
+
+    @Value("${exchange.store.replay-prefetch-pages:4}")
+    private int replayPrefetchPages = 4;
+
+    // 定序服务的日志目录，为空时只从数据库读取
+    @Value("${exchange.store.journal-dir:}")
+    private String journalDir = "";
+
+    /**
+     * Load a page of events of stream after lastEventId, ordered by sequenceId. Read from sequencer journal first if
+     * reader is given, since recent events may not be archived into database yet.
+     */
+    public List<AbstractEvent> loadEventFromDb(int streamId, long lastEventId, int limit,
+            @Nullable JournalReader reader) {
+        List<EventEntity> events = reader == null ? null : loadEventFromJournal(reader, lastEventId, limit);
+        if (events == null) {
+            events = dataBase.from(EventEntity.class)
+                    .where("streamId = ? AND sequenceId > ?", streamId, lastEventId)
+                    .orderBy("sequenceId")
+                    .limit(limit).list();
+        }
+        List<AbstractEvent> list = new ArrayList<>(events.size());
+        for (EventEntity event : events) {
+            list.add((AbstractEvent) messageTypes.deserialize(event.data));
+        }
+        return list;
+    }
+
+    private List<EventEntity> loadEventFromJournal(JournalReader reader, long lastEventId, int limit) {
+        try {
+            return reader.read(lastEventId, limit);
+        } catch (IOException e) {
+            logger.warn("cannot read journal, load events from db: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Open a stream of all events of stream after lastEventId, loaded page by page ahead of the caller. Pages of
+     * journal continue from the cursor of previous page.
+     */
+    public EventStream openEventStream(int streamId, long lastEventId) {
+        JournalReader reader = this.journalDir.isEmpty() ? null : new JournalReader(Path.of(this.journalDir), streamId);
+        return new EventStream((last, limit) -> loadEventFromDb(streamId, last, limit, reader), lastEventId,
+                replayPageSize, replayPrefetchPages);
     }
 
     public void insertIgnore(List<? extends EntitySupport> list) {
@@ -1,9 +1,7 @@
 package com.helltractor.exchange.web.api;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentMap;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -12,49 +10,36 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.helltractor.exchange.assets.Asset;
-import com.helltractor.exchange.assets.AssetService;
 import com.helltractor.exchange.enums.AssetEnum;
 import com.helltractor.exchange.model.trade.OrderEntity;
-import com.helltractor.exchange.order.OrderService;
+import com.helltractor.exchange.snapshot.UserSnapshot;
+import com.helltractor.exchange.snapshot.UserSnapshotService;
 
+/**
+ * Serve user snapshots published by trading engine.
+ */
 @RestController
 @RequestMapping("/internal")
 public class InternalTradingEngineApiController {
 
     @Autowired
-    private OrderService orderService;
-
-    @Autowired
-    private AssetService assetService;
+    private UserSnapshotService userSnapshotService;
 
     @GetMapping("/{userId}/assets")
     public Map<AssetEnum, Asset> getAssets(@PathVariable("userId") Long userId) {
-        return assetService.getAssets(userId);
+        UserSnapshot snapshot = userSnapshotService.getSnapshot(userId);
+        return snapshot == null ? Map.of() : snapshot.assets();
     }
 
     @GetMapping("/{userId}/orders")
     public List<OrderEntity> getOrders(@PathVariable("userId") Long userId) {
-        ConcurrentMap<Long, OrderEntity> orders = orderService.getUserOrders(userId);
-        if (orders == null || orders.isEmpty()) {
-            return List.of();
-        }
-        List<OrderEntity> list = new ArrayList<>(orders.size());
-        for (OrderEntity order : orders.values()) {
-            OrderEntity copy = null;
-            while (copy == null) {
-                copy = order.copy();
-            }
-            list.add(copy);
-        }
-        return list;
+        UserSnapshot snapshot = userSnapshotService.getSnapshot(userId);
+        return snapshot == null ? List.of() : snapshot.orders();
     }
 
     @GetMapping("/{userId}/orders/{orderId}")
     public OrderEntity getOrders(@PathVariable("userId") Long userId, @PathVariable("orderId") Long orderId) {
-        OrderEntity order = orderService.getOrder(orderId);
-        if (order == null || order.userId.longValue() != userId.longValue()) {
-            return null;
-        }
-        return order.copy();
+        UserSnapshot snapshot = userSnapshotService.getSnapshot(userId);
+        return snapshot == null ? null : snapshot.getOrder(orderId);
     }
 }
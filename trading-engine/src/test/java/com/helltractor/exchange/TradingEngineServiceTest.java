@@ -1,23 +1,42 @@
 package com.helltractor.exchange;
 
 import com.helltractor.exchange.assets.AssetService;
+import com.helltractor.exchange.bean.OrderBookItemBean;
 import com.helltractor.exchange.clearing.ClearingService;
 import com.helltractor.exchange.enums.AssetEnum;
 import com.helltractor.exchange.enums.Direction;
+import com.helltractor.exchange.enums.OrderStatus;
 import com.helltractor.exchange.enums.UserType;
-import com.helltractor.exchange.match.MatchEngine;
+import com.helltractor.exchange.match.MarketSymbol;
+import com.helltractor.exchange.match.MatchEngineGroup;
 import com.helltractor.exchange.message.event.AbstractEvent;
 import com.helltractor.exchange.message.event.OrderCancelEvent;
 import com.helltractor.exchange.message.event.OrderRequestEvent;
 import com.helltractor.exchange.message.event.TransferEvent;
+import com.helltractor.exchange.message.event.WatermarkEvent;
+import com.helltractor.exchange.messaging.SequenceStreams;
+import com.helltractor.exchange.model.trade.OrderEntity;
 import com.helltractor.exchange.order.OrderService;
+import com.helltractor.exchange.sink.RingBufferSink;
+import com.helltractor.exchange.sink.WaitStrategy;
+import com.helltractor.exchange.snapshot.EngineSnapshotService;
+import com.helltractor.exchange.snapshot.UserSnapshot;
+import com.helltractor.exchange.snapshot.UserSnapshotService;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class TradingEngineServiceTest {
 
@@ -63,6 +82,34 @@ public class TradingEngineServiceTest {
         engine.validate();
     }
 
+    @Test
+    void testUserSnapshots() {
+        var engine = createTradingEngine();
+        engine.processEvent(depositEvent(USER_A, bd("58000"), AssetEnum.USD));
+        engine.processEvent(depositEvent(USER_C, bd("5.5"), AssetEnum.BTC));
+        engine.processEvent(orderRequestEvent(USER_A, Direction.BUY, bd("2207.33"), bd("1.2")));
+
+        UserSnapshot snapshotA = engine.userSnapshotService.getSnapshot(USER_A);
+        Assertions.assertEquals(3, snapshotA.sequenceId());
+        Assertions.assertEquals(1, snapshotA.orders().size());
+        OrderEntity order = snapshotA.orders().get(0);
+        Assertions.assertNotSame(engine.orderService.getOrder(order.id), order);
+        Assertions.assertEquals(0, bd("2648.796").compareTo(snapshotA.assets().get(AssetEnum.USD).getFrozen()));
+
+        // partial fill of A publishes new snapshots of A and C, old snapshot is unchanged:
+        engine.processEvent(orderRequestEvent(USER_C, Direction.SELL, bd("2200"), bd("0.2")));
+        Assertions.assertEquals(OrderStatus.PENDING, order.status);
+        Assertions.assertEquals(1, snapshotA.orders().size());
+        UserSnapshot newSnapshotA = engine.userSnapshotService.getSnapshot(USER_A);
+        Assertions.assertEquals(4, newSnapshotA.sequenceId());
+        Assertions.assertEquals(OrderStatus.PARTIAL_FILLED, newSnapshotA.getOrder(order.id).status);
+        Assertions.assertEquals(0, bd("0.2").compareTo(newSnapshotA.assets().get(AssetEnum.BTC).getAvailable()));
+        UserSnapshot snapshotC = engine.userSnapshotService.getSnapshot(USER_C);
+        Assertions.assertEquals(4, snapshotC.sequenceId());
+        Assertions.assertTrue(snapshotC.orders().isEmpty());
+        Assertions.assertNull(engine.userSnapshotService.getSnapshot(USER_B));
+    }
+
     @Test
     void testRandom() {
         var engine = createTradingEngine();
@@ -84,19 +131,241 @@ public class TradingEngineServiceTest {
         engine.debug();
         engine.validate();
 
-        Assertions.assertEquals("35216.4", engine.matchEngine.marketPrice.stripTrailingZeros().toPlainString());
+        Assertions.assertEquals("35216.4", engine.matchEngineGroup.getEngine(MarketSymbol.DEFAULT.id()).marketPrice.stripTrailingZeros().toPlainString());
+    }
+
+    @Test
+    void testSnapshotRestore(@TempDir Path dir) throws Exception {
+        var engine = createTradingEngine(dir);
+        var r = new Random(123456789);
+        for (Long user : USERS) {
+            engine.processEvent(depositEvent(user, random(r, 1000_0000, 2000_0000), AssetEnum.USD));
+            engine.processEvent(depositEvent(user, random(r, 1000, 2000), AssetEnum.BTC));
+        }
+        for (int i = 0; i < 50; i++) {
+            Long user = USERS[i % USERS.length];
+            engine.processEvent(orderRequestEvent(user, Direction.BUY, random(r, 20000, 40000), random(r, 1, 5)));
+            engine.processEvent(orderRequestEvent(user, Direction.SELL, random(r, 20000, 40000), random(r, 1, 5)));
+        }
+        long snapshotSequenceId = this.currentSequenceId;
+        engine.engineSnapshotService.takeSnapshot(snapshotSequenceId, engine.lastSequenceIds).get();
+
+        var restored = createTradingEngine(dir);
+        restored.restoreSnapshot();
+        restored.validate();
+        Assertions.assertEquals(engine.assetService.getUserAssets().toString(),
+                restored.assetService.getUserAssets().toString());
+        Assertions.assertEquals(engine.userSnapshotService.getSnapshot(USER_A).orders().size(),
+                restored.userSnapshotService.getSnapshot(USER_A).orders().size());
+
+        // continue with same events, both engines must have same state:
+        for (int i = 0; i < 50; i++) {
+            Long user = USERS[i % USERS.length];
+            var buy = orderRequestEvent(user, Direction.BUY, random(r, 20000, 40000), random(r, 1, 5));
+            var sell = orderRequestEvent(user, Direction.SELL, random(r, 20000, 40000), random(r, 1, 5));
+            engine.processEvent(buy);
+            engine.processEvent(sell);
+            restored.processEvent(buy);
+            restored.processEvent(sell);
+        }
+        restored.validate();
+        var book = engine.matchEngineGroup.getEngine(MarketSymbol.DEFAULT.id()).getOrderBook(1000);
+        var restoredBook = restored.matchEngineGroup.getEngine(MarketSymbol.DEFAULT.id()).getOrderBook(1000);
+        assertItemsEquals(book.buy, restoredBook.buy);
+        assertItemsEquals(book.sell, restoredBook.sell);
+        Assertions.assertEquals(engine.assetService.getUserAssets().toString(),
+                restored.assetService.getUserAssets().toString());
+        Assertions.assertEquals(engine.orderService.getActiveOrders().size(), restored.orderService.getActiveOrders().size());
+    }
+
+    @Test
+    void testCancelledOrdersSaved() throws Exception {
+        var engine = createTradingEngine();
+        List<TradingEngineService.ClearedEntities> saved = new CopyOnWriteArrayList<>();
+        engine.dbSink = new RingBufferSink<>("test-db", 64, WaitStrategy.of("blocking"), 16, saved::addAll);
+        engine.dbSink.start();
+        try {
+            engine.processEvent(depositEvent(USER_A, bd("58000"), AssetEnum.USD));
+            engine.processEvent(orderRequestEvent(USER_A, Direction.BUY, bd("2207.33"), bd("1.2")));
+            long orderId = engine.orderService.getUserOrders(USER_A).get(0).id;
+            engine.processEvent(orderCancelEvent(USER_A, orderId));
+            for (int i = 0; i < 100 && saved.isEmpty(); i++) {
+                Thread.sleep(50);
+            }
+        } finally {
+            engine.dbSink.stop();
+        }
+        Assertions.assertEquals(1, saved.size());
+        Assertions.assertTrue(saved.get(0).matchDetails().isEmpty());
+        OrderEntity cancelled = saved.get(0).closedOrders().get(0);
+        Assertions.assertEquals(OrderStatus.FULLY_CANCELLED, cancelled.status);
+        Assertions.assertEquals(USER_A, cancelled.userId);
+    }
+
+    @Test
+    void testTransferAmountExceedsLedgerScale() {
+        var engine = createTradingEngine();
+        engine.processEvent(depositEvent(USER_A, bd("58000"), AssetEnum.USD));
+        // rejected without panic, and later events are still applied:
+        engine.processEvent(depositEvent(USER_A, bd("0.000000001"), AssetEnum.USD));
+        engine.processEvent(depositEvent(USER_A, bd("100"), AssetEnum.USD));
+        Assertions.assertEquals(this.currentSequenceId, engine.lastSequenceIds[0]);
+        Assertions.assertEquals(0, bd("58100").compareTo(engine.assetService.getAsset(USER_A, AssetEnum.USD).getAvailable()));
+    }
+
+    @Test
+    void testEvictZeroAccountsAfterSnapshot(@TempDir Path dir) throws Exception {
+        var engine = createTradingEngine(dir);
+        engine.engineSnapshotService = new EngineSnapshotService(engine.assetService, engine.orderService,
+                engine.matchEngineGroup, dir.toString(), 1);
+        engine.processEvent(depositEvent(USER_A, bd("58000"), AssetEnum.USD));
+        engine.processEvent(depositEvent(USER_C, bd("5.5"), AssetEnum.BTC));
+        var withdraw = createEvent(TransferEvent.class);
+        withdraw.fromUserId = USER_C;
+        withdraw.toUserId = UserType.DEBT.getInternalUserId();
+        withdraw.amount = bd("5.5");
+        withdraw.asset = AssetEnum.BTC;
+        withdraw.sufficient = true;
+        Assertions.assertEquals(3, engine.assetService.getUserCount());
+        Assertions.assertNotNull(engine.userSnapshotService.getSnapshot(USER_C));
+        engine.processMessages(List.of(withdraw));
+        Assertions.assertEquals(2, engine.assetService.getUserCount());
+        Assertions.assertTrue(engine.assetService.getAssets(USER_C).isEmpty());
+        // snapshot of evicted user is removed too:
+        Assertions.assertNull(engine.userSnapshotService.getSnapshot(USER_C));
+        Assertions.assertNotNull(engine.userSnapshotService.getSnapshot(USER_A));
+        // wait for snapshot written before temp dir is deleted:
+        for (int i = 0; i < 100 && !Files.exists(dir.resolve("snapshot-" + withdraw.sequenceId + ".bin")); i++) {
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    void testSequenceStreams(@TempDir Path dir) throws Exception {
+        var engine = createTradingEngine(dir);
+        engine.sequenceStreams = 2;
+        // each stream has its own previousId chain, and ids of all streams are issued in order:
+        var a1 = inStream(depositEvent(USER_A, bd("58000"), AssetEnum.USD), 0);
+        var c1 = inStream(depositEvent(USER_C, bd("5.5"), AssetEnum.BTC), 1);
+        var a2 = inStream(depositEvent(USER_A, bd("100"), AssetEnum.USD), 0);
+        var c2 = inStream(depositEvent(USER_C, bd("0.5"), AssetEnum.BTC), 1);
+        engine.processMessages(List.of(a1, c1, a2, c2));
+        // c2 waits until stream 0 is known to have nothing before it:
+        Assertions.assertEquals(c1.sequenceId, engine.lastSequenceIds[1]);
+        engine.processMessages(List.of(watermark(0)));
+        Assertions.assertEquals(a2.sequenceId, engine.lastSequenceIds[0]);
+        Assertions.assertEquals(c2.sequenceId, engine.lastSequenceIds[1]);
+        Assertions.assertEquals(0, bd("58100").compareTo(engine.assetService.getAsset(USER_A, AssetEnum.USD).getAvailable()));
+        Assertions.assertEquals(0, bd("6").compareTo(engine.assetService.getAsset(USER_C, AssetEnum.BTC).getAvailable()));
+
+        // duplicated event of a stream is skipped even if it is older than events of other streams:
+        engine.processEvent(c1);
+        Assertions.assertEquals(0, bd("6").compareTo(engine.assetService.getAsset(USER_C, AssetEnum.BTC).getAvailable()));
+
+        engine.engineSnapshotService.takeSnapshot(c2.sequenceId, engine.lastSequenceIds).get();
+        var restored = createTradingEngine(dir);
+        restored.sequenceStreams = 2;
+        restored.restoreSnapshot();
+        Assertions.assertArrayEquals(engine.lastSequenceIds, restored.lastSequenceIds);
+        var a3 = inStream(depositEvent(USER_A, bd("1"), AssetEnum.USD), 0);
+        restored.processMessages(List.of(a3, watermark(1)));
+        Assertions.assertEquals(a3.sequenceId, restored.lastSequenceIds[0]);
+        Assertions.assertEquals(0, bd("58101").compareTo(restored.assetService.getAsset(USER_A, AssetEnum.USD).getAvailable()));
+    }
+
+    @Test
+    void testCrossStreamArrivalOrder() {
+        var lot = MarketSymbol.parse("1:BTC/USD-LOT:BTC:USD:2:4");
+        List<AbstractEvent> stream0 = new ArrayList<>();
+        List<AbstractEvent> stream1 = new ArrayList<>();
+        var r = new Random(123456789);
+        for (int i = 0; i < 100; i++) {
+            Long user = USERS[i % USERS.length];
+            // deposits in stream 0 fund orders of symbol 1 in stream 1, and transfers compete with frozen orders:
+            stream0.add(inStream(depositEvent(user, random(r, 1000, 5000), i % 2 == 0 ? AssetEnum.USD : AssetEnum.BTC), 0));
+            var order = orderRequestEvent(user, i % 2 == 0 ? Direction.BUY : Direction.SELL, random(r, 20, 40), random(r, 1, 50));
+            order.symbolId = lot.id();
+            stream1.add(inStream(order, 1));
+            var transfer = depositEvent(USERS[(i + 1) % USERS.length], random(r, 100, 2000), i % 2 == 0 ? AssetEnum.USD : AssetEnum.BTC);
+            transfer.fromUserId = user;
+            transfer.sufficient = true;
+            stream0.add(inStream(transfer, 0));
+        }
+        stream0.add(watermark(0));
+        stream1.add(watermark(1));
+
+        // one engine receives stream 0 first, the other receives stream 1 first:
+        var first = createTradingEngine();
+        var second = createTradingEngine();
+        for (var engine : List.of(first, second)) {
+            engine.sequenceStreams = 2;
+            engine.matchEngineGroup.addSymbol(lot);
+        }
+        first.processMessages(stream0);
+        first.processMessages(stream1);
+        second.processMessages(stream1);
+        second.processMessages(stream0);
+
+        first.validate();
+        second.validate();
+        Assertions.assertArrayEquals(first.lastSequenceIds, second.lastSequenceIds);
+        Assertions.assertEquals(first.assetService.getUserAssets().toString(), second.assetService.getUserAssets().toString());
+        Assertions.assertEquals(first.orderService.getActiveOrders().toString(), second.orderService.getActiveOrders().toString());
+        var book = first.matchEngineGroup.getEngine(lot.id()).getOrderBook(1000);
+        var secondBook = second.matchEngineGroup.getEngine(lot.id()).getOrderBook(1000);
+        assertItemsEquals(book.buy, secondBook.buy);
+        assertItemsEquals(book.sell, secondBook.sell);
+        Assertions.assertFalse(book.buy.isEmpty() && book.sell.isEmpty());
+    }
+
+    Map<Integer, Long> lastIdOfStreams = new HashMap<>();
+
+    long lastIssuedId = 0;
+
+    /**
+     * Issue next id of stream as the sequencer does.
+     */
+    <T extends AbstractEvent> T inStream(T event, int streamId) {
+        event.streamId = streamId;
+        event.sequenceId = this.lastIssuedId = SequenceStreams.nextSequenceId(this.lastIssuedId, streamId);
+        Long previousId = lastIdOfStreams.put(streamId, event.sequenceId);
+        event.previousId = previousId == null ? 0 : previousId;
+        return event;
+    }
+
+    WatermarkEvent watermark(int streamId) {
+        var watermark = new WatermarkEvent();
+        watermark.streamId = streamId;
+        watermark.sequenceId = this.lastIssuedId;
+        watermark.previousId = lastIdOfStreams.getOrDefault(streamId, 0L);
+        return watermark;
+    }
+
+    void assertItemsEquals(List<OrderBookItemBean> expected, List<OrderBookItemBean> actual) {
+        Assertions.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assertions.assertEquals(0, expected.get(i).price.compareTo(actual.get(i).price));
+            Assertions.assertEquals(0, expected.get(i).quantity.compareTo(actual.get(i).quantity));
+        }
     }
 
     TradingEngineService createTradingEngine() {
+        return createTradingEngine(Path.of("snapshot"));
+    }
+
+    TradingEngineService createTradingEngine(Path snapshotDir) {
         var tradingEngine = new TradingEngineService();
-        var matchEngine = new MatchEngine();
+        var matchEngineGroup = new MatchEngineGroup();
         var assetService = new AssetService();
         var orderService = new OrderService(assetService);
         var clearingService = new ClearingService(assetService, orderService);
-        tradingEngine.matchEngine = matchEngine;
+        tradingEngine.matchEngineGroup = matchEngineGroup;
         tradingEngine.assetService = assetService;
         tradingEngine.orderService = orderService;
         tradingEngine.clearingService = clearingService;
+        tradingEngine.userSnapshotService = new UserSnapshotService(assetService, orderService);
+        tradingEngine.engineSnapshotService = new EngineSnapshotService(assetService, orderService, matchEngineGroup,
+                snapshotDir.toString(), 0);
         return tradingEngine;
     }
 
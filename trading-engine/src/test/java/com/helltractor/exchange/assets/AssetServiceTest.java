@@ -1,11 +1,16 @@
 package com.helltractor.exchange.assets;
 
 import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.jupiter.api.AfterEach;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -77,6 +82,7 @@ public class AssetServiceTest {
         assertThrows(RuntimeException.class, () -> {
             service.unfreeze(USER_A, AssetEnum.USD, new BigDecimal("3001"));
         });
+        assertBDEquals(3000, service.getAsset(USER_A, AssetEnum.USD).frozen);
     }
 
     @Test
@@ -95,6 +101,94 @@ public class AssetServiceTest {
         assertThrows(RuntimeException.class, () -> {
             service.transfer(Transfer.FROZEN_TO_AVAILABLE, USER_A, USER_B, AssetEnum.USD, new BigDecimal("1001"));
         });
+        assertBDEquals(1000, service.getAsset(USER_A, AssetEnum.USD).frozen);
+
+        // amount with more digits than ledger scale failed
+        assertThrows(RuntimeException.class, () -> {
+            service.transfer(Transfer.FROZEN_TO_AVAILABLE, USER_A, USER_B, AssetEnum.USD, new BigDecimal("0.000000001"));
+        });
+        assertBDEquals(1000, service.getAsset(USER_A, AssetEnum.USD).frozen);
+    }
+
+    @Test
+    void transferOverflow() {
+        BigDecimal large = new BigDecimal("90000000000");
+        service.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, DEBT, USER_A, AssetEnum.USD, large, false);
+        // credit of A would overflow, and debit of DEBT is not applied either:
+        assertFalse(service.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, DEBT, USER_A, AssetEnum.USD, large, false));
+        assertBDEquals("90000012300", service.getAsset(USER_A, AssetEnum.USD).available);
+        assertBDEquals("-90000057900", service.getAsset(DEBT, AssetEnum.USD).available);
+
+        // A available -> A frozen twice, frozen would overflow:
+        service.transfer(Transfer.AVAILABLE_TO_FROZEN, USER_A, USER_A, AssetEnum.USD, large);
+        service.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, USER_C, USER_A, AssetEnum.USD, large, false);
+        assertThrows(RuntimeException.class, () -> {
+            service.transfer(Transfer.AVAILABLE_TO_FROZEN, USER_A, USER_A, AssetEnum.USD, large);
+        });
+        assertBDEquals("90000012300", service.getAsset(USER_A, AssetEnum.USD).available);
+        assertBDEquals("90000000000", service.getAsset(USER_A, AssetEnum.USD).frozen);
+    }
+
+    @Test
+    void evictZeroAccounts() {
+        // C sends all BTC back:
+        service.transfer(Transfer.AVAILABLE_TO_AVAILABLE, USER_C, DEBT, AssetEnum.BTC, new BigDecimal("34"));
+        assertEquals(4, service.getUserCount());
+        assertEquals(1, service.evictZeroAccounts());
+        assertEquals(3, service.getUserCount());
+        assertNull(service.getAsset(USER_C, AssetEnum.BTC));
+        assertTrue(service.getAssets(USER_C).isEmpty());
+
+        // index of C is reused by a new user:
+        Long userD = 5000L;
+        service.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, USER_B, userD, AssetEnum.USD, new BigDecimal("0.01"), true);
+        assertBDEquals("0.01", service.getAsset(userD, AssetEnum.USD).available);
+        assertNull(service.getAsset(userD, AssetEnum.BTC));
+        assertEquals(0, service.evictZeroAccounts());
+    }
+
+    @Test
+    void manyUsers() {
+        // grow over several chunks:
+        int users = AssetService.CHUNK_USERS * 3 + 7;
+        for (long userId = 10000; userId < 10000 + users; userId++) {
+            service.transfer(Transfer.AVAILABLE_TO_AVAILABLE, USER_B, userId, AssetEnum.USD, new BigDecimal("0.5"));
+        }
+        assertEquals(4 + users, service.getUserCount());
+        assertBDEquals(45600 - users / 2.0 + "", service.getAsset(USER_B, AssetEnum.USD).available);
+        assertBDEquals("0.5", service.getAsset(10000L + users - 1, AssetEnum.USD).available);
+        // amount with more digits than ledger scale is rejected:
+        assertFalse(service.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, USER_B, USER_A, AssetEnum.USD,
+                new BigDecimal("0.000000001"), true));
+    }
+
+    @Test
+    void consistentReadsWhileWriting() throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> error = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (running.get()) {
+                // total of A never changes by freeze / unfreeze:
+                Map<AssetEnum, Asset> assets = service.getAssets(USER_A);
+                BigDecimal total = assets.get(AssetEnum.USD).getTotal();
+                if (total.compareTo(BigDecimal.valueOf(12300)) != 0) {
+                    error.set("Inconsistent read: " + assets);
+                }
+            }
+        });
+        reader.start();
+        long start = System.currentTimeMillis();
+        int n = 0;
+        while (System.currentTimeMillis() - start < 200) {
+            BigDecimal amount = BigDecimal.valueOf(n++ % 100 + 1);
+            service.tryFreeze(USER_A, AssetEnum.USD, amount);
+            // new users grow the ledger while reading:
+            service.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, USER_B, 100000L + n, AssetEnum.USD, BigDecimal.ONE, false);
+            service.unfreeze(USER_A, AssetEnum.USD, amount);
+        }
+        running.set(false);
+        reader.join();
+        assertNull(error.get());
     }
 
     /**
@@ -119,7 +213,7 @@ public class AssetServiceTest {
     void verify() {
         BigDecimal totalUSD = BigDecimal.ZERO;
         BigDecimal totalBTC = BigDecimal.ZERO;
-        for (Long userId : service.userAssets.keySet()) {
+        for (Long userId : service.getUserAssets().keySet()) {
             var assetUSD = service.getAsset(userId, AssetEnum.USD);
             if (assetUSD != null) {
                 totalUSD = totalUSD.add(assetUSD.available).add(assetUSD.frozen);
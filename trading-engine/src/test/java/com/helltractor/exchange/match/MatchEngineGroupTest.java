@@ -0,0 +1,116 @@
+package com.helltractor.exchange.match;
+
+import com.helltractor.exchange.enums.AssetEnum;
+import com.helltractor.exchange.enums.Direction;
+import com.helltractor.exchange.enums.OrderStatus;
+import com.helltractor.exchange.model.trade.OrderEntity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MatchEngineGroupTest {
+
+    static final MarketSymbol ETH_USD = new MarketSymbol(1, "ETH/USD", AssetEnum.BTC, AssetEnum.USD, new FixedPoint(2, 4));
+
+    MatchEngineGroup group;
+
+    long sequenceId = 0;
+
+    @BeforeEach
+    void setUp() {
+        group = new MatchEngineGroup();
+        group.addSymbol(ETH_USD);
+    }
+
+    @AfterEach
+    void tearDown() {
+        group.shutdown();
+    }
+
+    @Test
+    void processOrdersOfDistinctSymbols() {
+        group.processOrder(1, createOrder(MarketSymbol.DEFAULT, Direction.SELL, "100.1", "1"));
+        group.processOrder(2, createOrder(ETH_USD, Direction.SELL, "20.5", "3"));
+
+        OrderEntity o1 = createOrder(ETH_USD, Direction.BUY, "21", "2");
+        OrderEntity o2 = createOrder(MarketSymbol.DEFAULT, Direction.BUY, "101", "0.5");
+        List<MatchResult> results = group.processOrders(List.of(o1, o2));
+        assertEquals(2, results.size());
+        assertSame(o1, results.get(0).takerOrder);
+        assertSame(o2, results.get(1).takerOrder);
+
+        MatchEngine eth = group.getEngine(ETH_USD.id());
+        MatchEngine btc = group.getEngine(MarketSymbol.DEFAULT.id());
+        assertEquals(0, new BigDecimal("20.5").compareTo(eth.marketPrice));
+        assertEquals(0, new BigDecimal("100.1").compareTo(btc.marketPrice));
+        assertEquals(1, eth.sellBook.size());
+        assertEquals(1, btc.sellBook.size());
+        assertEquals(0, eth.buyBook.size());
+        assertEquals(0, btc.buyBook.size());
+    }
+
+    @Test
+    void processOrdersRepeatedly() {
+        for (int i = 0; i < 1000; i++) {
+            OrderEntity o1 = createOrder(ETH_USD, i % 2 == 0 ? Direction.SELL : Direction.BUY, "21", "1");
+            OrderEntity o2 = createOrder(MarketSymbol.DEFAULT, i % 2 == 0 ? Direction.BUY : Direction.SELL, "101", "1");
+            List<MatchResult> results = group.processOrders(List.of(o1, o2));
+            assertSame(o1, results.get(0).takerOrder);
+            assertSame(o2, results.get(1).takerOrder);
+            assertEquals(i % 2, results.get(0).size());
+            assertEquals(i % 2, results.get(1).size());
+        }
+        assertEquals(0, group.getEngine(ETH_USD.id()).buyBook.size() + group.getEngine(ETH_USD.id()).sellBook.size());
+    }
+
+    @Test
+    void processOrdersFailed() {
+        OrderEntity o1 = createOrder(ETH_USD, Direction.SELL, "21", "1");
+        OrderEntity o2 = createOrder(MarketSymbol.DEFAULT, Direction.BUY, "101", "1");
+        o1.direction = null;
+        assertThrows(RuntimeException.class, () -> group.processOrders(List.of(o1, o2)));
+        // workers are still usable after failure:
+        o1.direction = Direction.SELL;
+        assertEquals(2, group.processOrders(List.of(o1, createOrder(MarketSymbol.DEFAULT, Direction.SELL, "101", "1"))).size());
+    }
+
+    @Test
+    void unknownSymbol() {
+        assertNull(group.getEngine(99));
+        OrderEntity order = createOrder(MarketSymbol.DEFAULT, Direction.BUY, "1", "1");
+        order.symbolId = 99;
+        assertThrows(IllegalArgumentException.class, () -> group.processOrder(1, order));
+        assertThrows(IllegalArgumentException.class, () -> group.addSymbol(ETH_USD));
+    }
+
+    @Test
+    void symbolScaleExceedsLedger() {
+        // amount scale 4 + 5 cannot be held by ledger:
+        assertThrows(IllegalArgumentException.class, () -> MarketSymbol.parse("2:BTC/USD-FINE:BTC:USD:4:5"));
+        assertEquals(8, MarketSymbol.parse("2:BTC/USD-FINE:BTC:USD:4:4").fixedPoint().amountScale);
+    }
+
+    OrderEntity createOrder(MarketSymbol symbol, Direction direction, String price, String quantity) {
+        this.sequenceId++;
+        var order = new OrderEntity();
+        order.id = this.sequenceId << 4;
+        order.sequenceId = this.sequenceId;
+        order.symbolId = symbol.id();
+        order.direction = direction;
+        order.price = new BigDecimal(price);
+        order.quantity = order.unfilledQuantity = new BigDecimal(quantity);
+        order.status = OrderStatus.PENDING;
+        order.userId = 12345L;
+        order.createTime = order.updateTime = 1234567890000L + this.sequenceId;
+        symbol.fixedPoint().normalize(order);
+        return order;
+    }
+}
@@ -6,12 +6,15 @@ import com.helltractor.exchange.model.trade.OrderEntity;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 public class MatchEngineTest {
 
@@ -39,19 +42,51 @@ public class MatchEngineTest {
         List<MatchDetailRecord> matches = new ArrayList<>();
         for (OrderEntity order : orders) {
             MatchResult mr = this.engine.processOrder(order.sequenceId, order);
-            matches.addAll(mr.matchDetails);
+            for (int i = 0; i < mr.size(); i++) {
+                matches.add(mr.getMatchDetail(i));
+            }
         }
         assertArrayEquals(new MatchDetailRecord[]{
-            new MatchDetailRecord(bd("12305.39"), bd("0.11"), orders.get(2), orders.get(1)), //
-            new MatchDetailRecord(bd("12305.39"), bd("0.22"), orders.get(3), orders.get(1)), //
-            new MatchDetailRecord(bd("12300.21"), bd("0.11"), orders.get(3), orders.get(0)), //
-            new MatchDetailRecord(bd("12390.00"), bd("0.15"), orders.get(7), orders.get(6)), //
-            new MatchDetailRecord(bd("12400.00"), bd("0.10"), orders.get(7), orders.get(4)), //
-            new MatchDetailRecord(bd("12400.00"), bd("0.20"), orders.get(7), orders.get(5)), //
+            detail(bd("12305.39"), bd("0.11"), orders.get(2), orders.get(1)), //
+            detail(bd("12305.39"), bd("0.22"), orders.get(3), orders.get(1)), //
+            detail(bd("12300.21"), bd("0.11"), orders.get(3), orders.get(0)), //
+            detail(bd("12390.00"), bd("0.15"), orders.get(7), orders.get(6)), //
+            detail(bd("12400.00"), bd("0.10"), orders.get(7), orders.get(4)), //
+            detail(bd("12400.00"), bd("0.20"), orders.get(7), orders.get(5)), //
         }, matches.toArray(MatchDetailRecord[]::new));
         assertEquals(0, bd("12400.00").compareTo(engine.marketPrice));
     }
 
+    @Test
+    void processOrderWithoutAllocation() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        final int makers = 200;
+        final int warmUpRounds = 500;
+        final int measuredRounds = 10;
+        // warm up for a fixed number of rounds, then every measured sweep of a taker against all makers must not allocate:
+        for (int round = 0; round < warmUpRounds + measuredRounds; round++) {
+            for (int i = 0; i < makers; i++) {
+                this.engine.processOrder(this.sequenceId + 1, createOrder(Direction.SELL, "100." + (i % 50), "0.03"));
+            }
+            OrderEntity taker = createOrder(Direction.BUY, "101.00", "6");
+            this.engine.getOrderBookDelta();
+            long start = allocationBean.getThreadAllocatedBytes(threadId);
+            MatchResult result = this.engine.processOrder(taker.sequenceId, taker);
+            long allocated = allocationBean.getThreadAllocatedBytes(threadId) - start;
+            assertEquals(makers, result.size());
+            assertEquals(OrderStatus.FULLY_FILLED, taker.status);
+            if (round >= warmUpRounds) {
+                assertEquals(0, allocated, "steady-state match loop should not allocate in round " + round);
+            }
+        }
+    }
+
     OrderEntity createOrder(Direction Direction, String price, String quantity) {
         this.sequenceId++;
         var order = new OrderEntity();
@@ -63,9 +98,15 @@ public class MatchEngineTest {
         order.status = OrderStatus.PENDING;
         order.userId = USER_A;
         order.createTime = order.updateTime = 1234567890000L + this.sequenceId;
+        this.engine.fixedPoint.normalize(order);
         return order;
     }
 
+    MatchDetailRecord detail(BigDecimal price, BigDecimal quantity, OrderEntity takerOrder, OrderEntity makerOrder) {
+        return new MatchDetailRecord(this.engine.fixedPoint.toPriceUnits(price),
+                this.engine.fixedPoint.toQuantityUnits(quantity), takerOrder, makerOrder);
+    }
+
     BigDecimal bd(String s) {
         return new BigDecimal(s);
     }
@@ -0,0 +1,140 @@
+package com.helltractor.exchange.match;
+
+import com.helltractor.exchange.bean.OrderBookItemBean;
+import com.helltractor.exchange.enums.Direction;
+import com.helltractor.exchange.enums.OrderStatus;
+import com.helltractor.exchange.model.trade.OrderEntity;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OrderBookTest {
+
+    long sequenceId = 0;
+
+    @Test
+    void sellBookPriority() {
+        OrderBook book = new OrderBook(Direction.SELL);
+        OrderEntity o1 = createOrder(Direction.SELL, "100.20", "1");
+        OrderEntity o2 = createOrder(Direction.SELL, "100.10", "2");
+        OrderEntity o3 = createOrder(Direction.SELL, "100.1", "3");
+        assertTrue(book.add(o1));
+        assertTrue(book.add(o2));
+        assertTrue(book.add(o3));
+        assertFalse(book.add(o3));
+        // same price level for 100.10 and 100.1, FIFO inside level:
+        assertEquals(2, book.depth());
+        assertEquals(3, book.size());
+        assertEquals(List.of(o2, o3, o1), book.getOrders());
+        assertSame(o2, book.getFirst());
+    }
+
+    @Test
+    void buyBookPriority() {
+        OrderBook book = new OrderBook(Direction.BUY);
+        OrderEntity o1 = createOrder(Direction.BUY, "100.10", "1");
+        OrderEntity o2 = createOrder(Direction.BUY, "100.20", "2");
+        OrderEntity o3 = createOrder(Direction.BUY, "100.20", "3");
+        book.add(o1);
+        book.add(o2);
+        book.add(o3);
+        assertEquals(List.of(o2, o3, o1), book.getOrders());
+        assertSame(o2, book.getFirst());
+    }
+
+    @Test
+    void removeUpdatesBestLevel() {
+        OrderBook book = new OrderBook(Direction.BUY);
+        OrderEntity o1 = createOrder(Direction.BUY, "100.10", "1");
+        OrderEntity o2 = createOrder(Direction.BUY, "100.20", "2");
+        OrderEntity o3 = createOrder(Direction.BUY, "100.20", "3");
+        book.add(o1);
+        book.add(o2);
+        book.add(o3);
+        // remove from the middle of level:
+        assertTrue(book.remove(o2));
+        assertFalse(book.remove(o2));
+        assertFalse(book.exist(o2));
+        assertSame(o3, book.getFirst());
+        // remove last order of best level:
+        assertTrue(book.remove(o3));
+        assertEquals(1, book.depth());
+        assertSame(o1, book.getFirst());
+        assertTrue(book.remove(o1));
+        assertNull(book.getFirst());
+        assertEquals(0, book.size());
+    }
+
+    @Test
+    void orderBookByLevel() {
+        OrderBook book = new OrderBook(Direction.SELL);
+        book.add(createOrder(Direction.SELL, "100.30", "1"));
+        book.add(createOrder(Direction.SELL, "100.10", "2"));
+        book.add(createOrder(Direction.SELL, "100.20", "3"));
+        book.add(createOrder(Direction.SELL, "100.10", "4"));
+        List<OrderBookItemBean> items = book.getOrderBook(2);
+        assertEquals(2, items.size());
+        assertEquals(0, bd("100.10").compareTo(items.get(0).price));
+        assertEquals(0, bd("6").compareTo(items.get(0).quantity));
+        assertEquals(0, bd("100.20").compareTo(items.get(1).price));
+        assertEquals(0, bd("3").compareTo(items.get(1).quantity));
+    }
+
+    @Test
+    void levelChanges() {
+        OrderBook book = new OrderBook(Direction.BUY);
+        OrderEntity o1 = createOrder(Direction.BUY, "100.10", "1");
+        OrderEntity o2 = createOrder(Direction.BUY, "100.20", "2");
+        OrderEntity o3 = createOrder(Direction.BUY, "100.20", "3");
+        book.add(o1);
+        book.add(o2);
+        book.add(o3);
+        List<OrderBookItemBean> changes = new ArrayList<>();
+        assertTrue(book.drainChanges(changes));
+        assertEquals(2, changes.size());
+        assertFalse(book.drainChanges(new ArrayList<>()));
+
+        // partial fill o2, then remove o1:
+        book.fill(o2, 150);
+        o2.unfilledUnits -= 150;
+        book.remove(o1);
+        changes.clear();
+        assertTrue(book.drainChanges(changes));
+        assertEquals(2, changes.size());
+        assertEquals(0, bd("100.20").compareTo(changes.get(0).price));
+        assertEquals(0, bd("3.5").compareTo(changes.get(0).quantity));
+        assertEquals(0, bd("100.10").compareTo(changes.get(1).price));
+        assertEquals(0, changes.get(1).quantity.signum());
+
+        List<OrderBookItemBean> items = book.getOrderBook(10);
+        assertEquals(1, items.size());
+        assertEquals(0, bd("3.5").compareTo(items.get(0).quantity));
+    }
+
+    OrderEntity createOrder(Direction direction, String price, String quantity) {
+        this.sequenceId++;
+        var order = new OrderEntity();
+        order.id = this.sequenceId << 4;
+        order.sequenceId = this.sequenceId;
+        order.direction = direction;
+        order.price = bd(price);
+        order.quantity = order.unfilledQuantity = bd(quantity);
+        order.status = OrderStatus.PENDING;
+        order.userId = 12345L;
+        order.createTime = order.updateTime = 1234567890000L + this.sequenceId;
+        FixedPoint.DEFAULT.normalize(order);
+        return order;
+    }
+
+    BigDecimal bd(String s) {
+        return new BigDecimal(s);
+    }
+}
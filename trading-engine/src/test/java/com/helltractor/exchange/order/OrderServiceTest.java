@@ -0,0 +1,89 @@
+package com.helltractor.exchange.order;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.helltractor.exchange.assets.AssetService;
+import com.helltractor.exchange.assets.Transfer;
+import com.helltractor.exchange.enums.AssetEnum;
+import com.helltractor.exchange.enums.Direction;
+import com.helltractor.exchange.match.MarketSymbol;
+import com.helltractor.exchange.model.trade.OrderEntity;
+
+public class OrderServiceTest {
+
+    static final Long DEBT = 1L;
+    static final Long USER_A = 2000L;
+    static final Long USER_B = 3000L;
+
+    AssetService assetService;
+    OrderService service;
+    long sequenceId = 0;
+
+    @BeforeEach
+    public void setUp() {
+        assetService = new AssetService();
+        service = new OrderService(assetService);
+        assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, DEBT, USER_A, AssetEnum.USD, new BigDecimal("1000000"), false);
+        assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, DEBT, USER_B, AssetEnum.BTC, new BigDecimal("1000"), false);
+    }
+
+    @Test
+    void createAndRemoveOrders() {
+        List<OrderEntity> orders = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            orders.add(createOrder(USER_A, Direction.BUY, "100.5", "1"));
+            orders.add(createOrder(USER_B, Direction.SELL, "101", "2"));
+        }
+        assertEquals(200, service.getActiveOrders().size());
+        assertEquals(100, service.getUserOrders(USER_A).size());
+        assertEquals(2, service.getUserCount());
+        for (OrderEntity order : orders) {
+            assertSame(order, service.getOrder(order.id));
+        }
+        // remove all orders of A, index of A is freed:
+        for (OrderEntity order : orders) {
+            if (order.userId.equals(USER_A)) {
+                service.removeOrder(order.id);
+            }
+        }
+        assertTrue(service.getUserOrders(USER_A).isEmpty());
+        assertEquals(1, service.getUserCount());
+        assertEquals(100, service.getActiveOrders().size());
+        for (OrderEntity order : orders) {
+            if (order.userId.equals(USER_A)) {
+                assertNull(service.getOrder(order.id));
+            } else {
+                assertSame(order, service.getOrder(order.id));
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> service.removeOrder(orders.get(0).id));
+    }
+
+    @Test
+    void createOrderFailed() {
+        // not enough USD:
+        assertNull(createOrder(USER_A, Direction.BUY, "10000", "101"));
+        // not a multiple of tick:
+        assertNull(createOrder(USER_B, Direction.SELL, "101.001", "1"));
+        assertEquals(0, service.getUserCount());
+        assertNotNull(createOrder(USER_B, Direction.SELL, "101.01", "1"));
+        assertEquals(1, service.getUserCount());
+    }
+
+    OrderEntity createOrder(Long userId, Direction direction, String price, String quantity) {
+        this.sequenceId++;
+        return service.createOrder(MarketSymbol.DEFAULT, this.sequenceId, 1234567890000L + this.sequenceId,
+                this.sequenceId << 4, userId, direction, new BigDecimal(price), new BigDecimal(quantity));
+    }
+}
@@ -0,0 +1,89 @@
+package com.helltractor.exchange.sink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class RingBufferTest {
+
+    @Test
+    void testInvalidBufferSize() {
+        assertThrows(IllegalArgumentException.class, () -> new RingBuffer<>(1000, new BlockingWaitStrategy()));
+    }
+
+    @Test
+    void testDrainInBatches() throws InterruptedException {
+        RingBuffer<Long> ringBuffer = new RingBuffer<>(8, new BusySpinWaitStrategy());
+        for (long i = 0; i < 5; i++) {
+            ringBuffer.publish(i);
+        }
+        List<Long> list = new ArrayList<>();
+        assertEquals(3, ringBuffer.drainTo(list, 3));
+        assertEquals(2, ringBuffer.drainTo(list, 3));
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L), list);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "blocking", "yielding", "busy-spin" })
+    void testProducerAndConsumer(String strategy) throws InterruptedException {
+        final long total = 1_000_000;
+        // small buffer so that producer wraps around and waits for consumer
+        RingBuffer<Long> ringBuffer = new RingBuffer<>(64, WaitStrategy.of(strategy));
+        AtomicLong received = new AtomicLong();
+        AtomicReference<String> error = new AtomicReference<>();
+        Thread consumer = new Thread(() -> {
+            List<Long> batch = new ArrayList<>();
+            long expected = 0;
+            try {
+                while (expected < total) {
+                    ringBuffer.drainTo(batch, 16);
+                    for (Long value : batch) {
+                        if (value != expected) {
+                            error.set("expected " + expected + " but " + value);
+                        }
+                        expected++;
+                    }
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                error.set("interrupted");
+            }
+            received.set(expected);
+        });
+        consumer.start();
+        for (long i = 0; i < total; i++) {
+            ringBuffer.publish(i);
+        }
+        consumer.join(10_000);
+        assertNull(error.get());
+        assertEquals(total, received.get());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "blocking", "yielding", "busy-spin" })
+    void testInterruptWaitingConsumer(String strategy) throws InterruptedException {
+        RingBuffer<Long> ringBuffer = new RingBuffer<>(8, WaitStrategy.of(strategy));
+        AtomicReference<Boolean> interrupted = new AtomicReference<>(false);
+        Thread consumer = new Thread(() -> {
+            try {
+                ringBuffer.drainTo(new ArrayList<>(), 8);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+        });
+        consumer.start();
+        Thread.sleep(20);
+        consumer.interrupt();
+        consumer.join(1000);
+        assertTrue(interrupted.get());
+    }
+}
@@ -0,0 +1,65 @@
+package com.helltractor.exchange.snapshot;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.helltractor.exchange.assets.AssetService;
+import com.helltractor.exchange.assets.Transfer;
+import com.helltractor.exchange.enums.AssetEnum;
+import com.helltractor.exchange.enums.Direction;
+import com.helltractor.exchange.enums.OrderStatus;
+import com.helltractor.exchange.match.MarketSymbol;
+import com.helltractor.exchange.match.MatchEngineGroup;
+import com.helltractor.exchange.model.trade.OrderEntity;
+import com.helltractor.exchange.order.OrderService;
+
+public class EngineSnapshotServiceTest {
+
+    static final Long DEBT = 1L;
+    static final Long USER_A = 2000L;
+    static final Long USER_B = 3000L;
+
+    AssetService assetService = new AssetService();
+
+    OrderService orderService = new OrderService(assetService);
+
+    EngineSnapshotService createService(Path dir, AssetService assetService, OrderService orderService) {
+        return new EngineSnapshotService(assetService, orderService, new MatchEngineGroup(), dir.toString(), 0);
+    }
+
+    @Test
+    void testWriteCopiedState(@TempDir Path dir) throws Exception {
+        this.assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, DEBT, USER_A, AssetEnum.USD,
+                new BigDecimal("1000"), false);
+        OrderEntity order = this.orderService.createOrder(MarketSymbol.DEFAULT, 1, 1000, 1L, USER_A, Direction.BUY,
+                new BigDecimal("100"), new BigDecimal("2"));
+        assertNotNull(order);
+        order.status = OrderStatus.PENDING;
+        EngineSnapshotService service = createService(dir, this.assetService, this.orderService);
+        EngineSnapshotService.State state = service.copyState(1, new long[]{1, 0});
+
+        // engine keeps changing before the copy is encoded:
+        this.assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, DEBT, USER_B, AssetEnum.BTC,
+                new BigDecimal("5"), false);
+        this.assetService.transfer(Transfer.FROZEN_TO_AVAILABLE, USER_A, USER_A, AssetEnum.USD, new BigDecimal("200"));
+        this.orderService.removeOrder(order.id);
+        order.unfilledUnits = 0;
+        service.write(1, service.encode(state));
+
+        AssetService restoredAssets = new AssetService();
+        OrderService restoredOrders = new OrderService(restoredAssets);
+        long[] streamSequenceIds = new long[2];
+        assertEquals(1, createService(dir, restoredAssets, restoredOrders).restore(streamSequenceIds));
+        assertEquals(1, streamSequenceIds[0]);
+        assertEquals(0, new BigDecimal("800").compareTo(restoredAssets.getAsset(USER_A, AssetEnum.USD).getAvailable()));
+        assertEquals(0, new BigDecimal("200").compareTo(restoredAssets.getAsset(USER_A, AssetEnum.USD).getFrozen()));
+        assertEquals(0, restoredAssets.getAssets(USER_B).size());
+        assertEquals(1, restoredOrders.getActiveOrders().size());
+        assertEquals(order.quantityUnits, restoredOrders.getOrder(order.id).unfilledUnits);
+    }
+}
@@ -0,0 +1,123 @@
+package com.helltractor.exchange.store;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+import com.helltractor.exchange.message.event.AbstractEvent;
+import com.helltractor.exchange.message.event.TransferEvent;
+import com.helltractor.exchange.message.event.WatermarkEvent;
+import com.helltractor.exchange.messaging.SequenceStreams;
+
+public class EventMergerTest {
+
+    // all issued events, as stored in db
+    List<AbstractEvent> stored = new ArrayList<>();
+
+    Map<Integer, Long> lastIdOfStreams = new HashMap<>();
+
+    long lastIssuedId = 0;
+
+    AbstractEvent event(int streamId) {
+        TransferEvent event = new TransferEvent();
+        event.streamId = streamId;
+        event.sequenceId = this.lastIssuedId = SequenceStreams.nextSequenceId(this.lastIssuedId, streamId);
+        Long previousId = this.lastIdOfStreams.put(streamId, event.sequenceId);
+        event.previousId = previousId == null ? 0 : previousId;
+        this.stored.add(event);
+        return event;
+    }
+
+    WatermarkEvent watermark(int streamId) {
+        WatermarkEvent watermark = new WatermarkEvent();
+        watermark.streamId = streamId;
+        watermark.sequenceId = this.lastIssuedId;
+        watermark.previousId = this.lastIdOfStreams.getOrDefault(streamId, 0L);
+        return watermark;
+    }
+
+    EventMerger merger(int streams) {
+        return new EventMerger(streams, new long[streams], (streamId, lastEventId) -> new EventStream(
+                (last, limit) -> this.stored.stream()
+                        .filter(e -> e.streamId == streamId && e.sequenceId > last).limit(limit).toList(),
+                lastEventId, 2, 1));
+    }
+
+    List<Long> drain(EventMerger merger) {
+        List<Long> ids = new ArrayList<>();
+        AbstractEvent event;
+        while ((event = merger.poll()) != null) {
+            ids.add(event.sequenceId);
+        }
+        return ids;
+    }
+
+    @Test
+    void testMergeInSequenceOrder() {
+        AbstractEvent a1 = event(0);
+        AbstractEvent b1 = event(1);
+        AbstractEvent b2 = event(1);
+        AbstractEvent a2 = event(0);
+        EventMerger merger = merger(2);
+        merger.offer(b1);
+        merger.offer(b2);
+        // stream 0 may still deliver a smaller id:
+        assertNull(merger.poll());
+        merger.offer(a1);
+        merger.offer(a2);
+        assertEquals(List.of(a1.sequenceId, b1.sequenceId, b2.sequenceId), drain(merger));
+        // a2 is released by watermark of stream 1:
+        merger.offer(watermark(1));
+        assertEquals(List.of(a2.sequenceId), drain(merger));
+    }
+
+    @Test
+    void testSkipDuplicated() {
+        AbstractEvent a1 = event(0);
+        AbstractEvent a2 = event(0);
+        EventMerger merger = merger(1);
+        merger.offer(a1);
+        merger.offer(a2);
+        merger.offer(a1);
+        assertEquals(List.of(a1.sequenceId, a2.sequenceId), drain(merger));
+        merger.offer(a2);
+        assertNull(merger.poll());
+    }
+
+    @Test
+    void testReplayLostEvents() {
+        List<AbstractEvent> events = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            events.add(event(i % 2));
+        }
+        EventMerger merger = merger(2);
+        // events before the last of each stream are lost:
+        merger.offer(events.get(9));
+        merger.offer(events.get(8));
+        // the last event of stream 1 waits for stream 0:
+        assertEquals(events.subList(0, 9).stream().map(e -> e.sequenceId).toList(), drain(merger));
+
+        // lost events before watermark are replayed too:
+        AbstractEvent lost = event(0);
+        merger.offer(watermark(0));
+        merger.offer(watermark(1));
+        assertEquals(List.of(events.get(9).sequenceId, lost.sequenceId), drain(merger));
+    }
+
+    @Test
+    void testLostEventsNotFound() {
+        AbstractEvent a1 = event(0);
+        this.stored.clear();
+        AbstractEvent a2 = event(0);
+        EventMerger merger = merger(1);
+        merger.offer(a2);
+        assertThrows(IllegalStateException.class, merger::poll);
+        assertEquals(0, a1.previousId);
+    }
+}
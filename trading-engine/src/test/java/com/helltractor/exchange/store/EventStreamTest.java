@@ -0,0 +1,83 @@
+package com.helltractor.exchange.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.helltractor.exchange.message.event.AbstractEvent;
+import com.helltractor.exchange.message.event.TransferEvent;
+
+public class EventStreamTest {
+
+    // simulate table of events with sequenceId 1..total
+    EventStream.PageLoader loader(long total, AtomicInteger queries) {
+        return (lastEventId, limit) -> {
+            queries.incrementAndGet();
+            List<AbstractEvent> events = new ArrayList<>();
+            for (long id = lastEventId + 1; id <= total && events.size() < limit; id++) {
+                TransferEvent event = new TransferEvent();
+                event.sequenceId = id;
+                event.previousId = id - 1;
+                events.add(event);
+            }
+            return events;
+        };
+    }
+
+    @Test
+    void testStreamAllEvents() {
+        AtomicInteger queries = new AtomicInteger();
+        long last = 100;
+        try (EventStream stream = new EventStream(loader(250_000, queries), last, 1000, 2)) {
+            while (stream.hasNext()) {
+                AbstractEvent event = stream.next();
+                assertEquals(last, event.previousId);
+                last = event.sequenceId;
+            }
+        }
+        // no row limit
+        assertEquals(250_000, last);
+        // keyset pages, the last one is not full
+        assertEquals(250, queries.get());
+    }
+
+    @Test
+    void testEmptyStream() {
+        AtomicInteger queries = new AtomicInteger();
+        try (EventStream stream = new EventStream(loader(10, queries), 10, 1000, 2)) {
+            assertFalse(stream.hasNext());
+            assertFalse(stream.hasNext());
+        }
+    }
+
+    @Test
+    void testLoaderError() {
+        try (EventStream stream = new EventStream((lastEventId, limit) -> {
+            throw new IllegalStateException("db down");
+        }, 0, 1000, 2)) {
+            assertThrows(IllegalStateException.class, stream::hasNext);
+            assertFalse(stream.hasNext());
+        }
+    }
+
+    @Test
+    void testCloseEarly() throws InterruptedException {
+        AtomicInteger queries = new AtomicInteger();
+        EventStream stream = new EventStream(loader(Long.MAX_VALUE, queries), 0, 10, 2);
+        assertTrue(stream.hasNext());
+        assertEquals(1, stream.next().sequenceId);
+        stream.close();
+        Thread.sleep(50);
+        int loaded = queries.get();
+        Thread.sleep(50);
+        // prefetch thread stopped and memory is bounded by prefetch pages
+        assertEquals(loaded, queries.get());
+        assertTrue(loaded <= 4);
+    }
+}
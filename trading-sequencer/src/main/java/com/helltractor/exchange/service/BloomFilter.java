@@ -0,0 +1,62 @@
+package com.helltractor.exchange.service;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Bloom filter of strings. Not thread-safe.
+ */
+class BloomFilter {
+
+    private final long[] bits;
+
+    private final long bitSize;
+
+    private final int hashes;
+
+    BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Invalid expected insertions or false positive rate.");
+        }
+        // m = -n * ln(p) / (ln2)^2, k = m / n * ln2
+        long m = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bits = new long[(int) ((m + 63) >>> 6)];
+        this.bitSize = (long) this.bits.length << 6;
+        this.hashes = Math.max(1, (int) Math.round((double) m / expectedInsertions * Math.log(2)));
+    }
+
+    void put(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= this.hashes; i++) {
+            long index = ((h1 + (long) i * h2) & Long.MAX_VALUE) % this.bitSize;
+            this.bits[(int) (index >>> 6)] |= 1L << index;
+        }
+    }
+
+    boolean mightContain(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= this.hashes; i++) {
+            long index = ((h1 + (long) i * h2) & Long.MAX_VALUE) % this.bitSize;
+            if ((this.bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 64位FNV-1a，再做一次混合使高低32位都均匀
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
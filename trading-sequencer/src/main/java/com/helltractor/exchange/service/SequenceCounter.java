@@ -0,0 +1,28 @@
+package com.helltractor.exchange.service;
+
+import com.helltractor.exchange.messaging.SequenceStreams;
+
+/**
+ * Last issued sequence id shared by all streams, so that ids increase in the order they are issued across streams.
+ * The engine merges streams by sequenceId, see WatermarkEvent.
+ */
+class SequenceCounter {
+
+    private long lastIssuedId;
+
+    SequenceCounter(long lastIssuedId) {
+        this.lastIssuedId = lastIssuedId;
+    }
+
+    /**
+     * Issue next sequence id of stream.
+     */
+    synchronized long next(int streamId) {
+        this.lastIssuedId = SequenceStreams.nextSequenceId(this.lastIssuedId, streamId);
+        return this.lastIssuedId;
+    }
+
+    synchronized long lastIssuedId() {
+        return this.lastIssuedId;
+    }
+}
@@ -1,18 +1,25 @@
 package com.helltractor.exchange.service;
 
+import com.helltractor.exchange.journal.JournalRecord;
 import com.helltractor.exchange.message.event.AbstractEvent;
 import com.helltractor.exchange.messaging.MessageTypes;
 import com.helltractor.exchange.model.trade.EventEntity;
 import com.helltractor.exchange.model.trade.UniqueEventEntity;
 import com.helltractor.exchange.support.AbstractDbService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Process events as batch.
@@ -21,7 +28,96 @@ import java.util.concurrent.atomic.AtomicLong;
 @Transactional(rollbackFor = Throwable.class)
 public class SequenceHandler extends AbstractDbService {
 
-    private long lastTimestamp = 0;
+    // IN clauses of unique id query indexed by log2 of placeholder count
+    private static final String[] UNIQUE_ID_IN_CLAUSES = new String[31];
+
+    @Autowired
+    SequenceJournal sequenceJournal;
+
+    @Value("${exchange.sequence.unique.recent-size:100000}")
+    private int uniqueRecentSize = 100000;
+
+    @Value("${exchange.sequence.unique.expected-ids:10000000}")
+    private long uniqueExpectedIds = 10000000;
+
+    @Value("${exchange.sequence.unique.false-positive-rate:0.001}")
+    private double uniqueFalsePositiveRate = 0.001;
+
+    @Value("${exchange.sequence.unique.retention-hours:168}")
+    private long uniqueRetentionHours = 168;
+
+    @Value("${exchange.sequence.unique.page-size:10000}")
+    private int uniquePageSize = 10000;
+
+    UniqueIdFilter uniqueIdFilter;
+
+    /**
+     * Load unique ids from database into filter. Must be called before sequencing.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void loadUniqueIds() {
+        long start = System.currentTimeMillis();
+        UniqueIdFilter filter = new UniqueIdFilter(uniqueExpectedIds, uniqueFalsePositiveRate, uniqueRecentSize);
+        long count = scanUniqueIds(filter::load);
+        // 最近的id放入LRU，按时间从旧到新加入
+        List<UniqueEventEntity> recent = dataBase.select("uniqueId", "createTime").from(UniqueEventEntity.class)
+                .orderBy("createTime").desc().limit(uniqueRecentSize).list();
+        Collections.reverse(recent);
+        for (UniqueEventEntity unique : recent) {
+            filter.add(unique.uniqueId, unique.createTime);
+        }
+        this.uniqueIdFilter = filter;
+        logger.info("loaded {} unique ids in {} ms.", count, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Delete unique ids older than retention, then rebuild bloom filter from remaining ids. Each delete commits
+     * separately so that sequencing is not blocked.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void purgeUniqueIds() {
+        long start = System.currentTimeMillis();
+        final long cutoff = start - TimeUnit.HOURS.toMillis(uniqueRetentionHours);
+        final String sql = "DELETE FROM " + dataBase.getTable(UniqueEventEntity.class)
+                + " WHERE createTime < ? LIMIT ?";
+        long deleted = 0;
+        int n;
+        do {
+            n = dataBase.getJdbcTemplate().update(sql, cutoff, uniquePageSize);
+            deleted += n;
+        } while (n == uniquePageSize);
+        if (deleted == 0) {
+            return;
+        }
+        UniqueIdFilter filter = this.uniqueIdFilter;
+        filter.startRebuild();
+        try {
+            long count = scanUniqueIds(filter::rebuild);
+            filter.finishRebuild(cutoff);
+            logger.info("purged {} unique ids, rebuilt filter of {} ids in {} ms.", deleted, count,
+                    System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            filter.cancelRebuild();
+            throw e;
+        }
+    }
+
+    private long scanUniqueIds(Consumer<String> consumer) {
+        long count = 0;
+        String last = "";
+        while (true) {
+            List<UniqueEventEntity> page = dataBase.select("uniqueId").from(UniqueEventEntity.class)
+                    .where("uniqueId > ?", last).orderBy("uniqueId").limit(uniquePageSize).list();
+            for (UniqueEventEntity unique : page) {
+                consumer.accept(unique.uniqueId);
+            }
+            count += page.size();
+            if (page.size() < uniquePageSize) {
+                return count;
+            }
+            last = page.get(page.size() - 1).uniqueId;
+        }
+    }
 
     public long getMaxSequenceId() {
         EventEntity last = dataBase.from(EventEntity.class).orderBy("sequenceId").desc().first();
@@ -29,22 +125,35 @@ public class SequenceHandler extends AbstractDbService {
             logger.info("no max sequenceId found. set max sequenceId to 0.");
             return 0;
         }
-        this.lastTimestamp = last.createTime;
-        logger.info("find max sequenceId = {}, last timestamp = {}", last.sequenceId, this.lastTimestamp);
+        logger.info("find max sequenceId = {}", last.sequenceId);
         return last.sequenceId;
     }
 
     /**
-     * Set sequence for each message, persist into database as batch.
+     * Load last state of stream. New ids of stream are issued by counter which starts from max sequenceId.
+     */
+    public SequenceStream loadStream(int streamId, SequenceCounter counter) {
+        EventEntity last = dataBase.from(EventEntity.class).where("streamId = ?", streamId).orderBy("sequenceId")
+                .desc().first();
+        SequenceStream stream = last == null ? new SequenceStream(streamId, counter, 0, 0)
+                : new SequenceStream(streamId, counter, last.sequenceId, last.createTime);
+        logger.info("load sequence stream: {}", stream);
+        return stream;
+    }
+
+    /**
+     * Set sequence for each message of stream, and serialize into entities which are committed later.
      */
-    public List<AbstractEvent> sequenceMessages(final MessageTypes messageTypes, final AtomicLong sequence,
+    @Transactional(readOnly = true)
+    public SequencedBatch sequenceMessages(final MessageTypes messageTypes, final SequenceStream stream,
             final List<AbstractEvent> messages) {
         final long timestamp = System.currentTimeMillis();
-        if (timestamp < this.lastTimestamp) {
-            logger.warn("[Sequence] current time {} is turned back from {}!", timestamp, this.lastTimestamp);
+        if (timestamp < stream.lastTimestamp) {
+            logger.warn("[Sequence] current time {} is turned back from {}!", timestamp, stream.lastTimestamp);
         } else {
-            this.lastTimestamp = timestamp;
+            stream.lastTimestamp = timestamp;
         }
+        final Set<String> existUniqueIds = findExistUniqueIds(messages);
         List<UniqueEventEntity> uniques = null;
         Set<String> uniqueKeys = null;
         List<AbstractEvent> sequenceMessages = new ArrayList<>(messages.size());
@@ -54,8 +163,7 @@ public class SequenceHandler extends AbstractDbService {
             final String uniqueId = message.uniqueId;
             // check uniqueId
             if (uniqueId != null) {
-                if ((uniqueKeys != null && uniqueKeys.contains(uniqueId))
-                        || dataBase.fetch(UniqueEventEntity.class, uniqueId) != null) {
+                if ((uniqueKeys != null && uniqueKeys.contains(uniqueId)) || existUniqueIds.contains(uniqueId)) {
                     logger.warn("ignore processed unique message: {}", message);
                     continue;
                 }
@@ -73,12 +181,15 @@ public class SequenceHandler extends AbstractDbService {
                 logger.info("unique event {} sequenced.", uniqueId);
             }
 
-            final long previousId = sequence.get();
-            final long currentId = sequence.incrementAndGet();
+            final long previousId = stream.lastSequenceId;
+            final long currentId = stream.counter.next(stream.streamId);
+            stream.lastSequenceId = currentId;
+            stream.lastWatermark = currentId;
             // 先设置message的sequenceId / previousId / createTime，再序列化并落库
             message.sequenceId = currentId;
             message.previousId = previousId;
-            message.createTime = this.lastTimestamp;
+            message.streamId = stream.streamId;
+            message.createTime = stream.lastTimestamp;
             // 如果此消息关联了UniqueEvent，给UniqueEvent加上相同的sequenceId
             if (unique != null) {
                 unique.sequenceId = message.sequenceId;
@@ -87,17 +198,131 @@ public class SequenceHandler extends AbstractDbService {
             EventEntity event = new EventEntity();
             event.previousId = previousId;
             event.sequenceId = currentId;
+            event.streamId = stream.streamId;
             event.data = messageTypes.serialize(message);
-            event.createTime = this.lastTimestamp;
+            event.createTime = stream.lastTimestamp;
             events.add(event);
             // will send later
             sequenceMessages.add(message);
         }
 
         if (uniques != null) {
+            // 加入过滤器，使尚未提交的批次也能去重；提交失败时定序服务会退出，重启后从数据库重新加载
+            for (UniqueEventEntity unique : uniques) {
+                this.uniqueIdFilter.add(unique.uniqueId, unique.createTime);
+            }
+        }
+        return new SequencedBatch(sequenceMessages, uniques == null ? List.of() : uniques, events);
+    }
+
+    /**
+     * Persist sequenced batches in one transaction.
+     */
+    public void commitBatches(List<SequencedBatch> batches) {
+        List<UniqueEventEntity> uniques = new ArrayList<>();
+        List<EventEntity> events = new ArrayList<>();
+        for (SequencedBatch batch : batches) {
+            uniques.addAll(batch.uniques);
+            events.addAll(batch.events);
+        }
+        if (!uniques.isEmpty()) {
             dataBase.insert(uniques);
         }
-        dataBase.insert(events);
-        return sequenceMessages;
+        if (!events.isEmpty()) {
+            dataBase.insert(events);
+        }
+    }
+
+    /**
+     * Copy journal records into database. Records may be archived again after restart, so duplicates are ignored.
+     */
+    public void archiveRecords(List<JournalRecord> records) {
+        List<UniqueEventEntity> uniques = new ArrayList<>();
+        List<EventEntity> events = new ArrayList<>(records.size());
+        for (JournalRecord record : records) {
+            if (record.uniqueId() != null) {
+                UniqueEventEntity unique = new UniqueEventEntity();
+                unique.uniqueId = record.uniqueId();
+                unique.sequenceId = record.event().sequenceId;
+                unique.createTime = record.event().createTime;
+                uniques.add(unique);
+            }
+            events.add(record.event());
+        }
+        if (!uniques.isEmpty()) {
+            dataBase.insertIgnore(uniques);
+        }
+        dataBase.insertIgnore(events);
+    }
+
+    /**
+     * Find unique ids of messages which are already sequenced. Ids missed by bloom filter are new, ids in LRU are
+     * duplicated, and the rest are looked up by one query.
+     */
+    Set<String> findExistUniqueIds(List<AbstractEvent> messages) {
+        Set<String> exists = null;
+        List<String> candidates = null;
+        for (AbstractEvent message : messages) {
+            final String uniqueId = message.uniqueId;
+            if (uniqueId == null || !this.uniqueIdFilter.mightExist(uniqueId)) {
+                continue;
+            }
+            if (this.uniqueIdFilter.isRecent(uniqueId)
+                    || (this.sequenceJournal.isEnabled() && this.sequenceJournal.isUnarchived(uniqueId))) {
+                if (exists == null) {
+                    exists = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+                }
+                exists.add(uniqueId);
+            } else {
+                if (candidates == null) {
+                    candidates = new ArrayList<>();
+                }
+                candidates.add(uniqueId);
+            }
+        }
+        if (candidates != null) {
+            if (exists == null) {
+                exists = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            }
+            exists.addAll(selectUniqueIds(candidates));
+        }
+        return exists == null ? Set.of() : exists;
+    }
+
+    /**
+     * Select unique ids of candidates which exist in database by one query.
+     */
+    List<String> selectUniqueIds(List<String> candidates) {
+        Object[] args = padArgs(candidates);
+        List<UniqueEventEntity> found = dataBase.select("uniqueId").from(UniqueEventEntity.class)
+                .where(uniqueIdInClause(args.length), args).list();
+        List<String> uniqueIds = new ArrayList<>(found.size());
+        for (UniqueEventEntity unique : found) {
+            uniqueIds.add(unique.uniqueId);
+        }
+        return uniqueIds;
+    }
+
+    /**
+     * Pad ids to a power of two by repeating the last id, so that the database only sees a few distinct statements
+     * instead of one per batch size.
+     */
+    static Object[] padArgs(List<String> ids) {
+        int size = ids.size() == 1 ? 1 : Integer.highestOneBit(ids.size() - 1) << 1;
+        Object[] args = new Object[size];
+        for (int i = 0; i < size; i++) {
+            args[i] = ids.get(Math.min(i, ids.size() - 1));
+        }
+        return args;
+    }
+
+    static String uniqueIdInClause(int size) {
+        int index = Integer.numberOfTrailingZeros(size);
+        String clause = UNIQUE_ID_IN_CLAUSES[index];
+        if (clause == null) {
+            clause = "uniqueId IN (" + String.join(", ", Collections.nCopies(size, "?")) + ")";
+            UNIQUE_ID_IN_CLAUSES[index] = clause;
+        }
+        return clause;
     }
 }
@@ -0,0 +1,182 @@
+package com.helltractor.exchange.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.helltractor.exchange.journal.EventJournal;
+import com.helltractor.exchange.journal.JournalRecord;
+import com.helltractor.exchange.model.trade.EventEntity;
+import com.helltractor.exchange.model.trade.UniqueEventEntity;
+import com.helltractor.exchange.support.LoggerSupport;
+
+/**
+ * Optional journal mode of sequencer: batches are committed into a local memory-mapped journal, and an archive thread
+ * copies journal into database asynchronously. Archived segments are deleted.
+ */
+@Component
+public class SequenceJournal extends LoggerSupport {
+
+    @Value("${exchange.sequence.journal.dir:}")
+    private String dir = "";
+
+    @Value("${exchange.sequence.journal.segment-size-mb:64}")
+    private int segmentSizeMb = 64;
+
+    @Value("${exchange.sequence.journal.archive-interval-ms:100}")
+    private long archiveIntervalMs = 100;
+
+    @Value("${exchange.sequence.journal.archive-batch-size:5000}")
+    private int archiveBatchSize = 5000;
+
+    private EventJournal journal;
+
+    private Consumer<List<JournalRecord>> archiver;
+
+    // 已写入日志但尚未归档的uniqueId，数据库中查不到
+    private final Map<String, Boolean> unarchivedUniqueIds = new ConcurrentHashMap<>();
+
+    // 下一条待归档记录的位置
+    private long archiveSegment = -1;
+    private int archiveOffset = 0;
+
+    private Thread archiveThread;
+
+    private volatile boolean running = false;
+
+    public boolean isEnabled() {
+        return !this.dir.isEmpty();
+    }
+
+    /**
+     * Open journal and archive all records left by last run, so that database is complete before stream states are
+     * loaded.
+     */
+    public void open(Consumer<List<JournalRecord>> archiver) {
+        this.archiver = archiver;
+        try {
+            this.journal = new EventJournal(Path.of(this.dir), this.segmentSizeMb << 20);
+            logger.info("opened journal at {}, archive records left by last run...", this.dir);
+            long count = archive();
+            logger.info("archived {} records left by last run.", count);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.running = true;
+        this.archiveThread = new Thread(this::runArchive, "journal-archiver");
+        this.archiveThread.setDaemon(true);
+        this.archiveThread.start();
+    }
+
+    /**
+     * Write batches into journal and force to disk.
+     */
+    public void commitBatches(List<SequencedBatch> batches) {
+        List<JournalRecord> records = new ArrayList<>();
+        for (SequencedBatch batch : batches) {
+            for (UniqueEventEntity unique : batch.uniques) {
+                this.unarchivedUniqueIds.put(UniqueIdFilter.key(unique.uniqueId), Boolean.TRUE);
+            }
+            int u = 0;
+            for (EventEntity event : batch.events) {
+                String uniqueId = null;
+                if (u < batch.uniques.size() && batch.uniques.get(u).sequenceId == event.sequenceId) {
+                    uniqueId = batch.uniques.get(u++).uniqueId;
+                }
+                records.add(new JournalRecord(event, uniqueId));
+            }
+        }
+        if (records.isEmpty()) {
+            // 只含水位的批次无需写入
+            return;
+        }
+        try {
+            this.journal.append(records);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.journal.force();
+    }
+
+    public boolean isUnarchived(String uniqueId) {
+        return this.unarchivedUniqueIds.containsKey(UniqueIdFilter.key(uniqueId));
+    }
+
+    private void runArchive() {
+        while (this.running) {
+            try {
+                Thread.sleep(this.archiveIntervalMs);
+                archive();
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                // 归档失败不影响定序，下次重试
+                logger.warn("archive journal failed.", e);
+            }
+        }
+    }
+
+    /**
+     * Archive forced records, and delete segments which are completely archived.
+     */
+    synchronized long archive() throws IOException {
+        final EventJournal.Position forced = this.journal.getForcedPosition();
+        long count = 0;
+        for (Path segment : EventJournal.listSegments(Path.of(this.dir))) {
+            long index = EventJournal.indexOf(segment);
+            if (index < this.archiveSegment || index > forced.segment()) {
+                continue;
+            }
+            if (index > this.archiveSegment) {
+                this.archiveSegment = index;
+                this.archiveOffset = 0;
+            }
+            List<JournalRecord> records = new ArrayList<>();
+            int limit = index == forced.segment() ? forced.offset() : Integer.MAX_VALUE;
+            int end = EventJournal.read(segment, this.archiveOffset, limit, records);
+            for (int i = 0; i < records.size(); i += this.archiveBatchSize) {
+                List<JournalRecord> chunk = records.subList(i, Math.min(i + this.archiveBatchSize, records.size()));
+                this.archiver.accept(chunk);
+                for (JournalRecord record : chunk) {
+                    if (record.uniqueId() != null) {
+                        this.unarchivedUniqueIds.remove(UniqueIdFilter.key(record.uniqueId()));
+                    }
+                }
+            }
+            count += records.size();
+            this.archiveOffset = end;
+            if (index < forced.segment()) {
+                this.journal.deleteSegment(index);
+                logger.info("archived and deleted journal segment {}.", segment);
+            }
+        }
+        return count;
+    }
+
+    public void close() {
+        this.running = false;
+        if (this.archiveThread != null) {
+            this.archiveThread.interrupt();
+            try {
+                this.archiveThread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (this.journal != null) {
+            try {
+                this.journal.close();
+            } catch (IOException e) {
+                logger.warn("close journal failed.", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.helltractor.exchange.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.helltractor.exchange.support.LoggerSupport;
+
+/**
+ * Commit and publish stages of a stream.
+ * <p>
+ * Consumer threads assign sequence ids and submit batches in sequence order. The commit thread takes all waiting
+ * batches and commits them in one transaction (group commit), then hands them to the publish thread in the same order.
+ * So batch N+1 is sequenced while batch N is committing, and a group is committed while the previous group is
+ * published, but nothing is published before committed. A failed commit or publish stops the pipeline and calls
+ * onError.
+ */
+class SequencePipeline extends LoggerSupport {
+
+    private final BlockingQueue<SequencedBatch> queue;
+
+    // committed batches waiting for publish
+    private final BlockingQueue<SequencedBatch> publishQueue;
+
+    private final Consumer<List<SequencedBatch>> committer;
+
+    private final Consumer<SequencedBatch> publisher;
+
+    private final Runnable onError;
+
+    private final Thread commitThread;
+
+    private final Thread publishThread;
+
+    private volatile boolean running = true;
+
+    SequencePipeline(String name, int depth, Consumer<List<SequencedBatch>> committer,
+            Consumer<SequencedBatch> publisher, Runnable onError) {
+        this.queue = new ArrayBlockingQueue<>(depth);
+        this.publishQueue = new ArrayBlockingQueue<>(depth);
+        this.committer = committer;
+        this.publisher = publisher;
+        this.onError = onError;
+        this.commitThread = new Thread(this::runCommit, name);
+        this.commitThread.setDaemon(true);
+        this.publishThread = new Thread(this::runPublish, name + "-publish");
+        this.publishThread.setDaemon(true);
+    }
+
+    void start() {
+        this.publishThread.start();
+        this.commitThread.start();
+    }
+
+    /**
+     * Submit batch in sequence order. Block if too many batches are waiting for commit.
+     */
+    void submit(SequencedBatch batch) throws InterruptedException {
+        this.queue.put(batch);
+    }
+
+    private void runCommit() {
+        List<SequencedBatch> batches = new ArrayList<>();
+        while (this.running) {
+            try {
+                SequencedBatch first = this.queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batches.add(first);
+            } catch (InterruptedException e) {
+                break;
+            }
+            // 合并所有等待中的批次一起提交
+            this.queue.drainTo(batches);
+            try {
+                this.committer.accept(batches);
+            } catch (Throwable e) {
+                fail("commit sequenced batches failed.", e);
+                return;
+            }
+            try {
+                for (SequencedBatch batch : batches) {
+                    batch.committed.complete(null);
+                    // 发送线程落后时等待，发送失败后不再等待
+                    while (!this.publishQueue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                        if (!this.publishThread.isAlive()) {
+                            return;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            batches.clear();
+        }
+    }
+
+    private void runPublish() {
+        // 停止后仍发送所有已提交的批次
+        while (this.running || this.commitThread.isAlive() || !this.publishQueue.isEmpty()) {
+            SequencedBatch batch;
+            try {
+                batch = this.publishQueue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (batch == null) {
+                continue;
+            }
+            try {
+                this.publisher.accept(batch);
+            } catch (Throwable e) {
+                fail("publish sequenced batch failed.", e);
+                return;
+            }
+        }
+    }
+
+    private void fail(String message, Throwable e) {
+        logger.error(message, e);
+        this.running = false;
+        this.onError.run();
+    }
+
+    /**
+     * Stop after current group is committed and all committed batches are published. Waiting batches are not
+     * committed, and their messages are consumed again since offsets are not acknowledged.
+     */
+    void stop() {
+        this.running = false;
+        try {
+            this.commitThread.join(5000);
+            this.publishThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,16 +1,21 @@
 package com.helltractor.exchange.service;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.listener.CommonErrorHandler;
 import org.springframework.kafka.listener.MessageListenerContainer;
 import org.springframework.stereotype.Component;
 
 import com.helltractor.exchange.message.event.AbstractEvent;
+import com.helltractor.exchange.message.event.WatermarkEvent;
 import com.helltractor.exchange.messaging.MessageConsumer;
 import com.helltractor.exchange.messaging.MessageProducer;
 import com.helltractor.exchange.messaging.MessageTypes;
@@ -35,12 +40,30 @@ public class SequenceService extends LoggerSupport implements CommonErrorHandler
     @Autowired
     private MessagingFactory messagingFactory;
 
+    @Autowired
+    private SequenceJournal sequenceJournal;
+
     @Autowired
     private MessageTypes messageTypes;
 
+    @Value("${exchange.sequence.unique.purge-interval-minutes:60}")
+    private long uniquePurgeIntervalMinutes = 60;
+
+    @Value("${exchange.sequence.pipeline-depth:8}")
+    private int pipelineDepth = 8;
+
+    @Value("${exchange.sequence.watermark-interval-ms:5}")
+    private long watermarkIntervalMs = 5;
+
     private MessageProducer<AbstractEvent> messageProducer;
 
-    private AtomicLong sequence;
+    private SequenceStream[] streams;
+
+    private SequencePipeline[] pipelines;
+
+    // 每个消费线程最后一批消息的确认，保证按顺序确认
+    private final ThreadLocal<CompletableFuture<Void>> lastAcknowledged = ThreadLocal
+            .withInitial(() -> CompletableFuture.completedFuture(null));
 
     private Thread jobThread;
 
@@ -51,26 +74,59 @@ public class SequenceService extends LoggerSupport implements CommonErrorHandler
     public void init() {
         this.jobThread = new Thread(() -> {
             logger.info("start sequence service...");
+            // 每个序列流发送到TRADE的同号分区
             this.messageProducer = this.messagingFactory.createMessageProducer(Messaging.Topic.TRADE,
-                    AbstractEvent.class);
-            // find max event id
-            this.sequence = new AtomicLong(this.sequenceHandler.getMaxSequenceId());
+                    AbstractEvent.class, event -> event.streamId);
+            // 日志模式下先把上次遗留的日志归档到数据库，再从数据库加载状态
+            if (this.sequenceJournal.isEnabled()) {
+                this.sequenceJournal.open(this.sequenceHandler::archiveRecords);
+            }
+            // load unique ids before any message is sequenced
+            this.sequenceHandler.loadUniqueIds();
+            // find max event id, and load last state of each stream
+            SequenceCounter counter = new SequenceCounter(this.sequenceHandler.getMaxSequenceId());
+            this.streams = new SequenceStream[this.messagingFactory.getSequenceStreams()];
+            for (int i = 0; i < this.streams.length; i++) {
+                this.streams[i] = this.sequenceHandler.loadStream(i, counter);
+            }
+            this.pipelines = new SequencePipeline[this.streams.length];
+            for (int i = 0; i < this.pipelines.length; i++) {
+                this.pipelines[i] = new SequencePipeline("sequence-commit-" + i, this.pipelineDepth,
+                        this::commitBatches, this::sendMessages, this::panic);
+                this.pipelines[i].start();
+            }
             logger.info("create message consumer for {} ...", getClass().getName());
-            // init consumer, share same group id
-            MessageConsumer consumer = this.messagingFactory.createBatchMessageListener(Messaging.Topic.SEQUENCE, GROUP_ID,
-                    this::processMessage, this);
+            // init consumer, share same group id, one thread per stream, offsets are committed after events committed
+            MessageConsumer consumer = this.messagingFactory.createAcknowledgingBatchMessageListener(
+                    Messaging.Topic.SEQUENCE, GROUP_ID, this::processMessage, this, this.streams.length);
             // start running
             this.running = true;
+            final long purgeInterval = uniquePurgeIntervalMinutes * 60_000L;
+            long nextPurgeTime = System.currentTimeMillis() + purgeInterval;
             while (running) {
                 try {
-                    Thread.sleep(1000);
+                    Thread.sleep(this.streams.length > 1 ? this.watermarkIntervalMs : 1000);
                 } catch (InterruptedException e) {
                     break;
                 }
+                sendWatermarks();
+                if (purgeInterval > 0 && System.currentTimeMillis() >= nextPurgeTime) {
+                    nextPurgeTime = System.currentTimeMillis() + purgeInterval;
+                    try {
+                        this.sequenceHandler.purgeUniqueIds();
+                    } catch (Exception e) {
+                        // 清理失败不影响定序，下次重试
+                        logger.warn("purge unique ids failed.", e);
+                    }
+                }
             }
             // close message consumer
             logger.info("close message consumer for {} ...", getClass().getName());
             consumer.stop();
+            for (SequencePipeline pipeline : this.pipelines) {
+                pipeline.stop();
+            }
+            this.sequenceJournal.close();
             System.exit(1);
         });
         this.jobThread.start();
@@ -101,22 +157,103 @@ public class SequenceService extends LoggerSupport implements CommonErrorHandler
         panic();
     }
 
-    private void sendMessages(List<AbstractEvent> messages) {
-        this.messageProducer.sendMessages(messages);
+    private void commitBatches(List<SequencedBatch> batches) {
+        if (this.sequenceJournal.isEnabled()) {
+            this.sequenceJournal.commitBatches(batches);
+        } else {
+            this.sequenceHandler.commitBatches(batches);
+        }
     }
 
-    private synchronized void processMessage(List<AbstractEvent> messages) {
+    /**
+     * Send watermark in each stream which has not sent the last issued id, so that the engine can apply events of
+     * other streams up to it without waiting for events of this stream. A single stream needs no watermark, except
+     * after a failed send.
+     */
+    private void sendWatermarks() {
+        for (int i = 0; i < this.streams.length; i++) {
+            SequenceStream stream = this.streams[i];
+            synchronized (stream) {
+                long lastIssuedId = stream.counter.lastIssuedId();
+                boolean resend = stream.resendWatermark;
+                if (!resend && (this.streams.length == 1 || lastIssuedId <= stream.lastWatermark)) {
+                    continue;
+                }
+                stream.resendWatermark = false;
+                WatermarkEvent watermark = new WatermarkEvent();
+                watermark.sequenceId = lastIssuedId;
+                watermark.previousId = stream.lastSequenceId;
+                watermark.streamId = stream.streamId;
+                watermark.createTime = System.currentTimeMillis();
+                try {
+                    // 经流水线发送，保证在该流之前的消息提交并发送之后
+                    this.pipelines[i].submit(new SequencedBatch(List.of(watermark), List.of(), List.of()));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                stream.lastWatermark = lastIssuedId;
+            }
+        }
+    }
+
+    private void sendMessages(SequencedBatch batch) {
+        if (batch.messages.isEmpty()) {
+            return;
+        }
+        SequenceStream stream = this.streams[batch.messages.get(0).streamId];
+        this.messageProducer.sendMessages(batch.messages).whenComplete((r, e) -> {
+            if (e != null) {
+                // 消息已提交，重发水位线，引擎据其previousId从数据库补齐丢失的消息
+                logger.error("send {} messages of stream {} failed, resend watermark.", batch.messages.size(),
+                        stream.streamId);
+                stream.resendWatermark = true;
+            }
+        });
+    }
+
+    /**
+     * Called by consumer threads concurrently. A thread may be assigned more than one partition, so messages are
+     * grouped by stream first. Returns after messages are sequenced, and acknowledges after they are committed.
+     */
+    private void processMessage(List<AbstractEvent> messages, Runnable acknowledge) {
         if (!running || crash) {
             panic();
             return;
         }
+        Map<Integer, List<AbstractEvent>> groups = new TreeMap<>();
+        for (AbstractEvent message : messages) {
+            int streamId = Math.floorMod(message.streamId, this.streams.length);
+            if (streamId != message.streamId) {
+                logger.warn("invalid stream id {} of message, use stream {} instead: {}", message.streamId, streamId,
+                        message);
+            }
+            groups.computeIfAbsent(streamId, k -> new ArrayList<>()).add(message);
+        }
+        CompletableFuture<?>[] committed = new CompletableFuture<?>[groups.size() + 1];
+        int n = 0;
+        for (Map.Entry<Integer, List<AbstractEvent>> entry : groups.entrySet()) {
+            SequenceStream stream = this.streams[entry.getKey()];
+            synchronized (stream) {
+                committed[n++] = processStream(stream, this.pipelines[entry.getKey()], entry.getValue()).committed;
+            }
+        }
+        // 所有流提交且上一批已确认后才确认本批
+        committed[n] = this.lastAcknowledged.get();
+        this.lastAcknowledged.set(CompletableFuture.allOf(committed).thenRun(acknowledge));
+    }
+
+    private SequencedBatch processStream(SequenceStream stream, SequencePipeline pipeline,
+            List<AbstractEvent> messages) {
         if (logger.isInfoEnabled()) {
-            logger.info("do sequence for {} messages...", messages.size());
+            logger.info("do sequence for {} messages of stream {}...", messages.size(), stream.streamId);
         }
         long start = System.currentTimeMillis();
-        List<AbstractEvent> sequenced = null;
+        SequencedBatch batch = null;
         try {
-            sequenced = this.sequenceHandler.sequenceMessages(this.messageTypes, this.sequence, messages);
+            batch = this.sequenceHandler.sequenceMessages(this.messageTypes, stream, messages);
+            // 在流的锁内提交到流水线，保证按序号顺序提交和发送
+            pipeline.submit(batch);
         } catch (Throwable e) {
             logger.error("exception when do sequence", e);
             shutdown();
@@ -126,10 +263,10 @@ public class SequenceService extends LoggerSupport implements CommonErrorHandler
 
         if (logger.isInfoEnabled()) {
             long end = System.currentTimeMillis();
-            logger.info("sequenced {} messages in {} ms. current sequence id: {}", messages.size(), (end - start),
-                    this.sequence.get());
+            logger.info("sequenced {} messages of stream {} in {} ms. current sequence id: {}", messages.size(),
+                    stream.streamId, (end - start), stream.lastSequenceId);
         }
-        sendMessages(sequenced);
+        return batch;
     }
 
     private void panic() {
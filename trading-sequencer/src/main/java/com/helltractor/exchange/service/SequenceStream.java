@@ -0,0 +1,38 @@
+package com.helltractor.exchange.service;
+
+/**
+ * Sequence state of a stream. Guarded by itself, since a stream may move between consumer threads when partitions
+ * are rebalanced.
+ */
+public class SequenceStream {
+
+    final int streamId;
+
+    // ids of all streams are issued by the same counter, and are greater than any existing id at startup
+    final SequenceCounter counter;
+
+    // last sequence id of this stream, which is previousId of next event, or 0 if no event
+    long lastSequenceId;
+
+    // last sequence id sent as event or watermark of this stream
+    long lastWatermark;
+
+    long lastTimestamp;
+
+    // a send of this stream failed, set by producer callback without lock
+    volatile boolean resendWatermark;
+
+    SequenceStream(int streamId, SequenceCounter counter, long lastSequenceId, long lastTimestamp) {
+        this.streamId = streamId;
+        this.counter = counter;
+        this.lastSequenceId = lastSequenceId;
+        this.lastWatermark = lastSequenceId;
+        this.lastTimestamp = lastTimestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "SequenceStream [streamId=" + streamId + ", lastSequenceId=" + lastSequenceId + ", lastWatermark="
+                + lastWatermark + ", lastTimestamp=" + lastTimestamp + "]";
+    }
+}
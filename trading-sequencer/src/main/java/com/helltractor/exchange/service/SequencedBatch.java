@@ -0,0 +1,29 @@
+package com.helltractor.exchange.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.helltractor.exchange.message.event.AbstractEvent;
+import com.helltractor.exchange.model.trade.EventEntity;
+import com.helltractor.exchange.model.trade.UniqueEventEntity;
+
+/**
+ * Messages of a stream which are assigned sequence ids and serialized, but not yet committed.
+ */
+class SequencedBatch {
+
+    final List<AbstractEvent> messages;
+
+    final List<UniqueEventEntity> uniques;
+
+    final List<EventEntity> events;
+
+    // completed after committed into database
+    final CompletableFuture<Void> committed = new CompletableFuture<>();
+
+    SequencedBatch(List<AbstractEvent> messages, List<UniqueEventEntity> uniques, List<EventEntity> events) {
+        this.messages = messages;
+        this.uniques = uniques;
+        this.events = events;
+    }
+}
@@ -0,0 +1,94 @@
+package com.helltractor.exchange.service;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * In-memory filter of unique ids, checked before database.
+ * <p>
+ * The bloom filter contains every unique id kept in database, so an id it does not contain is definitely new. A bounded
+ * LRU of recent ids answers repeated requests without a query. Only ids which hit the bloom filter but miss the LRU
+ * must be looked up in database. Called by sequence threads and the purge job, so all methods are synchronized.
+ * <p>
+ * Ids are compared case-insensitively as the primary key of unique_events.
+ */
+class UniqueIdFilter {
+
+    private final long expectedIds;
+
+    private final double falsePositiveRate;
+
+    // uniqueId -> createTime
+    private final LinkedHashMap<String, Long> recent;
+
+    private BloomFilter bloomFilter;
+
+    // 清理后重建的过滤器，重建期间新加入的id同时写入
+    private BloomFilter rebuilding = null;
+
+    UniqueIdFilter(long expectedIds, double falsePositiveRate, int recentSize) {
+        this.expectedIds = expectedIds;
+        this.falsePositiveRate = falsePositiveRate;
+        this.bloomFilter = new BloomFilter(expectedIds, falsePositiveRate);
+        this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > recentSize;
+            }
+        };
+    }
+
+    synchronized boolean isRecent(String uniqueId) {
+        return this.recent.get(key(uniqueId)) != null;
+    }
+
+    synchronized boolean mightExist(String uniqueId) {
+        return this.bloomFilter.mightContain(key(uniqueId));
+    }
+
+    synchronized void add(String uniqueId, long createTime) {
+        String key = key(uniqueId);
+        this.bloomFilter.put(key);
+        if (this.rebuilding != null) {
+            this.rebuilding.put(key);
+        }
+        this.recent.put(key, createTime);
+    }
+
+    /**
+     * Add id loaded from database without touching the LRU.
+     */
+    synchronized void load(String uniqueId) {
+        this.bloomFilter.put(key(uniqueId));
+    }
+
+    synchronized void startRebuild() {
+        this.rebuilding = new BloomFilter(this.expectedIds, this.falsePositiveRate);
+    }
+
+    synchronized void rebuild(String uniqueId) {
+        this.rebuilding.put(key(uniqueId));
+    }
+
+    /**
+     * Replace bloom filter by rebuilt one, and expire ids created before cutoff.
+     */
+    synchronized void finishRebuild(long cutoff) {
+        this.recent.values().removeIf(createTime -> createTime < cutoff);
+        // 重建开始前写入但尚未提交的id不在扫描结果中，由LRU补齐
+        for (String key : this.recent.keySet()) {
+            this.rebuilding.put(key);
+        }
+        this.bloomFilter = this.rebuilding;
+        this.rebuilding = null;
+    }
+
+    synchronized void cancelRebuild() {
+        this.rebuilding = null;
+    }
+
+    static String key(String uniqueId) {
+        return uniqueId.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,92 @@
+package com.helltractor.exchange.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.helltractor.exchange.message.event.AbstractEvent;
+import com.helltractor.exchange.message.event.TransferEvent;
+
+public class SequenceHandlerTest {
+
+    // unique ids in database
+    Set<String> stored = Set.of("stored-1", "stored-2");
+
+    // candidates looked up in database
+    List<String> lookups = new ArrayList<>();
+
+    SequenceHandler createHandler(UniqueIdFilter filter) {
+        SequenceHandler handler = new SequenceHandler() {
+            @Override
+            List<String> selectUniqueIds(List<String> candidates) {
+                lookups.addAll(candidates);
+                return candidates.stream().filter(stored::contains).toList();
+            }
+        };
+        handler.sequenceJournal = new SequenceJournal();
+        handler.uniqueIdFilter = filter;
+        return handler;
+    }
+
+    AbstractEvent event(String uniqueId) {
+        TransferEvent event = new TransferEvent();
+        event.uniqueId = uniqueId;
+        return event;
+    }
+
+    @Test
+    void testBloomFalsePositiveLooksUpDatabase() {
+        // tiny filter with high false positive rate and no LRU:
+        UniqueIdFilter filter = new UniqueIdFilter(1, 0.5, 0);
+        this.stored.forEach(filter::load);
+        String falsePositive = null;
+        String miss = null;
+        for (int i = 0; (falsePositive == null || miss == null) && i < 10000; i++) {
+            String uniqueId = "new-" + i;
+            if (filter.mightExist(uniqueId)) {
+                falsePositive = falsePositive == null ? uniqueId : falsePositive;
+            } else {
+                miss = miss == null ? uniqueId : miss;
+            }
+        }
+        assertNotNull(falsePositive);
+        assertNotNull(miss);
+
+        SequenceHandler handler = createHandler(filter);
+        Set<String> exists = handler.findExistUniqueIds(
+                List.of(event("stored-1"), event(falsePositive), event(miss), event(null)));
+        assertEquals(Set.of("stored-1"), exists);
+        // id missed by bloom filter is never looked up:
+        assertEquals(List.of("stored-1", falsePositive), this.lookups);
+    }
+
+    @Test
+    void testRecentIdsNotLookedUp() {
+        UniqueIdFilter filter = new UniqueIdFilter(1000, 0.001, 10);
+        filter.add("Recent-1", System.currentTimeMillis());
+        SequenceHandler handler = createHandler(filter);
+        // compared case-insensitively:
+        assertTrue(handler.findExistUniqueIds(List.of(event("recent-1"))).contains("RECENT-1"));
+        assertTrue(handler.findExistUniqueIds(List.of(event("new-1"))).isEmpty());
+        assertEquals(List.of(), this.lookups);
+    }
+
+    @Test
+    void testPadArgsToPowerOfTwo() {
+        assertArrayEquals(new Object[]{"a"}, SequenceHandler.padArgs(List.of("a")));
+        assertArrayEquals(new Object[]{"a", "b"}, SequenceHandler.padArgs(List.of("a", "b")));
+        assertArrayEquals(new Object[]{"a", "b", "c", "c"}, SequenceHandler.padArgs(List.of("a", "b", "c")));
+        assertEquals(8, SequenceHandler.padArgs(List.of("a", "b", "c", "d", "e")).length);
+        assertEquals("uniqueId IN (?, ?, ?, ?)", SequenceHandler.uniqueIdInClause(4));
+        assertSame(SequenceHandler.uniqueIdInClause(4), SequenceHandler.uniqueIdInClause(4));
+        assertFalse(SequenceHandler.uniqueIdInClause(8).equals(SequenceHandler.uniqueIdInClause(4)));
+    }
+}
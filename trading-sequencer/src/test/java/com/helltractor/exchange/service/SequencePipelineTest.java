@@ -0,0 +1,77 @@
+package com.helltractor.exchange.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.helltractor.exchange.message.event.AbstractEvent;
+import com.helltractor.exchange.message.event.TransferEvent;
+
+public class SequencePipelineTest {
+
+    SequencedBatch batch(long sequenceId) {
+        AbstractEvent event = new TransferEvent();
+        event.sequenceId = sequenceId;
+        return new SequencedBatch(List.of(event), List.of(), List.of());
+    }
+
+    @Test
+    void testPublishAfterCommit() throws Exception {
+        final int total = 50;
+        Set<Long> committed = ConcurrentHashMap.newKeySet();
+        List<Long> published = new CopyOnWriteArrayList<>();
+        List<Long> publishedBeforeCommit = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(total);
+        SequencePipeline pipeline = new SequencePipeline("test-commit", 4, batches -> {
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            batches.forEach(b -> committed.add(b.messages.get(0).sequenceId));
+        }, batch -> {
+            long sequenceId = batch.messages.get(0).sequenceId;
+            if (!committed.contains(sequenceId) || !batch.committed.isDone()) {
+                publishedBeforeCommit.add(sequenceId);
+            }
+            published.add(sequenceId);
+            done.countDown();
+        }, () -> {
+        });
+        pipeline.start();
+        List<Long> expected = new ArrayList<>();
+        for (long id = 1; id <= total; id++) {
+            pipeline.submit(batch(id));
+            expected.add(id);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        pipeline.stop();
+        assertEquals(List.of(), publishedBeforeCommit);
+        assertEquals(expected, published);
+    }
+
+    @Test
+    void testCommitFailure() throws Exception {
+        List<Long> published = new CopyOnWriteArrayList<>();
+        CountDownLatch failed = new CountDownLatch(1);
+        SequencePipeline pipeline = new SequencePipeline("test-commit", 4, batches -> {
+            throw new IllegalStateException("database is down");
+        }, batch -> published.add(batch.messages.get(0).sequenceId), failed::countDown);
+        pipeline.start();
+        SequencedBatch first = batch(1);
+        pipeline.submit(first);
+        assertTrue(failed.await(10, TimeUnit.SECONDS));
+        pipeline.stop();
+        assertFalse(first.committed.isDone());
+        assertEquals(List.of(), published);
+    }
+}
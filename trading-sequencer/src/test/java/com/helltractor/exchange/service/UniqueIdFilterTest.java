@@ -0,0 +1,45 @@
+package com.helltractor.exchange.service;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class UniqueIdFilterTest {
+
+    @Test
+    void testPurgeRebuildsFilter() {
+        UniqueIdFilter filter = new UniqueIdFilter(1000, 0.000001, 10);
+        long cutoff = 1000;
+        filter.load("expired-1");
+        filter.add("expired-2", cutoff - 1);
+        filter.load("kept-1");
+        filter.add("kept-2", cutoff + 1);
+
+        // purge deleted expired ids from database, then rebuild from remaining:
+        filter.startRebuild();
+        filter.rebuild("kept-1");
+        // added while rebuilding, not yet committed when scanned:
+        filter.add("added", cutoff + 2);
+        filter.finishRebuild(cutoff);
+
+        assertFalse(filter.mightExist("expired-1"));
+        assertFalse(filter.mightExist("expired-2"));
+        assertFalse(filter.isRecent("expired-2"));
+        assertTrue(filter.mightExist("kept-1"));
+        // kept by LRU although not scanned:
+        assertTrue(filter.mightExist("kept-2"));
+        assertTrue(filter.mightExist("added"));
+        assertTrue(filter.isRecent("added"));
+    }
+
+    @Test
+    void testCancelRebuild() {
+        UniqueIdFilter filter = new UniqueIdFilter(1000, 0.000001, 10);
+        filter.load("kept-1");
+        filter.startRebuild();
+        filter.cancelRebuild();
+        filter.add("added", 1);
+        assertTrue(filter.mightExist("kept-1"));
+        assertTrue(filter.mightExist("added"));
+    }
+}